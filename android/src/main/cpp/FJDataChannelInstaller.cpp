@@ -0,0 +1,99 @@
+#include "FJDataChannelInstaller.h"
+
+namespace jni = facebook::jni;
+
+namespace fishjam {
+
+FJDataChannelInstaller::FJDataChannelInstaller(jni::alias_ref<jhybridobject> javaThis,
+                                               std::shared_ptr<FJDataChannel> channel)
+    : javaPart_(jni::make_weak(javaThis)), channel_(std::move(channel)) {
+    // Route every JS send to the Java peer. The bytes are wrapped, not copied,
+    // into a direct ByteBuffer: DataChannel.send consumes it synchronously, so
+    // the JS memory outlives the call. Sends normally come from the RN JS thread
+    // (already attached); the ThreadScope covers a worklet runtime calling the
+    // global too. Only a weak reference is captured: the Java peer owns this
+    // object, so a strong one would keep both alive forever. Once the peer is
+    // collected, sends just fail.
+    auto weakJavaPart = javaPart_;
+    channel_->setSend([weakJavaPart](int pcId, const std::string &reactTag, uint8_t *data, size_t size,
+                                     bool binary) -> bool {
+        facebook::jni::ThreadScope threadScope;
+        auto javaPart = weakJavaPart.lockLocal();
+        if (!javaPart) {
+            return false;
+        }
+        static const auto send =
+            javaPart->getClass()
+                ->getMethod<jboolean(jint, jni::alias_ref<jstring>, jni::alias_ref<jni::JByteBuffer>, jboolean)>(
+                    "send");
+        return send(javaPart, static_cast<jint>(pcId), jni::make_jstring(reactTag),
+                    jni::JByteBuffer::wrapBytes(data, size), static_cast<jboolean>(binary));
+    });
+}
+
+jni::local_ref<FJDataChannelInstaller::jhybriddata> FJDataChannelInstaller::initHybrid(
+    jni::alias_ref<jhybridobject> javaThis,
+    jni::alias_ref<facebook::react::CallInvokerHolder::javaobject> callInvokerHolder) {
+    // FJDataChannel only needs the JS CallInvoker; it acquires the jsi::Runtime
+    // itself inside invokeAsync, so no runtime pointer is required here.
+    auto callInvoker = callInvokerHolder->cthis()->getCallInvoker();
+    return makeCxxInstance(javaThis, std::make_shared<FJDataChannel>(callInvoker));
+}
+
+void FJDataChannelInstaller::installChannel() {
+    // FJDataChannel::install sets the globals on the JS thread and then runs
+    // this callback (also on the JS thread). We notify the Java peer there so
+    // the Promise resolves strictly after the globals exist.
+    auto weakJavaPart = javaPart_;
+    channel_->install([weakJavaPart] {
+        auto javaPart = weakJavaPart.lockLocal();
+        if (!javaPart) {
+            return;
+        }
+        static const auto onChannelInstalled = javaPart->getClass()->getMethod<void()>("onChannelInstalled");
+        onChannelInstalled(javaPart);
+    });
+}
+
+bool FJDataChannelInstaller::hasHandler() {
+    return channel_->hasHandler();
+}
+
+void FJDataChannelInstaller::deliverMessage(jint pcId, jni::alias_ref<jstring> reactTag,
+                                            jni::alias_ref<jni::JByteBuffer> data, jint offset, jint length,
+                                            jboolean binary) {
+    // Wrapped in try/catch so a bad buffer drops the message rather than
+    // crossing back into the JVM.
+    try {
+        if (data == nullptr || offset < 0 || length < 0) {
+            return;
+        }
+        const uint8_t *base = static_cast<const uint8_t *>(data->getDirectAddress());
+        size_t capacity = static_cast<size_t>(data->getDirectSize());
+        if (base == nullptr || static_cast<size_t>(offset) + static_cast<size_t>(length) > capacity) {
+            return;
+        }
+        // The single copy on the receive path: libwebrtc reuses its buffer as
+        // soon as onMessage returns, and the vector is then moved into the
+        // ArrayBuffer as is.
+        std::vector<uint8_t> bytes(base + offset, base + offset + length);
+        channel_->deliver(pcId, reactTag->toStdString(), binary, std::move(bytes));
+    } catch (...) {
+        // Drop this message.
+    }
+}
+
+void FJDataChannelInstaller::registerNatives() {
+    registerHybrid({
+        makeNativeMethod("initHybrid", FJDataChannelInstaller::initHybrid),
+        makeNativeMethod("installChannel", FJDataChannelInstaller::installChannel),
+        makeNativeMethod("hasHandler", FJDataChannelInstaller::hasHandler),
+        makeNativeMethod("deliverMessage", FJDataChannelInstaller::deliverMessage),
+    });
+}
+
+}  // namespace fishjam
+
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *) {
+    return facebook::jni::initialize(vm, [] { fishjam::FJDataChannelInstaller::registerNatives(); });
+}
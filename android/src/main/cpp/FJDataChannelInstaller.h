@@ -0,0 +1,57 @@
+// fbjni HybridClass backing com.oney.WebRTCModule.FJDataChannelInstaller.
+//
+// Installs the DataChannel JS globals on the JS thread (via the CallInvoker),
+// then notifies the Java peer so the install Promise resolves only once the
+// globals actually exist. Sends from JS are forwarded to the Java peer's
+// send(...) as a direct ByteBuffer over the JS memory; received messages are
+// copied once out of libwebrtc's direct ByteBuffer and handed to JS as an
+// ArrayBuffer or string.
+#pragma once
+
+#include <ReactCommon/CallInvokerHolder.h>
+#include <fbjni/ByteBuffer.h>
+#include <fbjni/fbjni.h>
+
+#include <memory>
+
+#include "FJDataChannelJSI.h"
+
+namespace fishjam {
+
+class FJDataChannelInstaller : public facebook::jni::HybridClass<FJDataChannelInstaller> {
+   public:
+    static constexpr auto kJavaDescriptor = "Lcom/oney/WebRTCModule/FJDataChannelInstaller;";
+
+    static facebook::jni::local_ref<jhybriddata> initHybrid(
+        facebook::jni::alias_ref<jhybridobject> javaThis,
+        facebook::jni::alias_ref<facebook::react::CallInvokerHolder::javaobject> callInvokerHolder);
+
+    static void registerNatives();
+
+    // Sets the JS globals on the JS thread, then calls the Java peer's
+    // onChannelInstalled() once they are in place.
+    void installChannel();
+
+    bool hasHandler();
+
+    // Copies `length` bytes at `offset` of a direct ByteBuffer and delivers
+    // them to JS. Called on the libwebrtc network thread; the buffer is only
+    // valid for the duration of this call.
+    void deliverMessage(jint pcId,
+                        facebook::jni::alias_ref<jstring> reactTag,
+                        facebook::jni::alias_ref<facebook::jni::JByteBuffer> data,
+                        jint offset,
+                        jint length,
+                        jboolean binary);
+
+   private:
+    friend HybridBase;
+
+    // Weak: the Java peer owns this object through its HybridData.
+    facebook::jni::weak_ref<javaobject> javaPart_;
+    std::shared_ptr<FJDataChannel> channel_;
+
+    FJDataChannelInstaller(facebook::jni::alias_ref<jhybridobject> javaThis, std::shared_ptr<FJDataChannel> channel);
+};
+
+}  // namespace fishjam
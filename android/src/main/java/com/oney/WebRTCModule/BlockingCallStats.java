@@ -0,0 +1,89 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records how long each blocking (isBlockingSynchronousMethod) call kept the JS thread waiting,
+ * per method name. Calls which block for longer than {@link #SLOW_CALL_THRESHOLD_NS} are also
+ * logged, so stalls show up in logcat without having to poll the counters.
+ */
+final class BlockingCallStats {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * Roughly two frames at 60 fps.
+     */
+    private static final long SLOW_CALL_THRESHOLD_NS = 32_000_000L;
+
+    private static final Map<String, BlockingCallStats> stats = new ConcurrentHashMap<>();
+
+    private final String method;
+
+    // All of the following are guarded by `this`.
+    private long callCount;
+    private long inlineCount;
+    private long totalBlockedNs;
+    private long maxBlockedNs;
+    private long lastBlockedNs;
+
+    private BlockingCallStats(String method) {
+        this.method = method;
+    }
+
+    /**
+     * Records a single call.
+     * @param method the name of the React method.
+     * @param blockedNs the time the calling thread was blocked.
+     * @param inline whether the call was served without going through the executor queue.
+     */
+    static void record(String method, long blockedNs, boolean inline) {
+        BlockingCallStats entry = stats.computeIfAbsent(method, BlockingCallStats::new);
+        synchronized (entry) {
+            entry.callCount++;
+            if (inline) {
+                entry.inlineCount++;
+            }
+            entry.totalBlockedNs += blockedNs;
+            entry.maxBlockedNs = Math.max(entry.maxBlockedNs, blockedNs);
+            entry.lastBlockedNs = blockedNs;
+        }
+
+        if (blockedNs > SLOW_CALL_THRESHOLD_NS) {
+            Log.w(TAG, method + "() blocked the JS thread for " + (blockedNs / 1_000_000L) + " ms");
+        }
+    }
+
+    /**
+     * Returns a snapshot of the counters of every method called so far.
+     */
+    static List<Snapshot> getSnapshots() {
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (BlockingCallStats entry : stats.values()) {
+            synchronized (entry) {
+                Snapshot snapshot = new Snapshot();
+                snapshot.method = entry.method;
+                snapshot.callCount = entry.callCount;
+                snapshot.inlineCount = entry.inlineCount;
+                snapshot.totalBlockedNs = entry.totalBlockedNs;
+                snapshot.maxBlockedNs = entry.maxBlockedNs;
+                snapshot.lastBlockedNs = entry.lastBlockedNs;
+                snapshots.add(snapshot);
+            }
+        }
+        return snapshots;
+    }
+
+    static final class Snapshot {
+        String method;
+        long callCount;
+        long inlineCount;
+        long totalBlockedNs;
+        long maxBlockedNs;
+        long lastBlockedNs;
+    }
+}
@@ -0,0 +1,338 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.PeerConnection;
+import org.webrtc.RtcCertificatePem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Keeps a small stock of pre-generated ECDSA certificates, so neither {@code generateCertificate}
+ * nor {@code peerConnectionInit} has to generate one on the join path. Enabled with
+ * {@link WebRTCModuleOptions#certificateStockSize}.
+ *
+ * <p>The stock is refilled on a background thread of its own, off the executor. With
+ * {@link WebRTCModuleOptions#persistCertificates} it is also kept on disk, encrypted with an AES key
+ * from the Android Keystore, so it survives restarts. The stock is stored again on the store's
+ * thread right after {@link #take}, ahead of any refill; a crash in between can only leave a taken
+ * certificate to serve one more connection, which is allowed anyway (see
+ * {@code RTCConfiguration.certificates}). Certificates are replaced once older than
+ * {@link #MAX_STOCK_AGE_MS}, so a request for the default lifetime may get one which expires up
+ * to that much earlier.
+ */
+class CertificateStore {
+    private static final String TAG = CertificateStore.class.getSimpleName();
+
+    static final long DEFAULT_EXPIRES_SECONDS = 2592000L; // 30 days
+    private static final long MIN_REMAINING_LIFETIME_MS = 24 * 60 * 60 * 1000L;
+    private static final long MAX_STOCK_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+    /** The least lifetime left of a stocked certificate which isn't due for replacement. */
+    private static final long MIN_STOCK_LIFETIME_MS = DEFAULT_EXPIRES_SECONDS * 1000 - MAX_STOCK_AGE_MS;
+
+    private static final String FILE_NAME = "webrtc-certificates";
+    private static final String KEY_ALIAS = "WebRTCModuleCertificates";
+    private static final String KEYSTORE_PROVIDER = "AndroidKeyStore";
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int GCM_TAG_BITS = 128;
+    private static final int FILE_VERSION = 1;
+
+    static final class Certificate {
+        final RtcCertificatePem pem;
+        final long expiresAtMs;
+
+        Certificate(RtcCertificatePem pem, long expiresAtMs) {
+            this.pem = pem;
+            this.expiresAtMs = expiresAtMs;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CertificateStore");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int stockSize;
+    @Nullable
+    private final AtomicFile file;
+    // Nothing native may run before start(), which comes after the native library is loaded.
+    private volatile boolean started;
+
+    // All guarded by `this`.
+    private final ArrayDeque<Certificate> stock = new ArrayDeque<>();
+    private long hits;
+    private long misses;
+    private long generated;
+    private long totalGenerateNs;
+
+    CertificateStore(Context context) {
+        WebRTCModuleOptions options = WebRTCModuleOptions.getInstance();
+        this.stockSize = Math.max(0, options.certificateStockSize);
+        this.file = stockSize > 0 && options.persistCertificates
+                ? new AtomicFile(new File(context.getNoBackupFilesDir(), FILE_NAME))
+                : null;
+    }
+
+    /**
+     * Loads the stored stock and fills it up. Call once the WebRTC native library is loaded.
+     */
+    void start() {
+        started = true;
+        if (stockSize > 0) {
+            executor.execute(() -> {
+                load();
+                if (fill()) {
+                    save();
+                }
+            });
+        }
+    }
+
+    /**
+     * Takes a stocked certificate valid for at least {@code expiresSeconds} more, or null if there
+     * is none. Requests for more than {@link #MIN_STOCK_LIFETIME_MS} accept any certificate the
+     * stock holds. Only ECDSA certificates are stocked.
+     */
+    @Nullable
+    Certificate take(PeerConnection.KeyType keyType, long expiresSeconds) {
+        if (stockSize == 0 || !started) {
+            return null;
+        }
+
+        long minLifetimeMs =
+                Math.max(Math.min(expiresSeconds * 1000, MIN_STOCK_LIFETIME_MS), MIN_REMAINING_LIFETIME_MS);
+        long minExpiresAtMs = System.currentTimeMillis() + minLifetimeMs;
+        Certificate certificate = null;
+        synchronized (this) {
+            if (keyType == PeerConnection.KeyType.ECDSA) {
+                for (Iterator<Certificate> it = stock.iterator(); it.hasNext();) {
+                    Certificate candidate = it.next();
+                    if (candidate.expiresAtMs >= minExpiresAtMs) {
+                        it.remove();
+                        certificate = candidate;
+                        break;
+                    }
+                }
+            }
+            if (certificate != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+
+        // Stored off the calling thread (the JS thread, for peerConnectionInit).
+        boolean taken = certificate != null;
+        executor.execute(() -> {
+            if (taken) {
+                // Before the refill, which may take a while.
+                save();
+            }
+            if (dropExpired() | fill()) {
+                save();
+            }
+        });
+        return certificate;
+    }
+
+    /**
+     * Like {@link #take}, but generates a certificate on the calling thread when none is stocked.
+     * The native library must be loaded, see {@link WebRTCModule#getFactory()}.
+     */
+    Certificate obtain(PeerConnection.KeyType keyType, long expiresSeconds) {
+        Certificate certificate = take(keyType, expiresSeconds);
+        return certificate != null ? certificate : generate(keyType, expiresSeconds);
+    }
+
+    synchronized WritableMap getStats() {
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("stockSize", stockSize);
+        stats.putInt("stocked", stock.size());
+        stats.putDouble("hits", hits);
+        stats.putDouble("misses", misses);
+        stats.putDouble("generated", generated);
+        stats.putDouble("avgGenerateMs", generated > 0 ? totalGenerateNs / 1e6 / generated : 0);
+        return stats;
+    }
+
+    private Certificate generate(PeerConnection.KeyType keyType, long expiresSeconds) {
+        long startNs = System.nanoTime();
+        long expiresAtMs = System.currentTimeMillis() + expiresSeconds * 1000;
+        RtcCertificatePem pem = RtcCertificatePem.generateCertificate(keyType, expiresSeconds);
+        long durationNs = System.nanoTime() - startNs;
+        synchronized (this) {
+            generated++;
+            totalGenerateNs += durationNs;
+        }
+        return new Certificate(pem, expiresAtMs);
+    }
+
+    /**
+     * Generates certificates until the stock is full. Returns whether any were added. Must be
+     * called on the store's thread.
+     */
+    private boolean fill() {
+        boolean added = false;
+        while (true) {
+            synchronized (this) {
+                if (stock.size() >= stockSize) {
+                    break;
+                }
+            }
+            Certificate certificate;
+            try {
+                certificate = generate(PeerConnection.KeyType.ECDSA, DEFAULT_EXPIRES_SECONDS);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to generate a certificate", e);
+                break;
+            }
+            synchronized (this) {
+                stock.addLast(certificate);
+            }
+            added = true;
+        }
+        return added;
+    }
+
+    /**
+     * Drops the certificates due for replacement. Must be called on the store's thread.
+     */
+    private boolean dropExpired() {
+        long minExpiresAtMs = System.currentTimeMillis() + MIN_STOCK_LIFETIME_MS;
+        synchronized (this) {
+            return stock.removeIf(certificate -> certificate.expiresAtMs < minExpiresAtMs);
+        }
+    }
+
+    // Must be called on the store's thread.
+    private void load() {
+        if (file == null || !file.getBaseFile().exists()) {
+            return;
+        }
+
+        try (FileInputStream fis = file.openRead(); DataInputStream in = new DataInputStream(fis)) {
+            if (in.readInt() != FILE_VERSION) {
+                return;
+            }
+            byte[] iv = new byte[in.readInt()];
+            in.readFully(iv);
+            byte[] encrypted = new byte[in.readInt()];
+            in.readFully(encrypted);
+
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, getKey(), new GCMParameterSpec(GCM_TAG_BITS, iv));
+            String json = new String(cipher.doFinal(encrypted), StandardCharsets.UTF_8);
+
+            JSONArray array = new JSONArray(json);
+            List<Certificate> loaded = new ArrayList<>();
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject entry = array.getJSONObject(i);
+                RtcCertificatePem pem =
+                        new RtcCertificatePem(entry.getString("privateKey"), entry.getString("certificate"));
+                loaded.add(new Certificate(pem, entry.getLong("expiresAtMs")));
+            }
+            synchronized (this) {
+                stock.addAll(loaded);
+            }
+            dropExpired();
+        } catch (IOException | GeneralSecurityException | JSONException e) {
+            // E.g. the key was lost along with a backup restore; start over.
+            Log.w(TAG, "Failed to load the stored certificates", e);
+            file.delete();
+        }
+    }
+
+    // Must be called on the store's thread.
+    private void save() {
+        if (file == null) {
+            return;
+        }
+
+        FileOutputStream fos = null;
+        try {
+            JSONArray array = new JSONArray();
+            synchronized (this) {
+                for (Certificate certificate : stock) {
+                    JSONObject entry = new JSONObject();
+                    entry.put("privateKey", certificate.pem.privateKey);
+                    entry.put("certificate", certificate.pem.certificate);
+                    entry.put("expiresAtMs", certificate.expiresAtMs);
+                    array.put(entry);
+                }
+            }
+
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, getKey());
+            byte[] encrypted = cipher.doFinal(array.toString().getBytes(StandardCharsets.UTF_8));
+            byte[] iv = cipher.getIV();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(iv.length);
+            out.write(iv);
+            out.writeInt(encrypted.length);
+            out.write(encrypted);
+            out.flush();
+
+            fos = file.startWrite();
+            fos.write(bytes.toByteArray());
+            file.finishWrite(fos);
+        } catch (IOException | GeneralSecurityException | JSONException e) {
+            Log.w(TAG, "Failed to store the certificates", e);
+            if (fos != null) {
+                file.failWrite(fos);
+            }
+        }
+    }
+
+    private static SecretKey getKey() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE_PROVIDER);
+        keyStore.load(null);
+        KeyStore.Entry entry = keyStore.getEntry(KEY_ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        }
+
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE_PROVIDER);
+        generator.init(new KeyGenParameterSpec
+                               .Builder(KEY_ALIAS, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                               .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                               .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                               .build());
+        return generator.generateKey();
+    }
+}
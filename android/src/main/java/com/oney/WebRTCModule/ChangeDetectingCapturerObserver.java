@@ -0,0 +1,367 @@
+package com.oney.WebRTCModule;
+
+import android.opengl.EGL14;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.CapturerObserver;
+import org.webrtc.GlRectDrawer;
+import org.webrtc.GlTextureFrameBuffer;
+import org.webrtc.RendererCommon;
+import org.webrtc.VideoFrame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link CapturerObserver} decorator that drops screen frames which are (nearly) identical to
+ * the last frame it forwarded, e.g. when all that changed is a blinking cursor.
+ *
+ * Each frame is reduced to a {@link #GRID_WIDTH}x{@link #GRID_HEIGHT} luma grid: texture frames are
+ * drawn into a small framebuffer on the GPU and read back (a few tens of KB instead of the whole
+ * screen), I420 frames are sampled straight from their Y plane. The grid is split into
+ * {@link #TILE_SIZE}-sized tiles; a tile is dirty if any of its samples moved by more than
+ * {@code pixelThreshold}. Frames with no more than {@code maxDirtyArea} of their tiles dirty are
+ * dropped, unless nothing has been forwarded for {@code maxStalenessMs}. Comparisons are always made
+ * against the last sampled frame that was forwarded, so slow drift still gets through eventually.
+ *
+ * The texture readback stalls the GL pipeline, so texture frames are sampled at most every
+ * {@link #TEXTURE_SAMPLE_INTERVAL_NS}; one arriving sooner is held and sampled when the interval is
+ * over, see {@link FrameGate}. A change is thus picked up at most one interval late, and a dropped
+ * frame is forwarded within {@code maxStalenessMs} even if no other frame follows.
+ *
+ * Sits between the capturer and the {@link FrameRepeatingCapturerObserver}, so dropped frames
+ * don't restart the repeater's idle timer either. Like the repeater, everything runs on the
+ * capturer's handler thread, where the SurfaceTextureHelper's EGL context is current.
+ */
+public class ChangeDetectingCapturerObserver implements CapturerObserver {
+    private static final String TAG = ChangeDetectingCapturerObserver.class.getSimpleName();
+
+    private static final int GRID_WIDTH = 256;
+    private static final int GRID_HEIGHT = 144;
+    private static final int TILE_SIZE = 16;
+    private static final int TILES_X = GRID_WIDTH / TILE_SIZE;
+    private static final int TILES_Y = GRID_HEIGHT / TILE_SIZE;
+    private static final long TEXTURE_SAMPLE_INTERVAL_NS = 100_000_000L; // 100ms
+
+    private final CapturerObserver delegate;
+    private final Handler handler;
+    private final Options options;
+    private final FrameGate<VideoFrame> gate;
+
+    // All of the following are only ever touched on `handler`'s thread.
+    private byte[] reference = new byte[GRID_WIDTH * GRID_HEIGHT];
+    private byte[] current = new byte[GRID_WIDTH * GRID_HEIGHT];
+    private boolean hasReference;
+    private int referenceWidth;
+    private int referenceHeight;
+    // Whether `current` holds the samples of the frame last passed to the gate's changed().
+    private boolean currentSampled;
+    private GlRectDrawer drawer;
+    private GlTextureFrameBuffer frameBuffer;
+    private ByteBuffer pixels;
+    private boolean textureFailed;
+    // Copies of dropped texture frames, created lazily.
+    private TextureFrameCopier copier;
+    private boolean copyFailed;
+
+    /**
+     * @param handler the capturer's handler, the thread on which {@link #onFrameCaptured} is
+     *                delivered
+     */
+    public ChangeDetectingCapturerObserver(CapturerObserver delegate, Handler handler, Options options) {
+        this.delegate = delegate;
+        this.handler = handler;
+        this.options = options;
+        long maxStalenessNs = options.maxStalenessMs * 1_000_000L;
+        this.gate = new FrameGate<>(new GateHost(), TEXTURE_SAMPLE_INTERVAL_NS, maxStalenessNs);
+    }
+
+    public void putStats(WritableMap stats) {
+        long captured = gate.getCapturedFrames();
+        long dropped = gate.getDroppedFrames();
+        stats.putDouble("capturedFrames", captured);
+        stats.putDouble("droppedUnchangedFrames", dropped);
+        stats.putDouble("dropRatio", captured > 0 ? (double) dropped / captured : 0);
+    }
+
+    @Override
+    public void onCapturerStarted(boolean success) {
+        delegate.onCapturerStarted(success);
+    }
+
+    @Override
+    public void onCapturerStopped() {
+        // Posted by the capturer on its handler thread, after the last frame.
+        gate.clear();
+        hasReference = false;
+        releaseGl();
+        delegate.onCapturerStopped();
+    }
+
+    @Override
+    public void onFrameCaptured(VideoFrame frame) {
+        gate.onFrame(frame);
+    }
+
+    private boolean isSameSize(VideoFrame.Buffer buffer) {
+        return buffer.getWidth() == referenceWidth && buffer.getHeight() == referenceHeight;
+    }
+
+    private final class GateHost implements FrameGate.Host<VideoFrame> {
+        @Override
+        public long nowNs() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayNs) {
+            // Rounded up, so the task never runs before its time.
+            handler.postDelayed(task, (delayNs + 999_999L) / 1_000_000L);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            handler.removeCallbacks(task);
+        }
+
+        @Override
+        public boolean isThrottled(VideoFrame frame) {
+            // A frame that can't be compared is forwarded anyway, no point in holding it.
+            VideoFrame.Buffer buffer = frame.getBuffer();
+            return buffer instanceof VideoFrame.TextureBuffer && !textureFailed && hasReference
+                    && isSameSize(buffer);
+        }
+
+        @Override
+        public boolean changed(VideoFrame frame) {
+            VideoFrame.Buffer buffer = frame.getBuffer();
+            currentSampled = sample(buffer);
+            return !(currentSampled && hasReference && isSameSize(buffer) && !tilesChanged());
+        }
+
+        @Override
+        public void forward(VideoFrame frame, boolean late) {
+            // This frame becomes the reference. Without samples there is nothing to compare the
+            // next frame against, so it gets forwarded too.
+            VideoFrame.Buffer buffer = frame.getBuffer();
+            if (currentSampled) {
+                byte[] swap = reference;
+                reference = current;
+                current = swap;
+            }
+            hasReference = currentSampled;
+            referenceWidth = buffer.getWidth();
+            referenceHeight = buffer.getHeight();
+            if (!late) {
+                delegate.onFrameCaptured(frame);
+                return;
+            }
+            // The repeater may have sent frames stamped later than this one was captured.
+            if (buffer instanceof VideoFrame.TextureBuffer) {
+                // A copy drawn earlier, which the encoder samples from another EGL context.
+                GLES20.glFinish();
+            }
+            buffer.retain();
+            VideoFrame restamped = new VideoFrame(buffer, frame.getRotation(), System.nanoTime());
+            delegate.onFrameCaptured(restamped);
+            restamped.release();
+        }
+
+        @Override
+        public void retain(VideoFrame frame) {
+            frame.retain();
+        }
+
+        @Override
+        public void release(VideoFrame frame) {
+            frame.release();
+        }
+
+        @Nullable
+        @Override
+        public VideoFrame copy(VideoFrame frame) {
+            VideoFrame.Buffer buffer = frame.getBuffer();
+            VideoFrame.Buffer copy;
+            if (buffer instanceof VideoFrame.TextureBuffer && !copyFailed) {
+                if (copier == null) {
+                    // One slot for the kept frame, one to draw the next dropped frame into.
+                    copier = new TextureFrameCopier(handler, 2);
+                }
+                try {
+                    copy = copier.copy((VideoFrame.TextureBuffer) buffer);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "GPU frame copy failed, keeping dropped frames as I420 from now on", e);
+                    copyFailed = true;
+                    copy = buffer.toI420();
+                }
+            } else {
+                // An I420 buffer is retained rather than copied.
+                copy = buffer.toI420();
+            }
+            return copy != null ? new VideoFrame(copy, frame.getRotation(), frame.getTimestampNs()) : null;
+        }
+    }
+
+    private boolean tilesChanged() {
+        int dirtyTiles = 0;
+        int allowed = (int) (options.maxDirtyArea * TILES_X * TILES_Y);
+        for (int ty = 0; ty < TILES_Y; ty++) {
+            for (int tx = 0; tx < TILES_X; tx++) {
+                if (tileChanged(tx, ty) && ++dirtyTiles > allowed) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean tileChanged(int tx, int ty) {
+        int threshold = options.pixelThreshold;
+        for (int y = ty * TILE_SIZE; y < (ty + 1) * TILE_SIZE; y++) {
+            int row = y * GRID_WIDTH;
+            for (int x = tx * TILE_SIZE; x < (tx + 1) * TILE_SIZE; x++) {
+                int diff = (reference[row + x] & 0xff) - (current[row + x] & 0xff);
+                if (diff > threshold || -diff > threshold) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fills {@link #current} with the luma grid of {@code buffer}. Returns false if that isn't
+     * possible, in which case the frame is forwarded.
+     */
+    private boolean sample(VideoFrame.Buffer buffer) {
+        if (buffer instanceof VideoFrame.TextureBuffer) {
+            return sampleTexture((VideoFrame.TextureBuffer) buffer);
+        }
+        if (buffer instanceof VideoFrame.I420Buffer) {
+            sampleI420((VideoFrame.I420Buffer) buffer);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean sampleTexture(VideoFrame.TextureBuffer buffer) {
+        if (textureFailed) {
+            return false;
+        }
+        try {
+            if (drawer == null) {
+                if (EGL14.eglGetCurrentContext() == EGL14.EGL_NO_CONTEXT) {
+                    throw new IllegalStateException("No EGL context on the capture thread");
+                }
+                drawer = new GlRectDrawer();
+                frameBuffer = new GlTextureFrameBuffer(GLES20.GL_RGBA);
+                frameBuffer.setSize(GRID_WIDTH, GRID_HEIGHT);
+                pixels = ByteBuffer.allocateDirect(GRID_WIDTH * GRID_HEIGHT * 4);
+            }
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBuffer.getFrameBufferId());
+            float[] matrix = RendererCommon.convertMatrixFromAndroidGraphicsMatrix(buffer.getTransformMatrix());
+            if (buffer.getType() == VideoFrame.TextureBuffer.Type.OES) {
+                drawer.drawOes(buffer.getTextureId(),
+                        matrix,
+                        buffer.getWidth(),
+                        buffer.getHeight(),
+                        0,
+                        0,
+                        GRID_WIDTH,
+                        GRID_HEIGHT);
+            } else {
+                drawer.drawRgb(buffer.getTextureId(),
+                        matrix,
+                        buffer.getWidth(),
+                        buffer.getHeight(),
+                        0,
+                        0,
+                        GRID_WIDTH,
+                        GRID_HEIGHT);
+            }
+            pixels.clear();
+            GLES20.glReadPixels(0, 0, GRID_WIDTH, GRID_HEIGHT, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "GPU sampling failed, forwarding every texture frame from now on", e);
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+            textureFailed = true;
+            return false;
+        }
+
+        for (int i = 0; i < current.length; i++) {
+            int r = pixels.get(i * 4) & 0xff;
+            int g = pixels.get(i * 4 + 1) & 0xff;
+            int b = pixels.get(i * 4 + 2) & 0xff;
+            current[i] = (byte) ((r + 2 * g + b) >> 2);
+        }
+        return true;
+    }
+
+    private void sampleI420(VideoFrame.I420Buffer buffer) {
+        ByteBuffer y = buffer.getDataY();
+        int stride = buffer.getStrideY();
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        for (int gy = 0; gy < GRID_HEIGHT; gy++) {
+            int row = (gy * height / GRID_HEIGHT) * stride;
+            for (int gx = 0; gx < GRID_WIDTH; gx++) {
+                current[gy * GRID_WIDTH + gx] = y.get(row + gx * width / GRID_WIDTH);
+            }
+        }
+    }
+
+    private void releaseGl() {
+        if (copier != null) {
+            // Frees the textures once the last copy in flight is released.
+            copier.release();
+            copier = null;
+        }
+        if (drawer != null) {
+            drawer.release();
+            drawer = null;
+            frameBuffer.release();
+            frameBuffer = null;
+            pixels = null;
+        }
+    }
+
+    /**
+     * Read from the {@code android.frameFilter} constraints of {@code getDisplayMedia}:
+     * {@code {maxDirtyArea?, pixelThreshold?, maxStalenessMs?}}. Without them no frames are
+     * dropped.
+     */
+    public static final class Options {
+        /** Fraction of tiles (0-1) which may change while a frame still counts as unchanged. */
+        final double maxDirtyArea;
+        /** Luma difference (0-255) below which a sample counts as unchanged. */
+        final int pixelThreshold;
+        /** A frame is forwarded at least this often, changed or not. */
+        final long maxStalenessMs;
+
+        Options(double maxDirtyArea, int pixelThreshold, long maxStalenessMs) {
+            this.maxDirtyArea = maxDirtyArea;
+            this.pixelThreshold = pixelThreshold;
+            this.maxStalenessMs = maxStalenessMs;
+        }
+
+        @Nullable
+        public static Options fromMap(@Nullable ReadableMap map) {
+            if (map == null) {
+                return null;
+            }
+            double maxDirtyArea = map.hasKey("maxDirtyArea") ? map.getDouble("maxDirtyArea") : 0;
+            int pixelThreshold = map.hasKey("pixelThreshold") ? map.getInt("pixelThreshold") : 8;
+            long maxStalenessMs = map.hasKey("maxStalenessMs") ? (long) map.getDouble("maxStalenessMs") : 1000;
+            return new Options(Math.max(0, Math.min(1, maxDirtyArea)),
+                    Math.max(0, Math.min(255, pixelThreshold)),
+                    Math.max(0, maxStalenessMs));
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.util.Log;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.WritableMap;
 
+import org.webrtc.SurfaceTextureHelper;
 import org.webrtc.VideoCapturer;
 import org.webrtc.VideoSource;
 
@@ -148,6 +149,15 @@ class CustomVideoCaptureController extends AbstractVideoCaptureController {
         delivery.pushExternalBuffer(ahbHandle, timestampNs, rotation);
     }
 
+    /**
+     * The helper whose GL thread delivers this track's frames, or null if not attached (or
+     * already released).
+     */
+    SurfaceTextureHelper getSurfaceTextureHelper() {
+        CustomVideoFrameDelivery delivery = frameDelivery;
+        return delivery != null ? delivery.getSurfaceTextureHelper() : null;
+    }
+
     /**
      * Whether this controller has released its GPU resources (or was never wired to
      * a source). Once true, no in-flight delivery can reference the pool's AHBs, so
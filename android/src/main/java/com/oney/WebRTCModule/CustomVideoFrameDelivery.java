@@ -119,6 +119,13 @@ final class CustomVideoFrameDelivery {
         this.glHandler.post(() -> yuvConverter = new YuvConverter());
     }
 
+    /**
+     * The helper owning the GL thread frames are delivered on; video effects run there too.
+     */
+    SurfaceTextureHelper getSurfaceTextureHelper() {
+        return surfaceTextureHelper;
+    }
+
     /** Begin accepting pushed frames. */
     void start() {
         synchronized (stateLock) {
@@ -5,11 +5,14 @@ import android.util.Base64;
 import androidx.annotation.Nullable;
 
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
 import org.webrtc.DataChannel;
 
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledFuture;
 
 class DataChannelWrapper implements DataChannel.Observer {
     private final String reactTag;
@@ -17,11 +20,35 @@ class DataChannelWrapper implements DataChannel.Observer {
     private final int peerConnectionId;
     private final WebRTCModule webRTCModule;
 
-    DataChannelWrapper(WebRTCModule webRTCModule, int peerConnectionId, String reactTag, DataChannel dataChannel) {
+    // Non-null when received messages go to JS over JSI instead of events.
+    @Nullable
+    private final FJDataChannelInstaller jsi;
+
+    // Receive batching (opt-in, see setBatching). All guarded by `this`.
+    @Nullable
+    private BatchingOptions batching;
+    @Nullable
+    private WritableArray pendingMessages;
+    private int pendingCount;
+    private long pendingBytes;
+    private long pendingBufferedAmount = -1;
+    @Nullable
+    private ScheduledFuture<?> flushTask;
+
+    DataChannelWrapper(WebRTCModule webRTCModule,
+            int peerConnectionId,
+            String reactTag,
+            DataChannel dataChannel,
+            @Nullable FJDataChannelInstaller jsi) {
         this.webRTCModule = webRTCModule;
         this.peerConnectionId = peerConnectionId;
         this.reactTag = reactTag;
         mDataChannel = dataChannel;
+        this.jsi = jsi;
+    }
+
+    boolean usesJSI() {
+        return jsi != null;
     }
 
     public DataChannel getDataChannel() {
@@ -47,8 +74,38 @@ class DataChannelWrapper implements DataChannel.Observer {
         return null;
     }
 
+    /**
+     * Turns receive batching on (or off, with {@code null} options). While on,
+     * received messages and buffered amount updates are coalesced into a single
+     * {@code dataChannelReceiveMessages} event, flushed when the window elapses
+     * or the count / byte threshold is hit. Turning it off flushes what is
+     * pending.
+     */
+    synchronized void setBatching(@Nullable ReadableMap options) {
+        flush();
+        batching = options != null ? BatchingOptions.fromMap(options) : null;
+    }
+
+    /**
+     * Flushes pending messages and stops the flush timer. Called when the
+     * channel goes away.
+     */
+    synchronized void release() {
+        flush();
+        batching = null;
+    }
+
     @Override
     public void onBufferedAmountChange(long amount) {
+        synchronized (this) {
+            if (batching != null) {
+                // Only the latest value matters, it goes out with the next flush.
+                pendingBufferedAmount = amount;
+                scheduleFlush();
+                return;
+            }
+        }
+
         WritableMap params = Arguments.createMap();
         params.putString("reactTag", reactTag);
         params.putInt("peerConnectionId", peerConnectionId);
@@ -59,9 +116,18 @@ class DataChannelWrapper implements DataChannel.Observer {
 
     @Override
     public void onMessage(DataChannel.Buffer buffer) {
-        WritableMap params = Arguments.createMap();
-        params.putString("reactTag", reactTag);
-        params.putInt("peerConnectionId", peerConnectionId);
+        if (jsi != null && buffer.data.isDirect()) {
+            // Straight from libwebrtc's buffer into the JS ArrayBuffer.
+            jsi.deliverMessage(peerConnectionId,
+                    reactTag,
+                    buffer.data,
+                    buffer.data.position(),
+                    buffer.data.remaining(),
+                    buffer.binary);
+            return;
+        }
+
+        int size = buffer.data.remaining();
 
         byte[] bytes;
         if (buffer.data.hasArray()) {
@@ -80,6 +146,31 @@ class DataChannelWrapper implements DataChannel.Observer {
             type = "text";
             data = new String(bytes, StandardCharsets.UTF_8);
         }
+
+        synchronized (this) {
+            if (batching != null) {
+                WritableMap message = Arguments.createMap();
+                message.putString("type", type);
+                message.putString("data", data);
+                if (pendingMessages == null) {
+                    pendingMessages = Arguments.createArray();
+                }
+                pendingMessages.pushMap(message);
+                pendingCount++;
+                pendingBytes += size;
+
+                if (pendingCount >= batching.maxMessages || pendingBytes >= batching.maxBytes) {
+                    flush();
+                } else {
+                    scheduleFlush();
+                }
+                return;
+            }
+        }
+
+        WritableMap params = Arguments.createMap();
+        params.putString("reactTag", reactTag);
+        params.putInt("peerConnectionId", peerConnectionId);
         params.putString("type", type);
         params.putString("data", data);
 
@@ -88,6 +179,11 @@ class DataChannelWrapper implements DataChannel.Observer {
 
     @Override
     public void onStateChange() {
+        // Messages received before a state change must reach JS before it.
+        synchronized (this) {
+            flush();
+        }
+
         WritableMap params = Arguments.createMap();
         params.putString("reactTag", reactTag);
         params.putInt("peerConnectionId", peerConnectionId);
@@ -96,4 +192,66 @@ class DataChannelWrapper implements DataChannel.Observer {
 
         webRTCModule.sendEvent("dataChannelStateChanged", params);
     }
+
+    // Must be called with `this` held.
+    private void scheduleFlush() {
+        if (flushTask == null) {
+            flushTask = ThreadUtils.schedule(() -> {
+                synchronized (this) {
+                    flushTask = null;
+                    flush();
+                }
+            }, batching.windowMs);
+        }
+    }
+
+    /**
+     * Emits everything pending as one event. Must be called with `this` held:
+     * emitting under the lock keeps batches in order when a threshold flush on
+     * the network thread races the timer.
+     */
+    private void flush() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (pendingMessages == null && pendingBufferedAmount < 0) {
+            return;
+        }
+
+        WritableMap params = Arguments.createMap();
+        params.putString("reactTag", reactTag);
+        params.putInt("peerConnectionId", peerConnectionId);
+        params.putArray("messages", pendingMessages != null ? pendingMessages : Arguments.createArray());
+        if (pendingBufferedAmount >= 0) {
+            params.putDouble("bufferedAmount", Long.valueOf(pendingBufferedAmount).doubleValue());
+        }
+
+        pendingMessages = null;
+        pendingCount = 0;
+        pendingBytes = 0;
+        pendingBufferedAmount = -1;
+
+        webRTCModule.sendEvent("dataChannelReceiveMessages", params);
+    }
+
+    private static final class BatchingOptions {
+        long windowMs = 16;
+        int maxMessages = 64;
+        long maxBytes = 64 * 1024;
+
+        static BatchingOptions fromMap(ReadableMap map) {
+            BatchingOptions options = new BatchingOptions();
+            if (map.hasKey("windowMs")) {
+                options.windowMs = Math.max(1, (long) map.getDouble("windowMs"));
+            }
+            if (map.hasKey("maxMessages")) {
+                options.maxMessages = Math.max(1, map.getInt("maxMessages"));
+            }
+            if (map.hasKey("maxBytes")) {
+                options.maxBytes = Math.max(1, (long) map.getDouble("maxBytes"));
+            }
+            return options;
+        }
+    }
 }
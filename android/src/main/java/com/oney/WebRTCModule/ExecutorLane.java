@@ -0,0 +1,223 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * A serial lane multiplexed onto a shared thread pool. Tasks submitted to the same lane run one
+ * at a time, in submission order, while tasks on different lanes may run concurrently on
+ * different pool threads.
+ *
+ * <p>Each lane keeps queue depth and wait time counters (the time a task spent queued behind
+ * earlier tasks of the same lane before it started running), so contention on a single
+ * PeerConnection can be observed without instrumenting individual calls.
+ */
+final class ExecutorLane implements Executor {
+    private static final String TAG = WebRTCModule.TAG;
+
+    private final String name;
+    private final Executor pool;
+
+    // All of the following are guarded by `this`.
+    private final ArrayDeque<Task> queue = new ArrayDeque<>();
+    private boolean draining;
+    // A task of the lane, or a runExclusive caller, is running.
+    private boolean busy;
+    // runExclusive callers waiting for the running task; they go before the queued ones.
+    private int exclusiveWaiters;
+    // Set by closeInto(), forwardTo takes over once the calling task returns.
+    @Nullable
+    private ExecutorLane closingInto;
+    @Nullable
+    private ExecutorLane forwardTo;
+    private int maxQueueDepth;
+    private long submittedCount;
+    private long completedCount;
+    private long totalWaitNs;
+    private long maxWaitNs;
+    private long lastWaitNs;
+
+    ExecutorLane(String name, Executor pool) {
+        this.name = name;
+        this.pool = pool;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        boolean schedule;
+        ExecutorLane target;
+        synchronized (this) {
+            target = forwardTo;
+            if (target == null) {
+                queue.add(new Task(runnable, System.nanoTime()));
+                submittedCount++;
+                maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+            }
+            schedule = target == null && !draining;
+            draining |= schedule;
+        }
+        if (target != null) {
+            target.execute(runnable);
+        } else if (schedule) {
+            pool.execute(this::drain);
+        }
+    }
+
+    /**
+     * Closes this lane once the calling task returns: the tasks still queued then, and any
+     * submitted after, run on {@code target} instead, in order. Must be called from a task of this
+     * lane; nothing is forwarded before that task is done, so nothing of this lane ever runs
+     * concurrently with {@code target}.
+     */
+    synchronized void closeInto(ExecutorLane target) {
+        closingInto = target;
+    }
+
+    /**
+     * Runs {@code callable} on the calling thread, ahead of the tasks still queued but never
+     * concurrently with one of them: it waits for the running task, if any, to finish and holds
+     * the lane off until it returns.
+     */
+    <T> T runExclusive(Callable<T> callable) throws Exception {
+        ExecutorLane target;
+        synchronized (this) {
+            target = forwardTo;
+            if (target == null) {
+                acquire(true);
+                // Closed by the task it waited for.
+                target = forwardTo;
+                if (target != null) {
+                    busy = false;
+                    notifyAll();
+                }
+            }
+        }
+        if (target != null) {
+            return target.runExclusive(callable);
+        }
+        try {
+            return callable.call();
+        } finally {
+            release();
+        }
+    }
+
+    // Must be called with `this` held.
+    private void acquire(boolean exclusive) {
+        boolean interrupted = false;
+        if (exclusive) {
+            exclusiveWaiters++;
+        }
+        while (busy || (!exclusive && exclusiveWaiters > 0)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (exclusive) {
+            exclusiveWaiters--;
+        }
+        busy = true;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void release() {
+        busy = false;
+        notifyAll();
+    }
+
+    /**
+     * Runs queued tasks until the lane is empty. Only one drain per lane is ever in flight, which
+     * is what makes the lane serial.
+     */
+    private void drain() {
+        while (true) {
+            Task task;
+            synchronized (this) {
+                task = queue.poll();
+                if (task == null) {
+                    draining = false;
+                    return;
+                }
+                acquire(false);
+                long waitNs = System.nanoTime() - task.enqueuedNs;
+                lastWaitNs = waitNs;
+                totalWaitNs += waitNs;
+                maxWaitNs = Math.max(maxWaitNs, waitNs);
+            }
+
+            try {
+                task.runnable.run();
+            } catch (Throwable t) {
+                // Don't let one failing task take down the rest of the lane.
+                Log.e(TAG, "Uncaught exception on executor lane " + name, t);
+            }
+
+            synchronized (this) {
+                completedCount++;
+                busy = false;
+                notifyAll();
+                if (closingInto != null) {
+                    // Forwarded under the lock, so tasks submitted meanwhile can't overtake them.
+                    forwardTo = closingInto;
+                    closingInto = null;
+                    for (Task queued : queue) {
+                        forwardTo.execute(queued.runnable);
+                    }
+                    queue.clear();
+                    draining = false;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a consistent snapshot of this lane's counters.
+     */
+    synchronized Stats getStats() {
+        Stats stats = new Stats();
+        stats.name = name;
+        stats.queueDepth = queue.size();
+        stats.maxQueueDepth = maxQueueDepth;
+        stats.submittedCount = submittedCount;
+        stats.completedCount = completedCount;
+        stats.totalWaitNs = totalWaitNs;
+        stats.maxWaitNs = maxWaitNs;
+        stats.lastWaitNs = lastWaitNs;
+        return stats;
+    }
+
+    static final class Stats {
+        String name;
+        int queueDepth;
+        int maxQueueDepth;
+        long submittedCount;
+        long completedCount;
+        long totalWaitNs;
+        long maxWaitNs;
+        long lastWaitNs;
+    }
+
+    private static final class Task {
+        final Runnable runnable;
+        final long enqueuedNs;
+
+        Task(Runnable runnable, long enqueuedNs) {
+            this.runnable = runnable;
+            this.enqueuedNs = enqueuedNs;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.oney.WebRTCModule;
+
+import com.facebook.jni.HybridData;
+import com.facebook.proguard.annotations.DoNotStrip;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.turbomodule.core.CallInvokerHolderImpl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Installs the JS globals {@code __fishjamWebrtcDataChannelSend} and
+ * {@code __fishjamWebrtcSetDataChannelHandler}, a JSI path for DataChannel
+ * messages which skips the Base64 round trip of the bridge events.
+ *
+ * <p>Sends are forwarded by C++ to {@link #send} synchronously on the JS thread,
+ * with the JS ArrayBuffer (or UTF-8 string) wrapped in a direct
+ * {@link ByteBuffer}. Received messages are handed to {@link #deliverMessage},
+ * which copies them once out of libwebrtc's direct buffer into the ArrayBuffer
+ * JS receives.
+ *
+ * <p>Whether a channel uses this path is decided once, when the channel is
+ * created ({@link #hasHandler()}), so its messages never switch between the
+ * JSI and the event path mid-stream.
+ */
+@DoNotStrip
+final class FJDataChannelInstaller {
+    static {
+        System.loadLibrary("webrtc-datachannel");
+    }
+
+    /**
+     * Sends one message on a DataChannel. {@code data} is only valid for the
+     * duration of the call.
+     */
+    interface Sender {
+        boolean send(int pcId, String reactTag, ByteBuffer data, boolean binary);
+    }
+
+    private final HybridData mHybridData;
+    private final Sender sender;
+
+    // Callers waiting for the JSI globals to be installed. Guarded by `this`.
+    private final List<Promise> pendingInstalls = new ArrayList<>();
+
+    FJDataChannelInstaller(ReactApplicationContext reactContext, Sender sender) {
+        this.sender = sender;
+        mHybridData = initHybrid((CallInvokerHolderImpl) reactContext.getJSCallInvokerHolder());
+    }
+
+    /**
+     * Installs (or re-installs) the JSI globals, resolving {@code promise} once
+     * they are in place. Always re-runs the native install, for the same JS
+     * reload reason as {@link FJVideoPushInstaller#install}.
+     */
+    void install(Promise promise) {
+        synchronized (this) {
+            pendingInstalls.add(promise);
+        }
+        installChannel();
+    }
+
+    /** Invoked from C++ on the JS thread once the globals have been set. */
+    @DoNotStrip
+    private void onChannelInstalled() {
+        List<Promise> promises;
+        synchronized (this) {
+            promises = new ArrayList<>(pendingInstalls);
+            pendingInstalls.clear();
+        }
+        for (Promise p : promises) {
+            p.resolve(true);
+        }
+    }
+
+    /**
+     * Invoked from C++ for every message sent through the JSI global, on the
+     * JS thread. {@code data} is a direct buffer over JS memory, so it must be
+     * consumed before returning.
+     */
+    @DoNotStrip
+    private boolean send(int pcId, String reactTag, ByteBuffer data, boolean binary) {
+        return sender.send(pcId, reactTag, data, binary);
+    }
+
+    /** Whether JS has registered its receive handler. */
+    @DoNotStrip
+    native boolean hasHandler();
+
+    /**
+     * Delivers a received message to JS. {@code data} must be a direct
+     * {@link ByteBuffer}; C++ copies {@code length} bytes at {@code offset}
+     * before returning. Called on a libwebrtc thread.
+     */
+    @DoNotStrip
+    native void deliverMessage(int pcId, String reactTag, ByteBuffer data, int offset, int length, boolean binary);
+
+    @DoNotStrip
+    private native HybridData initHybrid(CallInvokerHolderImpl callInvokerHolder);
+
+    @DoNotStrip
+    private native void installChannel();
+}
@@ -0,0 +1,196 @@
+package com.oney.WebRTCModule;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The timing side of {@link ChangeDetectingCapturerObserver}: which frames are sampled right away,
+ * which wait for the next sample slot, and when a dropped frame has to be forwarded after all. The
+ * sampling, the frames and the clock are left to a {@link Host}, so this runs without a GPU.
+ *
+ * No frame is dropped without having been sampled: a throttled frame which arrives too soon after
+ * the last sample is held and sampled once the interval is over (or replaced by a newer one). A
+ * screen capturer only delivers frames when something changed, so a change is picked up at most
+ * one interval late even if no frame follows it. The newest dropped frame is kept (as a copy) and
+ * forwarded once nothing was forwarded for {@code maxStalenessNs}, again without waiting for
+ * another frame.
+ *
+ * Not thread-safe: everything, including the tasks posted through the host, runs on the capturer's
+ * handler thread.
+ */
+class FrameGate<F> {
+    interface Host<F> {
+        long nowNs();
+
+        void postDelayed(Runnable task, long delayNs);
+
+        void cancel(Runnable task);
+
+        /**
+         * Whether sampling {@code frame} is rate limited (a GPU readback), i.e. whether it may have
+         * to wait for the next sample slot.
+         */
+        boolean isThrottled(F frame);
+
+        /**
+         * Samples {@code frame} and returns whether it differs from the last forwarded frame, true if
+         * that can't be told.
+         */
+        boolean changed(F frame);
+
+        /**
+         * Forwards {@code frame}, always right after {@link #changed} was called with it; what was
+         * sampled becomes the reference. A {@code late} frame is forwarded after frames that arrived
+         * later may have been repeated downstream, so it has to be stamped anew.
+         */
+        void forward(F frame, boolean late);
+
+        void retain(F frame);
+
+        void release(F frame);
+
+        /**
+         * Returns an already-retained copy of {@code frame} which doesn't hold up the capturer, null
+         * if none can be made right now.
+         */
+        @Nullable
+        F copy(F frame);
+    }
+
+    private final Host<F> host;
+    private final long sampleIntervalNs;
+    private final long maxStalenessNs;
+
+    private long lastSampleNs;
+    private long lastForwardedNs;
+    // Retained. A throttled frame waiting for its sample slot.
+    @Nullable
+    private F deferred;
+    // Retained. A copy of the newest frame dropped since the last forward.
+    @Nullable
+    private F kept;
+
+    // Written on the handler thread only, read from anywhere for stats.
+    private volatile long capturedFrames;
+    private volatile long droppedFrames;
+
+    private final Runnable sampleDeferred = this::sampleDeferred;
+    private final Runnable forwardKept = this::forwardKept;
+
+    FrameGate(Host<F> host, long sampleIntervalNs, long maxStalenessNs) {
+        this.host = host;
+        this.sampleIntervalNs = sampleIntervalNs;
+        this.maxStalenessNs = maxStalenessNs;
+        // Nothing has been sampled or forwarded yet.
+        this.lastSampleNs = host.nowNs() - sampleIntervalNs;
+        this.lastForwardedNs = host.nowNs() - maxStalenessNs;
+    }
+
+    long getCapturedFrames() {
+        return capturedFrames;
+    }
+
+    /**
+     * Frames which were never forwarded, not counting the one kept for the staleness bound.
+     */
+    long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    void onFrame(F frame) {
+        capturedFrames++;
+
+        long now = host.nowNs();
+        boolean throttled = host.isThrottled(frame);
+        if (throttled && now - lastSampleNs < sampleIntervalNs) {
+            // Too soon for another readback: sample it once the interval is over. Holding a
+            // capture texture keeps the capturer from delivering the next frame meanwhile, so
+            // whatever changed later arrives right after.
+            if (deferred != null) {
+                host.release(deferred);
+                droppedFrames++;
+            } else {
+                host.postDelayed(sampleDeferred, lastSampleNs + sampleIntervalNs - now);
+            }
+            host.retain(frame);
+            deferred = frame;
+            return;
+        }
+
+        process(frame, now, throttled, false);
+    }
+
+    /**
+     * Releases the frames still held, e.g. when capturing stops.
+     */
+    void clear() {
+        host.cancel(sampleDeferred);
+        host.cancel(forwardKept);
+        if (deferred != null) {
+            host.release(deferred);
+            deferred = null;
+            droppedFrames++;
+        }
+        releaseKept();
+    }
+
+    private void sampleDeferred() {
+        F frame = deferred;
+        if (frame == null) {
+            return;
+        }
+        deferred = null;
+        process(frame, host.nowNs(), true, true);
+        host.release(frame);
+    }
+
+    private void process(F frame, long now, boolean throttled, boolean late) {
+        if (throttled) {
+            lastSampleNs = now;
+        }
+        if (host.changed(frame) || now - lastForwardedNs >= maxStalenessNs) {
+            forward(frame, now, late);
+            return;
+        }
+
+        // Dropped, but the newest such frame still has to get through within maxStalenessNs.
+        F copy = host.copy(frame);
+        if (copy == null) {
+            // The previously kept frame stands in for this one.
+            droppedFrames++;
+            return;
+        }
+        if (kept == null) {
+            host.postDelayed(forwardKept, lastForwardedNs + maxStalenessNs - now);
+        } else {
+            releaseKept();
+        }
+        kept = copy;
+    }
+
+    private void forwardKept() {
+        F frame = kept;
+        if (frame == null) {
+            return;
+        }
+        kept = null;
+        // Sampled again, so it becomes the reference.
+        host.changed(frame);
+        forward(frame, host.nowNs(), true);
+        host.release(frame);
+    }
+
+    private void forward(F frame, long now, boolean late) {
+        lastForwardedNs = now;
+        host.cancel(forwardKept);
+        releaseKept();
+        host.forward(frame, late);
+    }
+
+    private void releaseKept() {
+        if (kept != null) {
+            host.release(kept);
+            kept = null;
+            droppedFrames++;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.oney.WebRTCModule;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+import org.webrtc.VideoTrack;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Opt-in frame telemetry for local and remote video tracks, to diagnose rendering stalls without
+ * polling {@code getStats}. Each probe is a {@link VideoSink} on its track counting the delivered
+ * frames, resolution changes, a histogram of the gaps between frames and freezes (gaps above
+ * {@link #FREEZE_FACTOR} times the median gap).
+ *
+ * <p>Frames are counted on the track's delivery thread without locking: every counter has a single
+ * writer and is read through volatile fields or atomics. Probes are keyed like
+ * {@link WebRTCModule#getTrack}: by PeerConnection id (-1 for local tracks) and track id.
+ */
+class FrameProbes {
+    /** Upper bounds (exclusive) of the gap histogram buckets; the last bucket is open-ended. */
+    static final long[] GAP_BUCKETS_MS = {17, 34, 50, 100, 200, 500, 1000};
+    static final int FREEZE_FACTOR = 3;
+    /** How many recent gaps the median is taken over. */
+    private static final int MEDIAN_WINDOW = 32;
+
+    private final Map<String, Probe> probes = new ConcurrentHashMap<>();
+
+    void enable(int pcId, VideoTrack track) {
+        String key = key(pcId, track.id());
+        if (probes.containsKey(key)) {
+            return;
+        }
+        Probe probe = new Probe(pcId, track);
+        probes.put(key, probe);
+        track.addSink(probe);
+    }
+
+    void disable(int pcId, String trackId) {
+        Probe probe = probes.remove(key(pcId, trackId));
+        if (probe != null) {
+            probe.track.removeSink(probe);
+        }
+    }
+
+    /**
+     * Drops the probes of a PeerConnection's remote tracks. Must run before they are disposed.
+     */
+    void disableAll(int pcId) {
+        for (Iterator<Probe> it = probes.values().iterator(); it.hasNext();) {
+            Probe probe = it.next();
+            if (probe.pcId == pcId) {
+                it.remove();
+                probe.track.removeSink(probe);
+            }
+        }
+    }
+
+    WritableArray getStats() {
+        WritableArray result = Arguments.createArray();
+        long nowNs = System.nanoTime();
+        for (Probe probe : probes.values()) {
+            result.pushMap(probe.toMap(nowNs));
+        }
+        return result;
+    }
+
+    private static String key(int pcId, String trackId) {
+        return pcId + ":" + trackId;
+    }
+
+    // Package-private, as are its counters, so the gap statistics can be unit tested.
+    static final class Probe implements VideoSink {
+        final int pcId;
+        final VideoTrack track;
+
+        final AtomicLongArray gapCounts = new AtomicLongArray(GAP_BUCKETS_MS.length + 1);
+        volatile long frames;
+        volatile long resolutionChanges;
+        volatile int width;
+        volatile int height;
+        volatile long lastFrameNs;
+        volatile long medianGapNs;
+        volatile long freezeCount;
+        volatile long totalFreezesNs;
+
+        // Only touched on the delivery thread.
+        private final long[] recentGapsNs = new long[MEDIAN_WINDOW];
+        private final long[] sortedGapsNs = new long[MEDIAN_WINDOW];
+        private int recentGapCount;
+
+        Probe(int pcId, VideoTrack track) {
+            this.pcId = pcId;
+            this.track = track;
+        }
+
+        @Override
+        public void onFrame(VideoFrame frame) {
+            long nowNs = System.nanoTime();
+            int frameWidth = frame.getRotatedWidth();
+            int frameHeight = frame.getRotatedHeight();
+            if (frames > 0 && (frameWidth != width || frameHeight != height)) {
+                resolutionChanges++;
+            }
+            width = frameWidth;
+            height = frameHeight;
+
+            if (frames > 0) {
+                onGap(nowNs - lastFrameNs);
+            }
+            lastFrameNs = nowNs;
+            frames++;
+        }
+
+        void onGap(long gapNs) {
+            long gapMs = gapNs / 1_000_000;
+            int bucket = 0;
+            while (bucket < GAP_BUCKETS_MS.length && gapMs >= GAP_BUCKETS_MS[bucket]) {
+                bucket++;
+            }
+            gapCounts.incrementAndGet(bucket);
+
+            // Judged against the median before this gap, so a freeze doesn't inflate its own bar.
+            long median = medianGapNs;
+            if (median > 0 && gapNs > FREEZE_FACTOR * median) {
+                freezeCount++;
+                totalFreezesNs += gapNs;
+            }
+
+            recentGapsNs[recentGapCount % MEDIAN_WINDOW] = gapNs;
+            recentGapCount++;
+            // Re-sorting every few gaps is plenty for a value which moves slowly.
+            if (recentGapCount >= MEDIAN_WINDOW / 4 && recentGapCount % (MEDIAN_WINDOW / 4) == 0) {
+                int count = Math.min(recentGapCount, MEDIAN_WINDOW);
+                System.arraycopy(recentGapsNs, 0, sortedGapsNs, 0, count);
+                Arrays.sort(sortedGapsNs, 0, count);
+                medianGapNs = sortedGapsNs[count / 2];
+            }
+        }
+
+        WritableMap toMap(long nowNs) {
+            long frameCount = frames;
+            WritableMap map = Arguments.createMap();
+            map.putInt("pcId", pcId);
+            map.putString("trackId", track.id());
+            map.putDouble("frames", frameCount);
+            map.putDouble("resolutionChanges", resolutionChanges);
+            if (frameCount > 0) {
+                map.putInt("width", width);
+                map.putInt("height", height);
+                map.putDouble("lastFrameAgeMs", (nowNs - lastFrameNs) / 1e6);
+            }
+            long median = medianGapNs;
+            if (median > 0) {
+                map.putDouble("medianGapMs", median / 1e6);
+            }
+            map.putDouble("freezeCount", freezeCount);
+            map.putDouble("totalFreezesDurationMs", totalFreezesNs / 1e6);
+
+            WritableArray bounds = Arguments.createArray();
+            for (long bound : GAP_BUCKETS_MS) {
+                bounds.pushDouble(bound);
+            }
+            WritableArray counts = Arguments.createArray();
+            for (int i = 0; i < gapCounts.length(); i++) {
+                counts.pushDouble(gapCounts.get(i));
+            }
+            map.putArray("gapBucketBoundsMs", bounds);
+            map.putArray("gapCounts", counts);
+            return map;
+        }
+    }
+}
@@ -1,6 +1,15 @@
 package com.oney.WebRTCModule;
 
+import android.opengl.EGL14;
+import android.opengl.GLES20;
 import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
 
 import org.webrtc.CapturerObserver;
 import org.webrtc.VideoFrame;
@@ -28,41 +37,85 @@ import org.webrtc.VideoFrame;
  * from the Android Java API (it's an internal {@code AdaptedVideoTrackSource::ProcessConstraints}
  * call; {@code adaptOutputFormat}, {@code RtpParameters.maxFramerate} and {@code degradationPreference}
  * all feed different paths). So on Android the native repeater never turns on, and this decorator is
- * the equivalent at the one layer we control — the capturer feed. {@link #REPEAT_INTERVAL_MS} is kept
- * at 1000ms to match libwebrtc's idle cadence.
+ * the equivalent at the one layer we control — the capturer feed. The default idle interval of
+ * {@link RepeatPolicy} is kept at 1000ms to match libwebrtc's idle cadence.
+ *
+ * Optionally (see {@link RepeatPolicy}) the repeater bursts: right after the content changed it
+ * repeats at a faster rate for a while, so the encoder converges on a sharp picture of the new
+ * content sooner, then backs off to the idle rate.
  *
  * Important implementation details:
- * - The cached frame is a memory (I420) COPY, never the capture texture. Screen capture is
- *   texture-backed and the SurfaceTexture has a single buffer; holding a texture frame blocks the
- *   capturer from delivering the next frame (which would freeze the stream on the first frame).
+ * - The cached frame is a COPY, never the capture texture. Screen capture is texture-backed and the
+ *   SurfaceTexture has a single buffer; holding a texture frame blocks the capturer from delivering
+ *   the next frame (which would freeze the stream on the first frame).
+ * - Texture frames are copied on the GPU: the capture texture is drawn into one of
+ *   {@link #TEXTURE_SLOTS} RGBA textures owned by the repeater (see {@link TextureFrameCopier}),
+ *   which are then repeated as texture frames. That replaces a full GPU->CPU readback with a GPU
+ *   copy, and the encoder only reads the texture back if it needs I420 itself. A slot is only
+ *   redrawn once every frame built on it has been released, so the encoder never sees a texture
+ *   change under it. Non-texture frames (or a handler thread without a current EGL context) fall
+ *   back to an I420 memory copy.
  * - All frame delivery and state run on the capturer's own handler thread (the same thread that
  *   calls {@link #onFrameCaptured}), so we never feed frames into the source from two threads.
  */
 public class FrameRepeatingCapturerObserver implements CapturerObserver {
-    private static final long REPEAT_INTERVAL_MS = 1000;
+    private static final String TAG = FrameRepeatingCapturerObserver.class.getSimpleName();
+
     // Throttle the (GPU readback) texture->I420 copy; a slightly-stale repeat is fine for a screen
     // that is about to go static, and this keeps the copy cost low while frames are flowing fast.
     private static final long CACHE_MIN_INTERVAL_NS = 500_000_000L; // 500ms
+    // The GPU copy is cheap enough to keep the cache much fresher.
+    private static final long TEXTURE_CACHE_MIN_INTERVAL_NS = 100_000_000L; // 100ms
+    // While bursting the cache has to follow the content closely, but a blit per frame of a 60 fps
+    // capture is wasted: the cached frame is at most one 30 fps frame behind.
+    private static final long BURST_CACHE_MIN_INTERVAL_NS = 33_000_000L; // 33ms
+    // One slot holds the cached frame while the other can be redrawn.
+    private static final int TEXTURE_SLOTS = 2;
 
     private final CapturerObserver delegate;
     private final Handler handler;
+    private final RepeatPolicy policy;
 
     // All of the following are only ever touched on `handler`'s thread.
     private VideoFrame.Buffer lastBuffer;
     private int lastRotation;
     private long lastCacheNs;
+    private long lastRealFrameNs;
     private boolean capturing;
 
+    // Written on `handler`'s thread only, read from anywhere by getStats().
+    private volatile long realFrames;
+    private volatile long repeatedFrames;
+    private volatile long burstRepeatedFrames;
+
+    // GPU cache, created lazily on the first texture frame.
+    private TextureFrameCopier copier;
+    private boolean textureCacheFailed;
+
     private final Runnable repeatRunnable = this::repeatLastFrame;
 
     /**
      * @param delegate the real observer (the VideoSource's capturer observer)
      * @param handler  the capturer's handler (e.g. {@code surfaceTextureHelper.getHandler()}); the
      *                 thread on which {@link #onFrameCaptured} is delivered.
+     * @param policy   when to repeat
      */
-    public FrameRepeatingCapturerObserver(CapturerObserver delegate, Handler handler) {
+    public FrameRepeatingCapturerObserver(CapturerObserver delegate, Handler handler, RepeatPolicy policy) {
         this.delegate = delegate;
         this.handler = handler;
+        this.policy = policy;
+    }
+
+    /**
+     * Counts of the real frames forwarded and of the repeats, so the encode load the repeats cause
+     * can be told apart.
+     */
+    public WritableMap getStats() {
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("realFrames", realFrames);
+        stats.putDouble("repeatedFrames", repeatedFrames);
+        stats.putDouble("burstRepeatedFrames", burstRepeatedFrames);
+        return stats;
     }
 
     @Override
@@ -77,6 +130,11 @@ public class FrameRepeatingCapturerObserver implements CapturerObserver {
             capturing = false;
             handler.removeCallbacks(repeatRunnable);
             releaseCachedFrame();
+            if (copier != null) {
+                // Frees the textures once the last repeat in flight is released.
+                copier.release();
+                copier = null;
+            }
         });
         delegate.onCapturerStopped();
     }
@@ -91,13 +149,27 @@ public class FrameRepeatingCapturerObserver implements CapturerObserver {
             return;
         }
 
+        realFrames++;
+
         final long now = System.nanoTime();
-        if (lastBuffer == null || now - lastCacheNs >= CACHE_MIN_INTERVAL_NS) {
-            // Copy to memory (I420) so we keep the content without pinning the capture texture.
-            VideoFrame.Buffer i420 = frame.getBuffer().toI420();
-            if (i420 != null) {
+        lastRealFrameNs = now;
+        VideoFrame.Buffer buffer = frame.getBuffer();
+        boolean texture = buffer instanceof VideoFrame.TextureBuffer && canUseTextureCache();
+        long minInterval = texture ? TEXTURE_CACHE_MIN_INTERVAL_NS : CACHE_MIN_INTERVAL_NS;
+        if (texture && policy.bursts()) {
+            // Bursts are meant to converge on the latest content, so keep the cache close to it.
+            minInterval = BURST_CACHE_MIN_INTERVAL_NS;
+        }
+        if (lastBuffer == null || now - lastCacheNs >= minInterval) {
+            // Copy (on the GPU, or to I420 memory) so we keep the content without pinning the
+            // capture texture. Both return an already-retained buffer.
+            VideoFrame.Buffer copy = texture ? copyTexture((VideoFrame.TextureBuffer) buffer) : null;
+            if (copy == null && !texture) {
+                copy = buffer.toI420();
+            }
+            if (copy != null) {
                 releaseCachedFrame();
-                lastBuffer = i420; // toI420() returns an already-retained buffer
+                lastBuffer = copy;
                 lastRotation = frame.getRotation();
                 lastCacheNs = now;
             }
@@ -105,19 +177,36 @@ public class FrameRepeatingCapturerObserver implements CapturerObserver {
 
         // A real frame just arrived — restart the idle timer.
         handler.removeCallbacks(repeatRunnable);
-        handler.postDelayed(repeatRunnable, REPEAT_INTERVAL_MS);
+        handler.postDelayed(repeatRunnable, nextRepeatDelayMs(now));
     }
 
     private void repeatLastFrame() {
         if (!capturing || lastBuffer == null) {
             return;
         }
+        if (lastBuffer instanceof VideoFrame.TextureBuffer) {
+            // The copy was drawn earlier, but the encoder samples it from another EGL context.
+            GLES20.glFinish();
+        }
         lastBuffer.retain();
         VideoFrame repeated = new VideoFrame(lastBuffer, lastRotation, System.nanoTime());
         delegate.onFrameCaptured(repeated);
         repeated.release();
 
-        handler.postDelayed(repeatRunnable, REPEAT_INTERVAL_MS);
+        long now = System.nanoTime();
+        repeatedFrames++;
+        if (inBurst(now)) {
+            burstRepeatedFrames++;
+        }
+        handler.postDelayed(repeatRunnable, nextRepeatDelayMs(now));
+    }
+
+    private boolean inBurst(long nowNs) {
+        return policy.bursts() && nowNs - lastRealFrameNs < policy.burstDurationMs * 1_000_000L;
+    }
+
+    private long nextRepeatDelayMs(long nowNs) {
+        return inBurst(nowNs) ? policy.burstIntervalMs : policy.idleIntervalMs;
     }
 
     private void releaseCachedFrame() {
@@ -126,4 +215,68 @@ public class FrameRepeatingCapturerObserver implements CapturerObserver {
             lastBuffer = null;
         }
     }
+
+    private boolean canUseTextureCache() {
+        // SurfaceTextureHelper keeps its EGL context current on the handler thread.
+        if (!textureCacheFailed && EGL14.eglGetCurrentContext() == EGL14.EGL_NO_CONTEXT) {
+            Log.w(TAG, "No EGL context on the capture thread, caching frames as I420");
+            textureCacheFailed = true;
+        }
+        return !textureCacheFailed;
+    }
+
+    /**
+     * Copies {@code source} on the GPU. Returns null if every slot is still referenced by frames in
+     * flight, in which case the previous copy is kept.
+     */
+    private VideoFrame.Buffer copyTexture(VideoFrame.TextureBuffer source) {
+        if (copier == null) {
+            copier = new TextureFrameCopier(handler, TEXTURE_SLOTS);
+        }
+        try {
+            return copier.copy(source);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "GPU frame copy failed, caching frames as I420 from now on", e);
+            textureCacheFailed = true;
+            return source.toI420();
+        }
+    }
+
+    /**
+     * When to repeat the last frame. Read from the {@code android.frameRepeat} constraints of
+     * {@code getDisplayMedia}: {@code {idleIntervalMs?, burstIntervalMs?, burstDurationMs?}}.
+     * Bursts are off unless {@code burstDurationMs} is set.
+     */
+    public static final class RepeatPolicy {
+        public static final RepeatPolicy DEFAULT = new RepeatPolicy(1000, 100, 0);
+
+        final long idleIntervalMs;
+        final long burstIntervalMs;
+        final long burstDurationMs;
+
+        RepeatPolicy(long idleIntervalMs, long burstIntervalMs, long burstDurationMs) {
+            this.idleIntervalMs = idleIntervalMs;
+            this.burstIntervalMs = burstIntervalMs;
+            this.burstDurationMs = burstDurationMs;
+        }
+
+        public static RepeatPolicy fromMap(@Nullable ReadableMap map) {
+            if (map == null) {
+                return DEFAULT;
+            }
+            return new RepeatPolicy(getInterval(map, "idleIntervalMs", DEFAULT.idleIntervalMs),
+                    getInterval(map, "burstIntervalMs", DEFAULT.burstIntervalMs),
+                    map.hasKey("burstDurationMs") ? Math.max(0, (long) map.getDouble("burstDurationMs"))
+                                                  : DEFAULT.burstDurationMs);
+        }
+
+        boolean bursts() {
+            return burstDurationMs > 0;
+        }
+
+        private static long getInterval(ReadableMap map, String key, long fallback) {
+            // Repeating faster than a frame every 10ms is never useful.
+            return map.hasKey(key) ? Math.max(10, (long) map.getDouble(key)) : fallback;
+        }
+    }
 }
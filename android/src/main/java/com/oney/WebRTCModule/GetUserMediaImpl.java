@@ -6,9 +6,11 @@ import android.content.Intent;
 import android.media.projection.MediaProjectionConfig;
 import android.media.projection.MediaProjectionManager;
 import android.os.Build;
+import android.os.Handler;
 import android.util.DisplayMetrics;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
 import androidx.core.util.Consumer;
 
 import com.facebook.react.bridge.Arguments;
@@ -34,10 +36,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * The implementation of {@code getUserMedia} extracted into a separate file in
@@ -57,9 +57,10 @@ class GetUserMediaImpl {
     /**
      * The application/library-specific private members of local
      * {@link MediaStreamTrack}s created by {@code GetUserMediaImpl} mapped by
-     * track ID.
+     * track ID. Mutated on the global executor lane, but concurrent because
+     * PeerConnection lanes resolve local tracks (addTrack, replaceTrack, etc.).
      */
-    private final Map<String, TrackPrivate> tracks = new HashMap<>();
+    private final Map<String, TrackPrivate> tracks = new ConcurrentHashMap<>();
 
     /**
      * poolId -> {@link CustomVideoBufferPool} registry for custom-video pooled
@@ -73,8 +74,8 @@ class GetUserMediaImpl {
     /**
      * trackId -> {@link CustomVideoCaptureController} registry, resolved by the
      * per-frame push path. That push runs synchronously on the caller's (worklet)
-     * thread, which races the executor mutating {@link #tracks} (an unsynchronised
-     * HashMap); this concurrent registry decouples delivery from {@code tracks}.
+     * thread, which races the executor mutating {@link #tracks}; this dedicated
+     * registry decouples delivery from {@code tracks}.
      * Entries are added by {@link #createCustomVideoTrack} and removed by
      * {@link #disposeTrack}.
      */
@@ -83,8 +84,8 @@ class GetUserMediaImpl {
     /**
      * trackId -> {@link ExternalAudioSource} registry, resolved by the paced emit path.
      * That emit runs on the track's scheduler feeder thread, which races the executor
-     * mutating {@link #tracks} (an unsynchronised HashMap); this concurrent registry
-     * decouples delivery from {@code tracks}. Entries are added by
+     * mutating {@link #tracks}; this dedicated registry decouples delivery from
+     * {@code tracks}. Entries are added by
      * {@link #createCustomAudioTrack} and removed by {@link #disposeTrack}.
      */
     private final Map<String, ExternalAudioSource> customAudioSources = new ConcurrentHashMap<>();
@@ -95,6 +96,10 @@ class GetUserMediaImpl {
     private Intent mediaProjectionPermissionResultData;
     private boolean createConfigForDefaultDisplay = false;
     private float resolutionScale = 1.0f;
+    private FrameRepeatingCapturerObserver.RepeatPolicy repeatPolicy =
+            FrameRepeatingCapturerObserver.RepeatPolicy.DEFAULT;
+    @Nullable
+    private ChangeDetectingCapturerObserver.Options frameFilterOptions;
 
     // Reusable SurfaceTextureHelper for camera captures.
     // By reusing a single STH for all camera sessions we hold exactly one EGL context
@@ -135,7 +140,7 @@ class GetUserMediaImpl {
         Log.d(TAG, "getUserMedia(audio): " + audioConstraintsMap);
 
         String id = UUID.randomUUID().toString();
-        PeerConnectionFactory pcFactory = webRTCModule.mFactory;
+        PeerConnectionFactory pcFactory = webRTCModule.getFactory();
         MediaConstraints peerConstraints = webRTCModule.constraintsForOptions(audioConstraintsMap);
 
         // PeerConnectionFactory.createAudioSource will throw an error when mandatory constraints contain nulls.
@@ -289,6 +294,7 @@ class GetUserMediaImpl {
         if (customAudioSources.remove(id) != null) {
             webRTCModule.unregisterCustomAudioTrack(id);
         }
+        webRTCModule.frameProbes.disable(-1, id);
         if (track != null) {
             track.dispose();
         }
@@ -325,6 +331,8 @@ class GetUserMediaImpl {
         // Default values
         boolean createConfigForDefaultDisplay = false;
         float scale = 1.0f;
+        ReadableMap frameRepeat = null;
+        ReadableMap frameFilter = null;
 
         if (androidConstraints != null) {
             // MediaProjectionConfig need API level 34
@@ -337,15 +345,26 @@ class GetUserMediaImpl {
                     && androidConstraints.getType("resolutionScale") == ReadableType.Number) {
                 scale = (float) androidConstraints.getDouble("resolutionScale");
             }
+            if (androidConstraints.hasKey("frameRepeat")
+                    && androidConstraints.getType("frameRepeat") == ReadableType.Map) {
+                frameRepeat = androidConstraints.getMap("frameRepeat");
+            }
+            if (androidConstraints.hasKey("frameFilter")
+                    && androidConstraints.getType("frameFilter") == ReadableType.Map) {
+                frameFilter = androidConstraints.getMap("frameFilter");
+            }
         }
 
         this.createConfigForDefaultDisplay = createConfigForDefaultDisplay;
         // Force the value in [0, 1]
         this.resolutionScale = Math.max(0.0f, Math.min(1.0f, scale));
+        this.repeatPolicy = FrameRepeatingCapturerObserver.RepeatPolicy.fromMap(frameRepeat);
+        this.frameFilterOptions = ChangeDetectingCapturerObserver.Options.fromMap(frameFilter);
 
         Log.d(TAG,
                 "initializeConstraints: createConfigForDefaultDisplay=" + this.createConfigForDefaultDisplay
-                        + " resolutionScale=" + this.resolutionScale);
+                        + " resolutionScale=" + this.resolutionScale + " frameRepeat=" + frameRepeat
+                        + " frameFilter=" + frameFilter);
     }
 
     void getDisplayMedia(final ReadableMap constraints, Promise promise) {
@@ -425,7 +444,7 @@ class GetUserMediaImpl {
 
     void createStream(MediaStreamTrack[] tracks, BiConsumer<String, ArrayList<WritableMap>> successCallback) {
         String streamId = UUID.randomUUID().toString();
-        MediaStream mediaStream = webRTCModule.mFactory.createLocalMediaStream(streamId);
+        MediaStream mediaStream = webRTCModule.getFactory().createLocalMediaStream(streamId);
 
         ArrayList<WritableMap> tracksInfo = new ArrayList<>();
 
@@ -475,8 +494,13 @@ class GetUserMediaImpl {
         DisplayMetrics displayMetrics = DisplayUtils.getDisplayMetrics(reactContext.getCurrentActivity());
         int width = displayMetrics.widthPixels;
         int height = displayMetrics.heightPixels;
-        ScreenCaptureController screenCaptureController = new ScreenCaptureController(
-                reactContext.getCurrentActivity(), width, height, mediaProjectionPermissionResultData, resolutionScale);
+        ScreenCaptureController screenCaptureController = new ScreenCaptureController(reactContext.getCurrentActivity(),
+                width,
+                height,
+                mediaProjectionPermissionResultData,
+                resolutionScale,
+                repeatPolicy,
+                frameFilterOptions);
         return createVideoTrack(screenCaptureController);
     }
 
@@ -488,7 +512,7 @@ class GetUserMediaImpl {
             return null;
         }
 
-        PeerConnectionFactory pcFactory = webRTCModule.mFactory;
+        PeerConnectionFactory pcFactory = webRTCModule.getFactory();
         EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
 
         boolean isCameraCapture = videoCaptureController instanceof CameraCaptureController;
@@ -520,7 +544,16 @@ class GetUserMediaImpl {
             // screen the encoder can't satisfy a keyframe request (PLI) from a newly-joined viewer.
             // Repeat the last frame at a minimum cadence so keyframes stay available. Runs on the
             // SurfaceTextureHelper handler thread (where frames are delivered).
-            capturerObserver = new FrameRepeatingCapturerObserver(capturerObserver, surfaceTextureHelper.getHandler());
+            // Screen shares made by getDisplayMedia also get their configured stages.
+            if (videoCaptureController instanceof ScreenCaptureController) {
+                ScreenCaptureController screenCaptureController = (ScreenCaptureController) videoCaptureController;
+                Handler handler = surfaceTextureHelper.getHandler();
+                capturerObserver = screenCaptureController.wrapCapturerObserver(capturerObserver, handler);
+            } else {
+                capturerObserver = new FrameRepeatingCapturerObserver(capturerObserver,
+                        surfaceTextureHelper.getHandler(),
+                        FrameRepeatingCapturerObserver.RepeatPolicy.DEFAULT);
+            }
         }
         videoCapturer.initialize(surfaceTextureHelper, reactContext, capturerObserver);
 
@@ -668,7 +701,7 @@ class GetUserMediaImpl {
             captureController = new CustomVideoCaptureController();
         }
 
-        PeerConnectionFactory pcFactory = webRTCModule.mFactory;
+        PeerConnectionFactory pcFactory = webRTCModule.getFactory();
 
         // Capturer-less video source: no SurfaceTextureHelper / VideoCapturer. Frames are pushed
         // by the app. isScreencast=false keeps the standard (non-screen) encoder tuning.
@@ -739,7 +772,7 @@ class GetUserMediaImpl {
             return;
         }
 
-        PeerConnectionFactory pcFactory = webRTCModule.mFactory;
+        PeerConnectionFactory pcFactory = webRTCModule.getFactory();
         ExternalAudioSource audioSource = pcFactory.createExternalAudioSource(sampleRateHz, channelCount);
         String trackId = UUID.randomUUID().toString();
         AudioTrack audioTrack = pcFactory.createAudioTrack(trackId, audioSource);
@@ -823,41 +856,146 @@ class GetUserMediaImpl {
         }
     }
 
+    /**
+     * Resolves with the frame counters (real, repeated, dropped as unchanged) of a screen capture
+     * track, or null for any other track.
+     */
+    void getScreenCaptureStats(String trackId, Promise promise) {
+        TrackPrivate track = tracks.get(trackId);
+        WritableMap stats = null;
+        if (track != null && track.videoCaptureController instanceof ScreenCaptureController) {
+            stats = ((ScreenCaptureController) track.videoCaptureController).getStats();
+        }
+        promise.resolve(stats);
+    }
+
+    /**
+     * Resolves with the latency counters of the video effects of a track, or null if it has none.
+     */
+    void getVideoEffectsStats(String trackId, Promise promise) {
+        TrackPrivate track = tracks.get(trackId);
+        VideoEffectProcessor processor = track != null ? track.videoEffectProcessor : null;
+        if (processor == null) {
+            promise.resolve(null);
+            return;
+        }
+
+        WritableArray processors = Arguments.createArray();
+        List<VideoEffectProcessor.ProcessorStats> stats = processor.getProcessorStats();
+        for (int i = 0; i < stats.size(); i++) {
+            VideoEffectProcessor.ProcessorStats s = stats.get(i);
+            WritableMap map = Arguments.createMap();
+            map.putString("name", track.videoEffectNames.get(i));
+            map.putDouble("frames", s.frames);
+            map.putDouble("refreshes", s.refreshes);
+            map.putDouble("lastMs", s.lastNs / 1e6);
+            map.putDouble("maxMs", s.maxNs / 1e6);
+            map.putDouble("averageMs", s.frames > 0 ? s.totalNs / 1e6 / s.frames : 0);
+            processors.pushMap(map);
+        }
+
+        WritableMap result = Arguments.createMap();
+        result.putBoolean("pipelined", processor.isPipelined());
+        result.putDouble("droppedFrames", processor.getDroppedFrames());
+        result.putArray("processors", processors);
+        promise.resolve(result);
+    }
+
     /**
      * Set video effects to the TrackPrivate corresponding to the trackId with the help of VideoEffectProcessor
-     * corresponding to the names.
+     * corresponding to the names. Works for camera, screen capture and custom video tracks; the effects run
+     * on the GL thread the track's frames are delivered on.
      * @param trackId TrackPrivate id
      * @param names VideoEffectProcessor names
      */
     void setVideoEffects(String trackId, ReadableArray names) {
         TrackPrivate track = tracks.get(trackId);
 
-        if (track != null && track.videoCaptureController instanceof CameraCaptureController) {
+        if (track != null && track.mediaSource instanceof VideoSource) {
             VideoSource videoSource = (VideoSource) track.mediaSource;
-            SurfaceTextureHelper surfaceTextureHelper = track.surfaceTextureHelper;
+            SurfaceTextureHelper surfaceTextureHelper = track.getFrameTextureHelper();
+            if (surfaceTextureHelper == null) {
+                Log.w(TAG, "setVideoEffects() no GL thread for track " + trackId);
+                return;
+            }
+
+            VideoEffectProcessor previous = track.videoEffectProcessor;
+            List<String> previousNames = track.videoEffectNames;
+            List<VideoFrameProcessor> previousProcessors = track.videoFrameProcessors;
+            track.videoEffectProcessor = null;
+            track.videoEffectNames = null;
+            track.videoFrameProcessors = null;
+
+            // A synchronous chain stops running the moment it is swapped out on the VideoSource, so
+            // the new chain can take over its processors as they are. A pipelined one may still be
+            // busy on its worker; its processors are recycled once it's done.
+            Map<String, List<VideoFrameProcessor>> reusable = new HashMap<>();
+            if (previous != null && !previous.isPipelined()) {
+                for (int i = 0; i < previousNames.size(); i++) {
+                    List<VideoFrameProcessor> list = reusable.get(previousNames.get(i));
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        reusable.put(previousNames.get(i), list);
+                    }
+                    list.add(previousProcessors.get(i));
+                }
+            }
 
             if (names != null) {
-                List<VideoFrameProcessor> processors =
-                        names.toArrayList()
-                                .stream()
-                                .filter(name -> name instanceof String)
-                                .map(name -> {
-                                    VideoFrameProcessor videoFrameProcessor =
-                                            ProcessorProvider.getProcessor((String) name);
-                                    if (videoFrameProcessor == null) {
-                                        Log.e(TAG, "no videoFrameProcessor associated with this name: " + name);
-                                    }
-                                    return videoFrameProcessor;
-                                })
-                                .filter(Objects::nonNull)
-                                .collect(Collectors.toList());
-
-                VideoEffectProcessor videoEffectProcessor = new VideoEffectProcessor(processors, surfaceTextureHelper);
+                List<String> processorNames = new ArrayList<>();
+                List<VideoFrameProcessor> processors = new ArrayList<>();
+                for (Object name : names.toArrayList()) {
+                    if (!(name instanceof String)) {
+                        continue;
+                    }
+                    List<VideoFrameProcessor> sameName = reusable.get(name);
+                    VideoFrameProcessor videoFrameProcessor = sameName != null && !sameName.isEmpty()
+                            ? sameName.remove(sameName.size() - 1)
+                            : ProcessorProvider.getProcessor((String) name);
+                    if (videoFrameProcessor == null) {
+                        Log.e(TAG, "no videoFrameProcessor associated with this name: " + name);
+                        continue;
+                    }
+                    processorNames.add((String) name);
+                    processors.add(videoFrameProcessor);
+                }
+
+                WebRTCModuleOptions options = WebRTCModuleOptions.getInstance();
+                VideoEffectProcessor videoEffectProcessor = options.pipelinedVideoEffects
+                        ? new VideoEffectProcessor(processors,
+                                surfaceTextureHelper,
+                                EglUtils.getRootEglBaseContext(),
+                                options.videoEffectsMaxPendingFrames)
+                        : new VideoEffectProcessor(processors, surfaceTextureHelper);
                 videoSource.setVideoProcessor(videoEffectProcessor);
+                track.videoEffectProcessor = videoEffectProcessor;
+                track.videoEffectNames = processorNames;
+                track.videoFrameProcessors = processors;
 
             } else {
                 videoSource.setVideoProcessor(null);
             }
+
+            if (previous != null) {
+                if (previous.isPipelined()) {
+                    Handler glHandler = previous.getGlHandler();
+                    previous.release(() -> recycleProcessors(previousNames, previousProcessors, glHandler));
+                } else {
+                    previous.release();
+                    for (Map.Entry<String, List<VideoFrameProcessor>> entry : reusable.entrySet()) {
+                        for (VideoFrameProcessor processor : entry.getValue()) {
+                            ProcessorProvider.recycleProcessor(entry.getKey(), processor, previous.getGlHandler());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void recycleProcessors(
+            List<String> names, List<VideoFrameProcessor> processors, Handler glHandler) {
+        for (int i = 0; i < names.size(); i++) {
+            ProcessorProvider.recycleProcessor(names.get(i), processors.get(i), glHandler);
         }
     }
 
@@ -890,6 +1028,17 @@ class GetUserMediaImpl {
          */
         private final boolean reusableSTH;
 
+        /**
+         * The effects currently applied to {@link #track}, and their names and processors (in chain
+         * order). Only touched on the executor.
+         */
+        @Nullable
+        private VideoEffectProcessor videoEffectProcessor;
+        @Nullable
+        private List<String> videoEffectNames;
+        @Nullable
+        private List<VideoFrameProcessor> videoFrameProcessors;
+
         /**
          * Whether this object has been disposed or not.
          */
@@ -911,8 +1060,30 @@ class GetUserMediaImpl {
             this.disposed = false;
         }
 
+        /**
+         * The SurfaceTextureHelper whose thread delivers this track's frames: the capturer's, or
+         * the frame delivery's for custom video tracks. Null for audio tracks.
+         */
+        @Nullable
+        SurfaceTextureHelper getFrameTextureHelper() {
+            if (videoCaptureController instanceof CustomVideoCaptureController) {
+                return ((CustomVideoCaptureController) videoCaptureController).getSurfaceTextureHelper();
+            }
+            return surfaceTextureHelper;
+        }
+
         public void dispose() {
             if (!disposed) {
+                // First, while the frame thread (whose STH may be disposed below) still runs:
+                // stops the effects worker and lets it free its textures there.
+                if (videoEffectProcessor != null) {
+                    List<String> names = videoEffectNames;
+                    List<VideoFrameProcessor> processors = videoFrameProcessors;
+                    Handler glHandler = videoEffectProcessor.getGlHandler();
+                    videoEffectProcessor.release(() -> recycleProcessors(names, processors, glHandler));
+                    videoEffectProcessor = null;
+                }
+
                 /*
                  * Custom-video teardown ORDERING (GPU UAF guard). The hardware
                  * encoder samples the delivered OES texture / AHardwareBuffer on
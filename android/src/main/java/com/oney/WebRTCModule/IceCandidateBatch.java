@@ -0,0 +1,68 @@
+package com.oney.WebRTCModule;
+
+import org.webrtc.IceCandidate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The gathered ICE candidates of a PeerConnection not sent to JS yet, and whether the local
+ * description changed since JS last got it. Candidates are added on the signaling thread; the
+ * rest runs on the PeerConnection's lane.
+ */
+class IceCandidateBatch {
+    private final List<IceCandidate> pending = new ArrayList<>(); // Guarded by itself.
+
+    /**
+     * Bumped whenever a candidate is added to the local description, so the description is only
+     * sent to JS again when it changed since.
+     */
+    private final AtomicInteger localDescriptionVersion = new AtomicInteger();
+    private int sentLocalDescriptionVersion; // Only touched on the lane.
+
+    /**
+     * Adds a candidate which is already part of the local description. Returns true if it is the
+     * first one pending, in which case the caller schedules a flush; later ones join that flush.
+     */
+    boolean add(IceCandidate candidate) {
+        localDescriptionVersion.incrementAndGet();
+        synchronized (pending) {
+            pending.add(candidate);
+            return pending.size() == 1;
+        }
+    }
+
+    /**
+     * Removes and returns the pending candidates, empty if there are none.
+     */
+    List<IceCandidate> takePending() {
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<IceCandidate> candidates = new ArrayList<>(pending);
+            pending.clear();
+            return candidates;
+        }
+    }
+
+    /**
+     * Records the local description as sent to JS. Must be called before reading the description,
+     * so a candidate added in between is sent again, not lost.
+     */
+    void markLocalDescriptionSent() {
+        sentLocalDescriptionVersion = localDescriptionVersion.get();
+    }
+
+    boolean isLocalDescriptionChanged() {
+        return localDescriptionVersion.get() != sentLocalDescriptionVersion;
+    }
+
+    void clear() {
+        synchronized (pending) {
+            pending.clear();
+        }
+    }
+}
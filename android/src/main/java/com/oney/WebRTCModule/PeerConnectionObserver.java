@@ -16,6 +16,7 @@ import org.webrtc.IceCandidate;
 import org.webrtc.MediaStream;
 import org.webrtc.MediaStreamTrack;
 import org.webrtc.PeerConnection;
+import org.webrtc.RTCStatsCollectorCallback;
 import org.webrtc.RTCStatsReport;
 import org.webrtc.RtpReceiver;
 import org.webrtc.RtpSender;
@@ -25,32 +26,78 @@ import org.webrtc.VideoTrack;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 class PeerConnectionObserver implements PeerConnection.Observer {
     private final static String TAG = WebRTCModule.TAG;
+    private static final long ICE_CANDIDATE_BATCH_DELAY_MS = 20;
 
     private final Map<String, DataChannelWrapper> dataChannels;
     private final int id;
     private int transceiverNextId = 0;
 
-    private PeerConnection peerConnection;
+    private volatile PeerConnection peerConnection;
+    private boolean disposed; // Guarded by `this`.
+    @Nullable
+    private StatsSubscription statsSubscription; // Guarded by `this`.
+    @Nullable
+    private QualityMonitor qualityMonitor; // Guarded by `this`.
     final Map<String, String> remoteStreamIds; // Stream ID -> React tag
     final Map<String, MediaStream> remoteStreams; // React tag -> MediaStream
     final Map<String, MediaStreamTrack> remoteTracks;
     private final VideoTrackAdapter videoTrackAdapters;
     private final WebRTCModule webRTCModule;
 
+    /**
+     * The transceivers of {@link #peerConnection} by sender and receiver id. Rebuilt by
+     * {@link #getTransceivers()}, which is why the PeerConnection's own getTransceivers() mustn't
+     * be called directly.
+     */
+    private final TransceiverIndex<RtpTransceiver> transceivers =
+            new TransceiverIndex<>(new TransceiverIndex.Source<RtpTransceiver>() {
+                @Override
+                public List<RtpTransceiver> getTransceivers() {
+                    PeerConnection peerConnection = PeerConnectionObserver.this.peerConnection;
+                    return peerConnection != null
+                            ? peerConnection.getTransceivers() : Collections.<RtpTransceiver>emptyList();
+                }
+
+                @Override
+                public String getSenderId(RtpTransceiver transceiver) {
+                    return transceiver.getSender().id();
+                }
+
+                @Override
+                public String getReceiverId(RtpTransceiver transceiver) {
+                    return transceiver.getReceiver().id();
+                }
+            });
+
+    private final TransceiverInfoDiff sentTransceiverInfo = new TransceiverInfoDiff(); // Only touched on this lane.
+
+    /**
+     * The candidates gathered within {@link #ICE_CANDIDATE_BATCH_DELAY_MS} of each other go out in
+     * one event.
+     */
+    private final IceCandidateBatch iceCandidates = new IceCandidateBatch();
+
     PeerConnectionObserver(WebRTCModule webRTCModule, int id) {
         this.webRTCModule = webRTCModule;
         this.id = id;
-        this.dataChannels = new HashMap<>();
-        this.remoteStreamIds = new HashMap<>();
-        this.remoteStreams = new HashMap<>();
-        this.remoteTracks = new HashMap<>();
+        // Also written from the JS thread when blocking calls run inline.
+        this.dataChannels = new ConcurrentHashMap<>();
+        // Mutated on this PeerConnection's executor lane, but read from the
+        // global lane (stream / track lookups by WebRTCModule).
+        this.remoteStreamIds = new ConcurrentHashMap<>();
+        this.remoteStreams = new ConcurrentHashMap<>();
+        this.remoteTracks = new ConcurrentHashMap<>();
         this.videoTrackAdapters = new VideoTrackAdapter(webRTCModule, id);
     }
 
@@ -68,10 +115,34 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         peerConnection.close();
     }
 
-    void dispose() {
+    /**
+     * Runs a blocking call on the calling thread rather than on this PeerConnection's lane (see
+     * {@link WebRTCModuleOptions#inlineBlockingCalls}). Holds off {@link #dispose()} while the call
+     * runs, and returns {@code fallback} if the PeerConnection has already been disposed.
+     */
+    synchronized <T> T runInline(Callable<T> callable, T fallback) throws Exception {
+        if (disposed) {
+            return fallback;
+        }
+        return callable.call();
+    }
+
+    synchronized void dispose() {
         Log.d(TAG, "PeerConnection.dispose() for " + id);
 
-        // Remove video track adapters
+        disposed = true;
+
+        if (statsSubscription != null) {
+            statsSubscription.stop();
+            statsSubscription = null;
+        }
+        if (qualityMonitor != null) {
+            qualityMonitor.stop();
+            qualityMonitor = null;
+        }
+
+        // Remove video track adapters and frame probes
+        webRTCModule.frameProbes.disableAll(id);
         for (MediaStreamTrack track : this.remoteTracks.values()) {
             if (track instanceof VideoTrack) {
                 videoTrackAdapters.removeAdapter((VideoTrack) track);
@@ -82,8 +153,13 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         for (DataChannelWrapper dcw : dataChannels.values()) {
             DataChannel dataChannel = dcw.getDataChannel();
             dataChannel.unregisterObserver();
+            dcw.release();
         }
 
+        // Unindex the remote streams and tracks first, so other threads can't look them up
+        // while they are being disposed.
+        webRTCModule.remoteMediaIndex.removeAll(id);
+
         // At this point there should be no local MediaStreams in the associated
         // PeerConnection. Call dispose() to free all remaining resources held
         // by the PeerConnection instance (RtpReceivers, RtpSenders, etc.)
@@ -93,6 +169,9 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         remoteStreams.clear();
         remoteTracks.clear();
         dataChannels.clear();
+        transceivers.clear();
+        sentTransceiverInfo.clear();
+        iceCandidates.clear();
     }
 
     public synchronized int getNextTransceiverId() {
@@ -104,7 +183,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             return null;
         }
 
-        return peerConnection.addTransceiver(mediaType, init);
+        return transceivers.add(peerConnection.addTransceiver(mediaType, init));
     }
 
     RtpTransceiver addTransceiver(MediaStreamTrack track, RtpTransceiver.RtpTransceiverInit init) {
@@ -112,34 +191,64 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             return null;
         }
 
-        return peerConnection.addTransceiver(track, init);
+        return transceivers.add(peerConnection.addTransceiver(track, init));
     }
 
-    RtpSender getSender(String id) {
+    /**
+     * Fetches the current transceivers and rebuilds the index from them. Use this instead of
+     * calling PeerConnection.getTransceivers() directly, which would leave the index holding
+     * disposed wrappers.
+     */
+    List<RtpTransceiver> getTransceivers() {
         if (this.peerConnection == null) {
-            return null;
+            return Collections.emptyList();
         }
 
-        for (RtpSender sender : this.peerConnection.getSenders()) {
-            if (sender.id().equals(id)) {
-                return sender;
-            }
-        }
+        return transceivers.rescan();
+    }
 
-        return null;
+    /**
+     * Records the update about to be sent to JS for a transceiver. Returns false if JS already got
+     * the same one, in which case it needn't be sent.
+     */
+    boolean recordTransceiverInfo(String transceiverId, Map<String, Object> info) {
+        return sentTransceiverInfo.record(transceiverId, info);
+    }
+
+    /**
+     * Forgets the transceivers not in {@code transceiverIds} and returns the ids of those JS had
+     * been sent updates for.
+     */
+    List<String> retainTransceiverInfo(Set<String> transceiverIds) {
+        return sentTransceiverInfo.retain(transceiverIds);
+    }
+
+    /**
+     * Makes the next SDP operation send the full update for a transceiver, e.g. after JS changed
+     * its parameters by other means.
+     */
+    void invalidateTransceiverInfo(String transceiverId) {
+        sentTransceiverInfo.invalidate(transceiverId);
+    }
+
+    /**
+     * Receiver ids of the transceivers known so far, without asking the PeerConnection.
+     */
+    Set<String> getKnownReceiverIds() {
+        return transceivers.getReceiverIds();
+    }
+
+    RtpSender getSender(String id) {
+        RtpTransceiver transceiver = getTransceiver(id);
+        return transceiver != null ? transceiver.getSender() : null;
     }
 
     RtpTransceiver getTransceiver(String id) {
-        if (this.peerConnection == null) {
-            return null;
-        }
+        return this.peerConnection != null ? transceivers.getBySenderId(id) : null;
+    }
 
-        for (RtpTransceiver transceiver : this.peerConnection.getTransceivers()) {
-            if (transceiver.getSender().id().equals(id)) {
-                return transceiver;
-            }
-        }
-        return null;
+    RtpTransceiver getTransceiverByReceiverId(String receiverId) {
+        return this.peerConnection != null ? transceivers.getByReceiverId(receiverId) : null;
     }
 
     WritableMap createDataChannel(String label, ReadableMap config) {
@@ -169,7 +278,8 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             return null;
         }
         final String reactTag = UUID.randomUUID().toString();
-        DataChannelWrapper dcw = new DataChannelWrapper(webRTCModule, id, reactTag, dataChannel);
+        DataChannelWrapper dcw = new DataChannelWrapper(
+                webRTCModule, id, reactTag, dataChannel, webRTCModule.getDataChannelJSI());
         dataChannels.put(reactTag, dcw);
         dataChannel.registerObserver(dcw);
 
@@ -184,6 +294,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         info.putString("protocol", init.protocol);
         info.putBoolean("negotiated", init.negotiated);
         info.putString("readyState", dcw.dataChannelStateString(dataChannel.state()));
+        info.putBoolean("jsi", dcw.usesJSI());
         return info;
     }
 
@@ -207,9 +318,20 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
         DataChannel dataChannel = dcw.getDataChannel();
         dataChannel.unregisterObserver();
+        dcw.release();
         dataChannels.remove(reactTag);
     }
 
+    void dataChannelSetBatching(String reactTag, @Nullable ReadableMap options) {
+        DataChannelWrapper dcw = dataChannels.get(reactTag);
+        if (dcw == null) {
+            Log.d(TAG, "dataChannelSetBatching() dataChannel is null");
+            return;
+        }
+
+        dcw.setBatching(options);
+    }
+
     void dataChannelSend(String reactTag, String data, String type) {
         DataChannelWrapper dcw = dataChannels.get(reactTag);
         if (dcw == null) {
@@ -231,18 +353,78 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         dcw.getDataChannel().send(buffer);
     }
 
+    /**
+     * Sends a message given as a (direct) buffer, as used by the DataChannel JSI path. Runs on
+     * the JS thread; libwebrtc copies {@code data} before returning.
+     */
+    boolean dataChannelSend(String reactTag, ByteBuffer data, boolean binary) {
+        DataChannelWrapper dcw = dataChannels.get(reactTag);
+        if (dcw == null) {
+            Log.d(TAG, "dataChannelSend() dataChannel is null");
+            return false;
+        }
+
+        return dcw.getDataChannel().send(new DataChannel.Buffer(data, binary));
+    }
+
     void getStats(Promise promise) {
-        peerConnection.getStats(rtcStatsReport -> promise.resolve(StringUtils.statsToJSON(rtcStatsReport)));
+        getStats(StatsEncoder.Filter.ALL, promise);
     }
 
-    public void receiverGetStats(String receiverId, Promise promise) {
-        RtpReceiver targetReceiver = null;
-        for (RtpReceiver r : peerConnection.getReceivers()) {
-            if (r.id().equals(receiverId)) {
-                targetReceiver = r;
-                break;
-            }
+    void getStats(StatsEncoder.Filter filter, Promise promise) {
+        peerConnection.getStats(rtcStatsReport -> promise.resolve(StatsEncoder.get().encode(rtcStatsReport, filter)));
+    }
+
+    /**
+     * Starts (or replaces) the periodic delta-encoded stats subscription of this PeerConnection,
+     * see {@link StatsSubscription}.
+     */
+    synchronized void subscribeStats(ReadableMap options) {
+        if (disposed) {
+            return;
+        }
+        if (statsSubscription != null) {
+            statsSubscription.stop();
         }
+        statsSubscription = new StatsSubscription(this, webRTCModule, id, options);
+        statsSubscription.start();
+    }
+
+    synchronized void unsubscribeStats() {
+        if (statsSubscription != null) {
+            statsSubscription.stop();
+            statsSubscription = null;
+        }
+    }
+
+    /**
+     * Returns the derived quality figures of this PeerConnection, see {@link QualityMonitor}. The
+     * first call (and the first one after the monitor went idle) starts sampling, so rates only
+     * show up from the following samples on.
+     */
+    synchronized WritableMap getQualitySnapshot() {
+        if (!disposed && (qualityMonitor == null || qualityMonitor.isStopped())) {
+            qualityMonitor = new QualityMonitor(this);
+            qualityMonitor.start();
+        }
+        return qualityMonitor != null ? qualityMonitor.snapshot() : Arguments.createMap();
+    }
+
+    /**
+     * Requests a stats report unless the PeerConnection has been disposed, in which case it
+     * returns false.
+     */
+    synchronized boolean collectStats(RTCStatsCollectorCallback callback) {
+        if (disposed) {
+            return false;
+        }
+        peerConnection.getStats(callback);
+        return true;
+    }
+
+    public void receiverGetStats(String receiverId, Promise promise) {
+        RtpTransceiver transceiver = getTransceiverByReceiverId(receiverId);
+        RtpReceiver targetReceiver = transceiver != null ? transceiver.getReceiver() : null;
 
         if (targetReceiver == null) {
             Log.w(TAG, "receiverGetStats(): Receiver ID " + receiverId + " not found");
@@ -255,13 +437,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     }
 
     public void senderGetStats(String senderId, Promise promise) {
-        RtpSender targetSender = null;
-        for (RtpSender s : peerConnection.getSenders()) {
-            if (s.id().equals(senderId)) {
-                targetSender = s;
-                break;
-            }
-        }
+        RtpSender targetSender = getSender(senderId);
 
         if (targetSender == null) {
             Log.w(TAG, "senderGetStats(): Sender ID " + senderId + " not found");
@@ -273,33 +449,72 @@ class PeerConnectionObserver implements PeerConnection.Observer {
                 targetSender, rtcStatsReport -> promise.resolve(StringUtils.statsToJSON(rtcStatsReport)));
     }
 
+    /**
+     * Serializes the current local description and records it as sent to JS. Must run on this
+     * PeerConnection's lane.
+     */
+    WritableMap takeLocalDescription() {
+        iceCandidates.markLocalDescriptionSent();
+
+        SessionDescription newSdp = peerConnection.getLocalDescription();
+        WritableMap newSdpMap = Arguments.createMap();
+
+        // Can happen when doing a rollback.
+        if (newSdp != null) {
+            newSdpMap.putString("type", newSdp.type.canonicalForm());
+            newSdpMap.putString("sdp", newSdp.description);
+        }
+        return newSdpMap;
+    }
+
+    /**
+     * Like {@link #takeLocalDescription()}, but null if JS already has the current one.
+     */
+    @Nullable
+    private WritableMap takeLocalDescriptionIfChanged() {
+        return iceCandidates.isLocalDescriptionChanged() ? takeLocalDescription() : null;
+    }
+
     @Override
     public void onIceCandidate(final IceCandidate candidate) {
         Log.d(TAG, "onIceCandidate");
 
-        ThreadUtils.runOnExecutor(() -> {
-            WritableMap params = Arguments.createMap();
-            params.putInt("pcId", id);
+        // The candidate is already part of the local description at this point.
+        if (iceCandidates.add(candidate)) {
+            ThreadUtils.schedule(
+                () -> ThreadUtils.runOnExecutor(id, this::flushIceCandidates), ICE_CANDIDATE_BATCH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Sends the pending ICE candidates in one {@code peerConnectionGotICECandidates} event, with the
+     * local description if it changed since JS last got it. Must run on this PeerConnection's lane.
+     */
+    private void flushIceCandidates() {
+        List<IceCandidate> candidates = iceCandidates.takePending();
+        if (candidates.isEmpty()) {
+            return;
+        }
 
+        WritableArray candidatesArray = Arguments.createArray();
+        for (IceCandidate candidate : candidates) {
             WritableMap candidateParams = Arguments.createMap();
             candidateParams.putInt("sdpMLineIndex", candidate.sdpMLineIndex);
             candidateParams.putString("sdpMid", candidate.sdpMid);
             candidateParams.putString("candidate", candidate.sdp);
+            candidatesArray.pushMap(candidateParams);
+        }
 
-            params.putMap("candidate", candidateParams);
-
-            SessionDescription newSdp = peerConnection.getLocalDescription();
-            WritableMap newSdpMap = Arguments.createMap();
+        WritableMap params = Arguments.createMap();
+        params.putInt("pcId", id);
+        params.putArray("candidates", candidatesArray);
 
-            // Can happen when doing a rollback.
-            if (newSdp != null) {
-                newSdpMap.putString("type", newSdp.type.canonicalForm());
-                newSdpMap.putString("sdp", newSdp.description);
-            }
-            params.putMap("sdp", newSdpMap);
+        WritableMap sdp = takeLocalDescriptionIfChanged();
+        if (sdp != null) {
+            params.putMap("sdp", sdp);
+        }
 
-            webRTCModule.sendEvent("peerConnectionGotICECandidate", params);
-        });
+        webRTCModule.sendEvent("peerConnectionGotICECandidates", params);
     }
 
     @Override
@@ -307,7 +522,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             params.putString("iceConnectionState", iceConnectionStateString(iceConnectionState));
@@ -317,7 +532,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onConnectionChange(PeerConnection.PeerConnectionState peerConnectionState) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             params.putString("connectionState", peerConnectionStateString(peerConnectionState));
@@ -333,21 +548,19 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
         Log.d(TAG, "onIceGatheringChange" + iceGatheringState.name());
 
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             params.putString("iceGatheringState", iceGatheringStateString(iceGatheringState));
 
             if (iceGatheringState == PeerConnection.IceGatheringState.COMPLETE) {
-                SessionDescription newSdp = peerConnection.getLocalDescription();
-                WritableMap newSdpMap = Arguments.createMap();
+                // The last candidates must reach JS before the end-of-candidates.
+                flushIceCandidates();
 
-                // Can happen when doing a rollback.
-                if (newSdp != null) {
-                    newSdpMap.putString("type", newSdp.type.canonicalForm());
-                    newSdpMap.putString("sdp", newSdp.description);
+                WritableMap sdp = takeLocalDescriptionIfChanged();
+                if (sdp != null) {
+                    params.putMap("sdp", sdp);
                 }
-                params.putMap("sdp", newSdpMap);
             }
             webRTCModule.sendEvent("peerConnectionIceGatheringChanged", params);
         });
@@ -355,9 +568,10 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onDataChannel(DataChannel dataChannel) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             final String reactTag = UUID.randomUUID().toString();
-            DataChannelWrapper dcw = new DataChannelWrapper(webRTCModule, id, reactTag, dataChannel);
+            DataChannelWrapper dcw = new DataChannelWrapper(
+                webRTCModule, id, reactTag, dataChannel, webRTCModule.getDataChannelJSI());
             dataChannels.put(reactTag, dcw);
             dataChannel.registerObserver(dcw);
 
@@ -375,6 +589,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
             info.putBoolean("negotiated", false);
             info.putString("readyState", dcw.dataChannelStateString(dataChannel.state()));
+            info.putBoolean("jsi", dcw.usesJSI());
 
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
@@ -386,7 +601,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onRenegotiationNeeded() {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             webRTCModule.sendEvent("peerConnectionOnRenegotiationNeeded", params);
@@ -395,7 +610,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onSignalingChange(PeerConnection.SignalingState signalingState) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             params.putString("signalingState", signalingStateString(signalingState));
@@ -411,15 +626,8 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     public void onAddTrack(final RtpReceiver receiver, final MediaStream[] mediaStreams) {
         Log.d(TAG, "onAddTrack");
 
-        ThreadUtils.runOnExecutor(() -> {
-            RtpTransceiver transceiver = null;
-            for (RtpTransceiver t : this.peerConnection.getTransceivers()) {
-                if (Objects.equals(t.getReceiver().id(), receiver.id())) {
-                    transceiver = t;
-                    break;
-                }
-            }
-
+        ThreadUtils.runOnExecutor(id, () -> {
+            RtpTransceiver transceiver = getTransceiverByReceiverId(receiver.id());
             if (transceiver == null) {
                 return;
             }
@@ -436,6 +644,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
                     videoTrackAdapters.addAdapter((VideoTrack) track);
                 }
                 remoteTracks.put(track.id(), track);
+                webRTCModule.remoteMediaIndex.putTrack(id, track);
             }
 
             WritableMap params = Arguments.createMap();
@@ -452,6 +661,8 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
                 // Make sure the stored stream is updated in case we get a new reference.
                 remoteStreams.put(streamReactTag, stream);
+                webRTCModule.remoteMediaIndex.putStream(
+                        id, streamReactTag, stream, track instanceof VideoTrack ? (VideoTrack) track : null);
 
                 streams.pushMap(SerializeUtils.serializeStream(id, streamReactTag, stream));
             }
@@ -480,7 +691,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
      */
     @Override
     public void onRemoveTrack(RtpReceiver receiver) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", this.id);
             params.putString("receiverId", receiver.id());
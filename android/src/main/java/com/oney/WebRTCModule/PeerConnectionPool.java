@@ -0,0 +1,325 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.DataChannel;
+import org.webrtc.IceCandidate;
+import org.webrtc.MediaStream;
+import org.webrtc.PeerConnection;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RtpReceiver;
+import org.webrtc.RtpTransceiver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in pool of warm PeerConnections, so {@code peerConnectionInit} doesn't have to create one
+ * (and generate its DTLS certificate) while the app waits to join a call.
+ *
+ * <p>The pool is configured from JS with an RTCConfiguration and a size. It is then kept full on a
+ * background thread of its own, so building PeerConnections doesn't hold up the global executor
+ * lane (and getUserMedia with it): each pooled PeerConnection gets its own certificate
+ * (from the {@link CertificateStore} stock, or freshly generated) and, with
+ * {@code preGatherCandidates}, an ICE candidate pool so gathering starts right away.
+ * {@link #claim} hands one out if the configuration passed to {@code peerConnectionInit} is the
+ * same as the pool's, and triggers a refill.
+ *
+ * <p>A pooled PeerConnection is created before its {@link PeerConnectionObserver}, which needs the
+ * id JS assigns. Its callbacks go to a {@link PendingObserver} which holds on to them until the
+ * PeerConnection is claimed.
+ */
+class PeerConnectionPool {
+    private static final String TAG = WebRTCModule.TAG;
+
+    static final class Entry {
+        final PeerConnection peerConnection;
+        final PendingObserver observer;
+
+        Entry(PeerConnection peerConnection, PendingObserver observer) {
+            this.peerConnection = peerConnection;
+            this.observer = observer;
+        }
+    }
+
+    private final WebRTCModule webRTCModule;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PeerConnectionPool");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // All guarded by `this`.
+    private final ArrayDeque<Entry> idle = new ArrayDeque<>();
+    @Nullable
+    private ReadableMap configuration;
+    @Nullable
+    private HashMap<String, Object> configurationKey;
+    private int size;
+    private boolean preGatherCandidates;
+    // Bumped on every configure(), so a fill which was under way doesn't add stale entries.
+    private int generation;
+    private long hits;
+    private long misses;
+    private long totalHitInitNs;
+    private long totalMissInitNs;
+    private long maxHitInitNs;
+    private long maxMissInitNs;
+
+    PeerConnectionPool(WebRTCModule webRTCModule) {
+        this.webRTCModule = webRTCModule;
+    }
+
+    /**
+     * Replaces the pool's configuration and starts filling it. The idle PeerConnections built for
+     * the previous configuration are disposed. A size of 0 disables the pool.
+     */
+    void configure(@Nullable ReadableMap configuration, int size, boolean preGatherCandidates) {
+        List<Entry> stale;
+        synchronized (this) {
+            stale = new ArrayList<>(idle);
+            idle.clear();
+            this.configuration = configuration;
+            this.configurationKey = configuration != null ? configuration.toHashMap() : null;
+            this.size = Math.max(0, size);
+            this.preGatherCandidates = preGatherCandidates;
+            generation++;
+        }
+        executor.execute(() -> {
+            for (Entry entry : stale) {
+                entry.peerConnection.dispose();
+            }
+            fill();
+        });
+    }
+
+    /**
+     * Takes an idle PeerConnection built for {@code configuration}, or null if there is none.
+     */
+    @Nullable
+    Entry claim(@Nullable ReadableMap configuration) {
+        HashMap<String, Object> key = configuration != null ? configuration.toHashMap() : null;
+        Entry entry;
+        synchronized (this) {
+            // With the pool disabled every init counts as a miss.
+            entry = Objects.equals(key, configurationKey) ? idle.pollFirst() : null;
+            if (entry != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (entry != null) {
+            executor.execute(this::fill);
+        }
+        return entry;
+    }
+
+    /**
+     * Records how long a {@code peerConnectionInit} took, depending on whether it got its
+     * PeerConnection from the pool.
+     */
+    synchronized void recordInit(boolean hit, long durationNs) {
+        if (hit) {
+            totalHitInitNs += durationNs;
+            maxHitInitNs = Math.max(maxHitInitNs, durationNs);
+        } else {
+            totalMissInitNs += durationNs;
+            maxMissInitNs = Math.max(maxMissInitNs, durationNs);
+        }
+    }
+
+    synchronized WritableMap getStats() {
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("size", size);
+        stats.putInt("idle", idle.size());
+        stats.putDouble("hits", hits);
+        stats.putDouble("misses", misses);
+        stats.putDouble("avgHitInitMs", hits > 0 ? totalHitInitNs / 1e6 / hits : 0);
+        stats.putDouble("avgMissInitMs", misses > 0 ? totalMissInitNs / 1e6 / misses : 0);
+        stats.putDouble("maxHitInitMs", maxHitInitNs / 1e6);
+        stats.putDouble("maxMissInitMs", maxMissInitNs / 1e6);
+        return stats;
+    }
+
+    /**
+     * Disposes the idle PeerConnections and disables the pool.
+     */
+    void dispose() {
+        configure(null, 0, false);
+    }
+
+    // Must be called on the pool's executor.
+    private void fill() {
+        while (true) {
+            ReadableMap fillConfiguration;
+            boolean fillPreGather;
+            int fillGeneration;
+            synchronized (this) {
+                if (idle.size() >= size) {
+                    return;
+                }
+                fillConfiguration = configuration;
+                fillPreGather = preGatherCandidates;
+                fillGeneration = generation;
+            }
+
+            Entry entry = create(fillConfiguration, fillPreGather);
+            if (entry == null) {
+                return;
+            }
+
+            synchronized (this) {
+                if (generation == fillGeneration && idle.size() < size) {
+                    idle.addLast(entry);
+                    continue;
+                }
+            }
+            // Reconfigured while it was being built.
+            entry.peerConnection.dispose();
+            return;
+        }
+    }
+
+    @Nullable
+    private Entry create(@Nullable ReadableMap configuration, boolean preGatherCandidates) {
+        try {
+            // First, as generating certificates needs the native library loaded.
+            PeerConnectionFactory factory = webRTCModule.getFactory();
+            PeerConnection.RTCConfiguration rtcConfiguration = webRTCModule.parseRTCConfiguration(configuration);
+            if (rtcConfiguration.certificate == null) {
+                CertificateStore.Certificate certificate = webRTCModule.certificateStore.obtain(
+                        PeerConnection.KeyType.ECDSA, CertificateStore.DEFAULT_EXPIRES_SECONDS);
+                rtcConfiguration.certificate = certificate.pem;
+            }
+            if (preGatherCandidates) {
+                rtcConfiguration.iceCandidatePoolSize = Math.max(rtcConfiguration.iceCandidatePoolSize, 1);
+            }
+
+            PendingObserver observer = new PendingObserver();
+            PeerConnection peerConnection = factory.createPeerConnection(rtcConfiguration, observer);
+            return peerConnection != null ? new Entry(peerConnection, observer) : null;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to create a pooled PeerConnection", e);
+            return null;
+        }
+    }
+
+    /**
+     * Stands in for the {@link PeerConnectionObserver} of a pooled PeerConnection until it is
+     * claimed, and forwards to it from then on. Callbacks received in the meantime are replayed in
+     * order on {@link #attach}.
+     */
+    static final class PendingObserver implements PeerConnection.Observer {
+        private interface Call {
+            void run(PeerConnection.Observer observer);
+        }
+
+        // Both guarded by `this`.
+        @Nullable
+        private PeerConnection.Observer delegate;
+        private final List<Call> pending = new ArrayList<>();
+
+        synchronized void attach(PeerConnection.Observer delegate) {
+            // Replayed under the lock, so a callback coming in meanwhile waits for its turn.
+            for (Call call : pending) {
+                call.run(delegate);
+            }
+            pending.clear();
+            this.delegate = delegate;
+        }
+
+        private void dispatch(Call call) {
+            PeerConnection.Observer observer;
+            synchronized (this) {
+                if (delegate == null) {
+                    pending.add(call);
+                    return;
+                }
+                observer = delegate;
+            }
+            call.run(observer);
+        }
+
+        @Override
+        public void onSignalingChange(PeerConnection.SignalingState signalingState) {
+            dispatch(o -> o.onSignalingChange(signalingState));
+        }
+
+        @Override
+        public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {
+            dispatch(o -> o.onIceConnectionChange(iceConnectionState));
+        }
+
+        @Override
+        public void onConnectionChange(PeerConnection.PeerConnectionState peerConnectionState) {
+            dispatch(o -> o.onConnectionChange(peerConnectionState));
+        }
+
+        @Override
+        public void onIceConnectionReceivingChange(boolean receiving) {
+            dispatch(o -> o.onIceConnectionReceivingChange(receiving));
+        }
+
+        @Override
+        public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
+            dispatch(o -> o.onIceGatheringChange(iceGatheringState));
+        }
+
+        @Override
+        public void onIceCandidate(IceCandidate candidate) {
+            dispatch(o -> o.onIceCandidate(candidate));
+        }
+
+        @Override
+        public void onIceCandidatesRemoved(IceCandidate[] candidates) {
+            dispatch(o -> o.onIceCandidatesRemoved(candidates));
+        }
+
+        @Override
+        public void onAddStream(MediaStream stream) {
+            dispatch(o -> o.onAddStream(stream));
+        }
+
+        @Override
+        public void onRemoveStream(MediaStream stream) {
+            dispatch(o -> o.onRemoveStream(stream));
+        }
+
+        @Override
+        public void onDataChannel(DataChannel dataChannel) {
+            dispatch(o -> o.onDataChannel(dataChannel));
+        }
+
+        @Override
+        public void onRenegotiationNeeded() {
+            dispatch(PeerConnection.Observer::onRenegotiationNeeded);
+        }
+
+        @Override
+        public void onAddTrack(RtpReceiver receiver, MediaStream[] mediaStreams) {
+            dispatch(o -> o.onAddTrack(receiver, mediaStreams));
+        }
+
+        @Override
+        public void onTrack(RtpTransceiver transceiver) {
+            dispatch(o -> o.onTrack(transceiver));
+        }
+
+        @Override
+        public void onRemoveTrack(RtpReceiver receiver) {
+            dispatch(o -> o.onRemoveTrack(receiver));
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.oney.WebRTCModule;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Derives per-sender / per-receiver quality figures (bitrate, packet loss, jitter, framerate,
+ * freezes, RTT) from consecutive stats reports, so JS can read a compact snapshot instead of
+ * parsing full reports on a timer.
+ *
+ * <p>Once started the monitor samples {@code getStats} every {@link #SAMPLE_INTERVAL_MS}. Rates are
+ * smoothed with an EWMA; packet loss and freezes are summed over the last {@link #WINDOW_SAMPLES}
+ * samples. It stops by itself when nobody asked for a snapshot for {@link #IDLE_TIMEOUT_MS}.
+ */
+final class QualityMonitor {
+    private static final long SAMPLE_INTERVAL_MS = 1000;
+    private static final long IDLE_TIMEOUT_MS = 30_000;
+    private static final int WINDOW_SAMPLES = 5;
+    private static final double EWMA_ALPHA = 0.3;
+
+    private final PeerConnectionObserver observer;
+
+    // All guarded by `this`.
+    private final Map<String, StreamQuality> streams = new HashMap<>();
+    private double timestampMs = Double.NaN;
+    private double rttMs = Double.NaN;
+    private double availableOutgoingBitrate = Double.NaN;
+    private double availableIncomingBitrate = Double.NaN;
+    private long lastQueryMs;
+    private boolean stopped;
+    @Nullable
+    private ScheduledFuture<?> nextSample;
+
+    QualityMonitor(PeerConnectionObserver observer) {
+        this.observer = observer;
+    }
+
+    synchronized void start() {
+        lastQueryMs = System.currentTimeMillis();
+        nextSample = ThreadUtils.schedule(this::sample, 0);
+    }
+
+    synchronized void stop() {
+        stopped = true;
+        if (nextSample != null) {
+            nextSample.cancel(false);
+            nextSample = null;
+        }
+    }
+
+    synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Returns the latest figures. Streams show up once they have been sampled twice.
+     */
+    synchronized WritableMap snapshot() {
+        lastQueryMs = System.currentTimeMillis();
+
+        WritableMap result = Arguments.createMap();
+        putIfKnown(result, "timestamp", timestampMs);
+        putIfKnown(result, "roundTripTime", rttMs);
+        putIfKnown(result, "availableOutgoingBitrate", availableOutgoingBitrate);
+        putIfKnown(result, "availableIncomingBitrate", availableIncomingBitrate);
+
+        WritableArray senders = Arguments.createArray();
+        WritableArray receivers = Arguments.createArray();
+        for (Map.Entry<String, StreamQuality> entry : streams.entrySet()) {
+            StreamQuality stream = entry.getValue();
+            if (Double.isNaN(stream.bitrate.value)) {
+                continue;
+            }
+            WritableMap map = stream.toMap(entry.getKey());
+            if (stream.outbound) {
+                senders.pushMap(map);
+            } else {
+                receivers.pushMap(map);
+            }
+        }
+        result.putArray("senders", senders);
+        result.putArray("receivers", receivers);
+        return result;
+    }
+
+    private void sample() {
+        synchronized (this) {
+            nextSample = null;
+            if (stopped) {
+                return;
+            }
+            if (System.currentTimeMillis() - lastQueryMs > IDLE_TIMEOUT_MS) {
+                stop();
+                return;
+            }
+        }
+        if (!observer.collectStats(this::onReport)) {
+            stop();
+        }
+    }
+
+    private synchronized void onReport(RTCStatsReport report) {
+        if (stopped) {
+            return;
+        }
+
+        Map<String, RTCStats> statsMap = report.getStatsMap();
+        for (StreamQuality stream : streams.values()) {
+            stream.seen = false;
+        }
+
+        for (RTCStats stats : statsMap.values()) {
+            String type = stats.getType();
+            if ("outbound-rtp".equals(type) || "inbound-rtp".equals(type)) {
+                StreamQuality stream = streams.get(stats.getId());
+                if (stream == null) {
+                    stream = new StreamQuality("outbound-rtp".equals(type));
+                    streams.put(stats.getId(), stream);
+                }
+                stream.update(stats);
+            } else if ("transport".equals(type)) {
+                Object pairId = stats.getMembers().get("selectedCandidatePairId");
+                RTCStats pair = pairId != null ? statsMap.get(pairId.toString()) : null;
+                if (pair != null) {
+                    Map<String, Object> members = pair.getMembers();
+                    rttMs = number(members, "currentRoundTripTime") * 1000;
+                    availableOutgoingBitrate = number(members, "availableOutgoingBitrate");
+                    availableIncomingBitrate = number(members, "availableIncomingBitrate");
+                }
+            }
+        }
+
+        // What the remote side reports back about our outbound streams.
+        for (RTCStats stats : statsMap.values()) {
+            if (!"remote-inbound-rtp".equals(stats.getType())) {
+                continue;
+            }
+            Object localId = stats.getMembers().get("localId");
+            StreamQuality stream = localId != null ? streams.get(localId.toString()) : null;
+            if (stream != null && stream.outbound) {
+                stream.updateRemote(stats.getMembers());
+            }
+        }
+
+        for (Iterator<StreamQuality> it = streams.values().iterator(); it.hasNext();) {
+            if (!it.next().seen) {
+                it.remove();
+            }
+        }
+        timestampMs = report.getTimestampUs() / 1000.0;
+
+        nextSample = ThreadUtils.schedule(this::sample, SAMPLE_INTERVAL_MS);
+    }
+
+    private static double number(Map<String, Object> members, String key) {
+        Object value = members.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    private static void putIfKnown(WritableMap map, String key, double value) {
+        if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+            map.putDouble(key, value);
+        }
+    }
+
+    /**
+     * Quality figures of one {@code outbound-rtp} or {@code inbound-rtp} stream.
+     */
+    private static final class StreamQuality {
+        final boolean outbound;
+        boolean seen;
+
+        @Nullable
+        String kind;
+        @Nullable
+        String mid;
+        double ssrc = Double.NaN;
+
+        // Cumulative counters of the previous sample.
+        double lastTimestampUs = Double.NaN;
+        double lastBytes;
+        double lastPackets;
+        double lastLost;
+        double lastFrames;
+        double lastRemoteLost = Double.NaN;
+        double lastRemotePackets;
+        double totalFreezes = Double.NaN;
+        double lastFreezes;
+
+        final Ewma bitrate = new Ewma();
+        final Ewma framesPerSecond = new Ewma();
+        final Ewma jitterMs = new Ewma();
+        final Ewma rttMs = new Ewma();
+        final Window lost = new Window();
+        final Window expected = new Window();
+        final Window freezes = new Window();
+
+        StreamQuality(boolean outbound) {
+            this.outbound = outbound;
+        }
+
+        void update(RTCStats stats) {
+            seen = true;
+            Map<String, Object> members = stats.getMembers();
+            Object kindValue = members.get("kind");
+            kind = kindValue != null ? kindValue.toString() : null;
+            Object midValue = members.get("mid");
+            mid = midValue != null ? midValue.toString() : null;
+            ssrc = number(members, "ssrc");
+
+            double timestampUs = stats.getTimestampUs();
+            double bytes = number(members, outbound ? "bytesSent" : "bytesReceived");
+            double packets = number(members, outbound ? "packetsSent" : "packetsReceived");
+            double frames = number(members, outbound ? "framesEncoded" : "framesDecoded");
+            double packetsLost = outbound ? 0 : number(members, "packetsLost");
+            double freezeCount = outbound ? Double.NaN : number(members, "freezeCount");
+
+            if (!Double.isNaN(lastTimestampUs) && timestampUs > lastTimestampUs) {
+                double seconds = (timestampUs - lastTimestampUs) / 1_000_000;
+                bitrate.update((bytes - lastBytes) * 8 / seconds);
+                if (!Double.isNaN(frames)) {
+                    framesPerSecond.update((frames - lastFrames) / seconds);
+                }
+                if (!outbound) {
+                    // packetsLost can go down when late packets turn up.
+                    double deltaLost = Math.max(0, packetsLost - lastLost);
+                    lost.add(deltaLost);
+                    expected.add(deltaLost + Math.max(0, packets - lastPackets));
+                }
+                if (!Double.isNaN(freezeCount)) {
+                    freezes.add(Math.max(0, freezeCount - lastFreezes));
+                }
+            }
+            if (!outbound) {
+                jitterMs.update(number(members, "jitter") * 1000);
+            }
+
+            lastTimestampUs = timestampUs;
+            lastBytes = bytes;
+            lastPackets = packets;
+            lastLost = packetsLost;
+            lastFrames = frames;
+            lastFreezes = freezeCount;
+            totalFreezes = freezeCount;
+        }
+
+        void updateRemote(Map<String, Object> members) {
+            double remoteLost = number(members, "packetsLost");
+            if (!Double.isNaN(lastRemoteLost)) {
+                double deltaLost = Math.max(0, remoteLost - lastRemoteLost);
+                double deltaSent = Math.max(0, lastPackets - lastRemotePackets);
+                lost.add(deltaLost);
+                expected.add(Math.max(deltaLost, deltaSent));
+            }
+            lastRemoteLost = remoteLost;
+            lastRemotePackets = lastPackets;
+
+            jitterMs.update(number(members, "jitter") * 1000);
+            rttMs.update(number(members, "roundTripTime") * 1000);
+        }
+
+        WritableMap toMap(String id) {
+            WritableMap map = Arguments.createMap();
+            map.putString("id", id);
+            if (kind != null) {
+                map.putString("kind", kind);
+            }
+            if (mid != null) {
+                map.putString("mid", mid);
+            }
+            putIfKnown(map, "ssrc", ssrc);
+            putIfKnown(map, "bitrate", bitrate.value);
+            putIfKnown(map, "jitter", jitterMs.value);
+            putIfKnown(map, "framesPerSecond", framesPerSecond.value);
+            putIfKnown(map, "roundTripTime", rttMs.value);
+            double expectedPackets = expected.sum();
+            if (expectedPackets > 0) {
+                map.putDouble("packetLossRate", lost.sum() / expectedPackets);
+            } else if (expected.count > 0) {
+                map.putDouble("packetLossRate", 0);
+            }
+            if (!Double.isNaN(totalFreezes)) {
+                map.putDouble("freezeCount", totalFreezes);
+                map.putDouble("recentFreezeCount", freezes.sum());
+            }
+            return map;
+        }
+    }
+
+    /**
+     * Exponentially weighted moving average; NaN until the first sample.
+     */
+    private static final class Ewma {
+        double value = Double.NaN;
+
+        void update(double sample) {
+            if (Double.isNaN(sample) || Double.isInfinite(sample)) {
+                return;
+            }
+            value = Double.isNaN(value) ? sample : value + EWMA_ALPHA * (sample - value);
+        }
+    }
+
+    /**
+     * Sum over the last {@link #WINDOW_SAMPLES} samples.
+     */
+    private static final class Window {
+        final double[] samples = new double[WINDOW_SAMPLES];
+        int next;
+        int count;
+
+        void add(double sample) {
+            samples[next] = Double.isNaN(sample) ? 0 : sample;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        double sum() {
+            double sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += samples[i];
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.oney.WebRTCModule;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.MediaStream;
+import org.webrtc.MediaStreamTrack;
+import org.webrtc.VideoTrack;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Module-wide index of the remote streams and tracks of all PeerConnections: streams by react tag
+ * and tracks by id, each with the id of the PeerConnection which owns it. Lookups don't need to
+ * know (or scan for) the owning PeerConnection, and are safe from any thread.
+ *
+ * <p>Kept in step by {@link PeerConnectionObserver} as tracks arrive and when it is disposed. Track
+ * ids are chosen by the remote peers and may clash across PeerConnections; the index then holds the
+ * latest one and {@link WebRTCModule#getTrack} falls back to the owning PeerConnection's own map.
+ *
+ * <p>The first video track of each stream is kept too: the native code changes a remote stream's
+ * track lists on the signaling thread, so they can't be read from the UI thread.
+ */
+class RemoteMediaIndex {
+    static final class Entry<T> {
+        final int pcId;
+        final T value;
+
+        Entry(int pcId, T value) {
+            this.pcId = pcId;
+            this.value = value;
+        }
+    }
+
+    private final Map<String, Entry<MediaStream>> streams = new ConcurrentHashMap<>();
+    private final Map<String, Entry<MediaStreamTrack>> tracks = new ConcurrentHashMap<>();
+    private final Map<String, Entry<VideoTrack>> streamVideoTracks = new ConcurrentHashMap<>();
+
+    /**
+     * Indexes a stream as one of its tracks arrives; {@code videoTrack} is that track if it is a
+     * video one. The first video track seen for a stream stays its video track.
+     */
+    void putStream(int pcId, String streamReactTag, MediaStream stream, @Nullable VideoTrack videoTrack) {
+        streams.put(streamReactTag, new Entry<>(pcId, stream));
+        if (videoTrack != null) {
+            streamVideoTracks.putIfAbsent(streamReactTag, new Entry<>(pcId, videoTrack));
+        }
+    }
+
+    void putTrack(int pcId, MediaStreamTrack track) {
+        tracks.put(track.id(), new Entry<>(pcId, track));
+    }
+
+    @Nullable
+    Entry<MediaStream> getStream(String streamReactTag) {
+        return streams.get(streamReactTag);
+    }
+
+    @Nullable
+    Entry<VideoTrack> getStreamVideoTrack(String streamReactTag) {
+        return streamVideoTracks.get(streamReactTag);
+    }
+
+    @Nullable
+    Entry<MediaStreamTrack> getTrack(String trackId) {
+        return tracks.get(trackId);
+    }
+
+    /**
+     * Drops everything owned by a PeerConnection.
+     */
+    void removeAll(int pcId) {
+        streams.values().removeIf(entry -> entry.pcId == pcId);
+        tracks.values().removeIf(entry -> entry.pcId == pcId);
+        streamVideoTracks.values().removeIf(entry -> entry.pcId == pcId);
+    }
+}
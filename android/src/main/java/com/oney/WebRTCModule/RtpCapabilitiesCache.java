@@ -0,0 +1,95 @@
+package com.oney.WebRTCModule;
+
+import android.util.Pair;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.MediaStreamTrack;
+import org.webrtc.RtpCapabilities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The sender and receiver RTP capabilities of the PeerConnectionFactory, serialized once. They only
+ * depend on the factory (and so on the hardware codecs, see
+ * {@link com.oney.WebRTCModule.webrtcutils.HardwareCodecProbe}), so the blocking getters serve them
+ * from any thread without going through the executor, and transceiverSetCodecPreferences doesn't
+ * serialize every codec again on each call.
+ */
+class RtpCapabilitiesCache {
+    private final WebRTCModule webRTCModule;
+
+    // Serialized RTP capabilities by kind.
+    private final Map<String, ReadableMap> senderCapabilities = new ConcurrentHashMap<>();
+    private final Map<String, ReadableMap> receiverCapabilities = new ConcurrentHashMap<>();
+    // The same codecs, serialized and paired with their native objects.
+    private final Map<String, List<Pair<Map<String, Object>, RtpCapabilities.CodecCapability>>> codecCandidates =
+            new ConcurrentHashMap<>();
+
+    RtpCapabilitiesCache(WebRTCModule webRTCModule) {
+        this.webRTCModule = webRTCModule;
+    }
+
+    /**
+     * Returns a fresh copy of the sender capabilities for a kind, empty for an unknown kind.
+     */
+    WritableMap getSenderCapabilities(String kind) {
+        return copyCapabilities(senderCapabilities.computeIfAbsent(kind, k -> serializeCapabilities(true, k)));
+    }
+
+    /**
+     * Returns a fresh copy of the receiver capabilities for a kind, empty for an unknown kind.
+     */
+    WritableMap getReceiverCapabilities(String kind) {
+        return copyCapabilities(receiverCapabilities.computeIfAbsent(kind, k -> serializeCapabilities(false, k)));
+    }
+
+    /**
+     * Returns the sender or receiver codecs for a media type, each with its serialized form.
+     */
+    List<Pair<Map<String, Object>, RtpCapabilities.CodecCapability>> getCodecCandidates(
+            boolean sender, MediaStreamTrack.MediaType mediaType) {
+        String key = (sender ? "sender:" : "receiver:") + mediaType;
+        return codecCandidates.computeIfAbsent(key, k -> {
+            List<Pair<Map<String, Object>, RtpCapabilities.CodecCapability>> candidates = new ArrayList<>();
+            for (RtpCapabilities.CodecCapability codec : getCapabilities(sender, mediaType).codecs) {
+                Map<String, Object> codecDict = SerializeUtils.serializeRtpCapabilitiesCodec(codec).toHashMap();
+                candidates.add(new Pair<>(codecDict, codec));
+            }
+            return Collections.unmodifiableList(candidates);
+        });
+    }
+
+    private RtpCapabilities getCapabilities(boolean sender, MediaStreamTrack.MediaType mediaType) {
+        return sender ? webRTCModule.getFactory().getRtpSenderCapabilities(mediaType)
+                      : webRTCModule.getFactory().getRtpReceiverCapabilities(mediaType);
+    }
+
+    private ReadableMap serializeCapabilities(boolean sender, String kind) {
+        MediaStreamTrack.MediaType mediaType;
+        if (kind.equals("audio")) {
+            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_AUDIO;
+        } else if (kind.equals("video")) {
+            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_VIDEO;
+        } else {
+            return Arguments.createMap();
+        }
+
+        return SerializeUtils.serializeRtpCapabilities(getCapabilities(sender, mediaType));
+    }
+
+    /**
+     * Returns a fresh copy of cached capabilities, the map handed to JS gets consumed.
+     */
+    private static WritableMap copyCapabilities(ReadableMap capabilities) {
+        WritableMap copy = Arguments.createMap();
+        copy.merge(capabilities);
+        return copy;
+    }
+}
@@ -4,12 +4,18 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.media.projection.MediaProjection;
+import android.os.Handler;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.OrientationEventListener;
 
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.WritableMap;
+
 import com.oney.WebRTCModule.foregroundService.ForegroundServiceController;
 
+import org.webrtc.CapturerObserver;
 import org.webrtc.ScreenCapturerAndroid;
 import org.webrtc.VideoCapturer;
 
@@ -27,11 +33,29 @@ public class ScreenCaptureController extends AbstractVideoCaptureController {
 
     private final Context context;
 
-    public ScreenCaptureController(
-            Context context, int width, int height, Intent mediaProjectionPermissionResultData, float resolutionScale) {
+    private final FrameRepeatingCapturerObserver.RepeatPolicy repeatPolicy;
+
+    @Nullable
+    private final ChangeDetectingCapturerObserver.Options frameFilterOptions;
+
+    @Nullable
+    private volatile FrameRepeatingCapturerObserver frameRepeater;
+
+    @Nullable
+    private volatile ChangeDetectingCapturerObserver frameFilter;
+
+    public ScreenCaptureController(Context context,
+            int width,
+            int height,
+            Intent mediaProjectionPermissionResultData,
+            float resolutionScale,
+            FrameRepeatingCapturerObserver.RepeatPolicy repeatPolicy,
+            @Nullable ChangeDetectingCapturerObserver.Options frameFilterOptions) {
         super((int) (width * resolutionScale), (int) (height * resolutionScale), DEFAULT_FPS);
 
         this.mediaProjectionPermissionResultData = mediaProjectionPermissionResultData;
+        this.repeatPolicy = repeatPolicy;
+        this.frameFilterOptions = frameFilterOptions;
 
         this.context = context;
 
@@ -60,6 +84,41 @@ public class ScreenCaptureController extends AbstractVideoCaptureController {
         }
     }
 
+    /**
+     * Puts the screen capture stages in front of the VideoSource's observer: the (optional)
+     * unchanged frame filter, then the frame repeater. Both run on {@code handler}, the thread
+     * frames are delivered on.
+     */
+    public CapturerObserver wrapCapturerObserver(CapturerObserver observer, Handler handler) {
+        FrameRepeatingCapturerObserver repeater = new FrameRepeatingCapturerObserver(observer, handler, repeatPolicy);
+        frameRepeater = repeater;
+        if (frameFilterOptions == null) {
+            return repeater;
+        }
+        ChangeDetectingCapturerObserver filter =
+                new ChangeDetectingCapturerObserver(repeater, handler, frameFilterOptions);
+        frameFilter = filter;
+        return filter;
+    }
+
+    /**
+     * Frame counters of the filter and the repeater, see {@link ChangeDetectingCapturerObserver}
+     * and {@link FrameRepeatingCapturerObserver}.
+     */
+    @Nullable
+    public WritableMap getStats() {
+        FrameRepeatingCapturerObserver repeater = frameRepeater;
+        if (repeater == null) {
+            return null;
+        }
+        WritableMap stats = repeater.getStats();
+        ChangeDetectingCapturerObserver filter = frameFilter;
+        if (filter != null) {
+            filter.putStats(stats);
+        }
+        return stats;
+    }
+
     @Override
     public String getDeviceId() {
         return "screen-capture";
@@ -0,0 +1,261 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes an {@link RTCStatsReport} into the JSON the JS layer parses (an array of
+ * {@code [id, stats]} pairs), optionally restricted to some stats types and members.
+ *
+ * <p>The encoder writes straight into a reused {@link StringBuilder} which is pre-sized from the
+ * previous report, so steady-state polling doesn't regrow it. Numbers and booleans are appended
+ * as primitives rather than going through intermediate strings, and strings are escaped properly.
+ * Encoders are not thread-safe; use {@link #get()} to obtain the one for the current thread.
+ */
+final class StatsEncoder {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * Builders which grew beyond this are dropped after use instead of being kept around.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final char LINE_SEPARATOR = (char) 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = (char) 0x2029;
+
+    private static final ThreadLocal<StatsEncoder> encoders = new ThreadLocal<StatsEncoder>() {
+        @Override
+        protected StatsEncoder initialValue() {
+            return new StatsEncoder();
+        }
+    };
+
+    private StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+    private int lastLength = INITIAL_CAPACITY;
+
+    private StatsEncoder() {}
+
+    static StatsEncoder get() {
+        return encoders.get();
+    }
+
+    String encode(RTCStatsReport report) {
+        return encode(report, Filter.ALL);
+    }
+
+    String encode(RTCStatsReport report, Filter filter) {
+        StringBuilder sb = builder;
+        sb.setLength(0);
+        // A bit of slack over the last report so small growth doesn't reallocate.
+        sb.ensureCapacity(lastLength + lastLength / 8);
+
+        sb.append('[');
+        boolean first = true;
+        for (Map.Entry<String, RTCStats> entry : report.getStatsMap().entrySet()) {
+            RTCStats stats = entry.getValue();
+            if (!filter.acceptsType(stats.getType())) {
+                continue;
+            }
+
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+
+            sb.append('[');
+            appendString(sb, entry.getKey());
+            sb.append(",{\"timestamp\":").append(stats.getTimestampUs() / 1000.0);
+            sb.append(",\"type\":");
+            appendString(sb, stats.getType());
+            sb.append(",\"id\":");
+            appendString(sb, stats.getId());
+
+            for (Map.Entry<String, Object> member : stats.getMembers().entrySet()) {
+                if (!filter.acceptsMember(member.getKey())) {
+                    continue;
+                }
+                sb.append(',');
+                appendString(sb, member.getKey());
+                sb.append(':');
+                appendValue(sb, member.getValue());
+            }
+
+            sb.append("}]");
+        }
+        sb.append(']');
+
+        String json = sb.toString();
+        lastLength = sb.length();
+        if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+            builder = new StringBuilder(INITIAL_CAPACITY);
+            lastLength = INITIAL_CAPACITY;
+        }
+        return json;
+    }
+
+    static void appendValue(StringBuilder sb, @Nullable Object value) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof String) {
+            appendString(sb, (String) value);
+        } else if (value instanceof Double) {
+            appendDouble(sb, (Double) value);
+        } else if (value instanceof Long) {
+            sb.append(((Long) value).longValue());
+        } else if (value instanceof Integer) {
+            sb.append(((Integer) value).intValue());
+        } else if (value instanceof Boolean) {
+            sb.append(((Boolean) value).booleanValue());
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            sb.append('[');
+            for (int i = 0; i < array.length; ++i) {
+                if (i != 0) {
+                    sb.append(',');
+                }
+                appendValue(sb, array[i]);
+            }
+            sb.append(']');
+        } else if (value instanceof Map) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                appendString(sb, String.valueOf(entry.getKey()));
+                sb.append(':');
+                appendValue(sb, entry.getValue());
+            }
+            sb.append('}');
+        } else if (value instanceof Number) {
+            // BigInteger (uint64 members) and anything else numeric.
+            sb.append(value.toString());
+        } else {
+            Log.w(TAG, "StatsEncoder: unexpected stats value type " + value.getClass().getName());
+            appendString(sb, value.toString());
+        }
+    }
+
+    private static void appendDouble(StringBuilder sb, double value) {
+        // JSON has no NaN / Infinity.
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append("null");
+        } else {
+            sb.append(value);
+        }
+    }
+
+    static void appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != LINE_SEPARATOR && c != PARAGRAPH_SEPARATOR) {
+                continue;
+            }
+            sb.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    // Other control characters, and U+2028 / U+2029 which are valid
+                    // in JSON strings but not in JS source.
+                    sb.append("\\u")
+                            .append(HEX[(c >> 12) & 0xf])
+                            .append(HEX[(c >> 8) & 0xf])
+                            .append(HEX[(c >> 4) & 0xf])
+                            .append(HEX[c & 0xf]);
+                    break;
+            }
+        }
+        sb.append(value, start, length);
+        sb.append('"');
+    }
+
+    /**
+     * Which stats objects and members to encode. {@code timestamp}, {@code type} and {@code id}
+     * are always encoded.
+     */
+    static final class Filter {
+        static final Filter ALL = new Filter(null, null);
+
+        @Nullable
+        private final Set<String> types;
+        @Nullable
+        private final Set<String> members;
+
+        Filter(@Nullable Set<String> types, @Nullable Set<String> members) {
+            this.types = types;
+            this.members = members;
+        }
+
+        /**
+         * Parses {@code {types?: string[], members?: string[]}}. Missing keys mean no restriction.
+         */
+        static Filter fromMap(@Nullable ReadableMap map) {
+            if (map == null) {
+                return ALL;
+            }
+            return new Filter(toSet(map, "types"), toSet(map, "members"));
+        }
+
+        boolean acceptsType(String type) {
+            return types == null || types.contains(type);
+        }
+
+        boolean acceptsMember(String member) {
+            return members == null || members.contains(member);
+        }
+
+        @Nullable
+        private static Set<String> toSet(ReadableMap map, String key) {
+            if (!map.hasKey(key) || map.isNull(key)) {
+                return null;
+            }
+            ReadableArray array = map.getArray(key);
+            Set<String> set = new HashSet<>();
+            for (int i = 0; i < array.size(); i++) {
+                set.add(array.getString(i));
+            }
+            return Collections.unmodifiableSet(set);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.oney.WebRTCModule;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Periodically samples the stats of a PeerConnection and emits only what changed since the
+ * previous sample, as a {@code peerConnectionStatsDelta} event.
+ *
+ * <p>The event carries a JSON string (for the same bridge reasons as {@code getStats}):
+ * <pre>
+ * {"timestamp": t, "full": bool,
+ *  "updated": [[id, {changed members}, [removed members]?], ...],
+ *  "removed": [id, ...]}
+ * </pre>
+ * The first sample is {@code full} and lists every stats object. Afterwards new objects are sent
+ * whole, existing ones with just their changed members, and vanished ones by id. {@code timestamp}
+ * is sent once per sample rather than per object; libwebrtc stamps a whole report at once anyway.
+ * Samples with no changes are not emitted.
+ *
+ * <p>The next sample is only scheduled once the previous one has been processed, so samples never
+ * overlap and a slow {@code getStats} stretches the interval rather than queueing up.
+ */
+final class StatsSubscription {
+    private static final long MIN_INTERVAL_MS = 100;
+    private static final long DEFAULT_INTERVAL_MS = 1000;
+
+    private final PeerConnectionObserver observer;
+    private final WebRTCModule webRTCModule;
+    private final int peerConnectionId;
+    private final long intervalMs;
+    private final StatsEncoder.Filter filter;
+
+    // Only touched by the sample in flight, and samples never overlap.
+    private Map<String, RTCStats> previous = Collections.emptyMap();
+    private final StringBuilder sb = new StringBuilder(1024);
+
+    // Guarded by `this`.
+    private boolean stopped;
+    @Nullable
+    private ScheduledFuture<?> nextSample;
+
+    StatsSubscription(
+            PeerConnectionObserver observer, WebRTCModule webRTCModule, int peerConnectionId, ReadableMap options) {
+        this.observer = observer;
+        this.webRTCModule = webRTCModule;
+        this.peerConnectionId = peerConnectionId;
+        this.intervalMs = options.hasKey("intervalMs")
+                ? Math.max(MIN_INTERVAL_MS, (long) options.getDouble("intervalMs"))
+                : DEFAULT_INTERVAL_MS;
+        this.filter = StatsEncoder.Filter.fromMap(options);
+    }
+
+    /**
+     * Takes the first (full) sample right away.
+     */
+    synchronized void start() {
+        nextSample = ThreadUtils.schedule(this::sample, 0);
+    }
+
+    synchronized void stop() {
+        stopped = true;
+        if (nextSample != null) {
+            nextSample.cancel(false);
+            nextSample = null;
+        }
+    }
+
+    private void sample() {
+        synchronized (this) {
+            nextSample = null;
+            if (stopped) {
+                return;
+            }
+        }
+        if (!observer.collectStats(this::onReport)) {
+            stop();
+        }
+    }
+
+    private void onReport(RTCStatsReport report) {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+        }
+
+        String delta = encodeDelta(report);
+        if (delta != null) {
+            WritableMap params = Arguments.createMap();
+            params.putInt("pcId", peerConnectionId);
+            params.putString("delta", delta);
+            webRTCModule.sendEvent("peerConnectionStatsDelta", params);
+        }
+
+        synchronized (this) {
+            if (!stopped) {
+                nextSample = ThreadUtils.schedule(this::sample, intervalMs);
+            }
+        }
+    }
+
+    /**
+     * Diffs {@code report} against the previous sample. Returns null if nothing changed.
+     */
+    @Nullable
+    private String encodeDelta(RTCStatsReport report) {
+        boolean full = previous.isEmpty();
+        Map<String, RTCStats> current = report.getStatsMap();
+
+        sb.setLength(0);
+        sb.append("{\"timestamp\":").append(report.getTimestampUs() / 1000.0);
+        sb.append(",\"full\":").append(full);
+        sb.append(",\"updated\":[");
+        boolean anyUpdated = false;
+        for (Map.Entry<String, RTCStats> entry : current.entrySet()) {
+            RTCStats stats = entry.getValue();
+            if (!filter.acceptsType(stats.getType())) {
+                continue;
+            }
+            int mark = sb.length();
+            if (anyUpdated) {
+                sb.append(',');
+            }
+            if (appendUpdate(entry.getKey(), stats, previous.get(entry.getKey()))) {
+                anyUpdated = true;
+            } else {
+                sb.setLength(mark);
+            }
+        }
+        sb.append("],\"removed\":[");
+        boolean anyRemoved = false;
+        for (Map.Entry<String, RTCStats> entry : previous.entrySet()) {
+            if (current.containsKey(entry.getKey()) || !filter.acceptsType(entry.getValue().getType())) {
+                continue;
+            }
+            if (anyRemoved) {
+                sb.append(',');
+            }
+            anyRemoved = true;
+            StatsEncoder.appendString(sb, entry.getKey());
+        }
+        sb.append("]}");
+
+        previous = current;
+        if (!full && !anyUpdated && !anyRemoved) {
+            return null;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends {@code [id, {members}(, [removed])?]} for one stats object. Returns false, leaving
+     * partial output for the caller to discard, if nothing changed.
+     */
+    private boolean appendUpdate(String id, RTCStats stats, @Nullable RTCStats prev) {
+        Map<String, Object> members = stats.getMembers();
+        Map<String, Object> prevMembers = prev != null ? prev.getMembers() : null;
+
+        sb.append('[');
+        StatsEncoder.appendString(sb, id);
+        sb.append(",{");
+        boolean changed = false;
+        if (prevMembers == null) {
+            sb.append("\"type\":");
+            StatsEncoder.appendString(sb, stats.getType());
+            sb.append(",\"id\":");
+            StatsEncoder.appendString(sb, stats.getId());
+            changed = true;
+        }
+        for (Map.Entry<String, Object> member : members.entrySet()) {
+            String key = member.getKey();
+            if (!filter.acceptsMember(key)) {
+                continue;
+            }
+            Object value = member.getValue();
+            if (prevMembers != null && Objects.deepEquals(value, prevMembers.get(key))) {
+                continue;
+            }
+            if (changed) {
+                sb.append(',');
+            }
+            changed = true;
+            StatsEncoder.appendString(sb, key);
+            sb.append(':');
+            StatsEncoder.appendValue(sb, value);
+        }
+        sb.append('}');
+
+        // Members can disappear too (optional ones, e.g. once a codec is gone).
+        if (prevMembers != null) {
+            boolean anyRemoved = false;
+            for (String key : prevMembers.keySet()) {
+                if (members.containsKey(key) || !filter.acceptsMember(key)) {
+                    continue;
+                }
+                sb.append(anyRemoved ? "," : ",[");
+                anyRemoved = true;
+                StatsEncoder.appendString(sb, key);
+            }
+            if (anyRemoved) {
+                sb.append(']');
+                changed = true;
+            }
+        }
+        sb.append(']');
+
+        return changed;
+    }
+}
@@ -0,0 +1,134 @@
+package com.oney.WebRTCModule;
+
+import android.graphics.Matrix;
+import android.opengl.GLES20;
+import android.os.Handler;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.GlRectDrawer;
+import org.webrtc.GlTextureFrameBuffer;
+import org.webrtc.RendererCommon;
+import org.webrtc.TextureBufferImpl;
+import org.webrtc.VideoFrame;
+import org.webrtc.YuvConverter;
+
+/**
+ * Copies texture frames, on the GPU, into a small set of RGBA textures it owns, so the copy can
+ * outlive the source. Capture textures (a SurfaceTexture has a single buffer) must be released
+ * promptly or the capturer stalls; a copy can be kept for as long as needed.
+ *
+ * <p>A slot is only redrawn once every frame built on it has been released, so consumers never see
+ * a texture change under them. Everything, including {@link #release()}, must run on the thread of
+ * the given handler, with an EGL context current (e.g. a SurfaceTextureHelper's handler). The
+ * copies' {@code toI420()} also runs there.
+ */
+public final class TextureFrameCopier {
+    private final Handler handler;
+    private final Slot[] slots;
+
+    // All of the following are only ever touched on `handler`'s thread.
+    @Nullable
+    private GlRectDrawer drawer;
+    @Nullable
+    private YuvConverter yuvConverter;
+    private boolean released;
+
+    public TextureFrameCopier(Handler handler, int slotCount) {
+        this.handler = handler;
+        this.slots = new Slot[slotCount];
+    }
+
+    /**
+     * Draws {@code source} into a free slot and wraps that as an already-retained texture buffer.
+     * Returns null if every slot is still referenced. Throws if the GL calls fail.
+     */
+    @Nullable
+    public VideoFrame.TextureBuffer copy(VideoFrame.TextureBuffer source) {
+        Slot slot = null;
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == null) {
+                slots[i] = new Slot();
+            }
+            if (!slots[i].busy) {
+                slot = slots[i];
+                break;
+            }
+        }
+        if (slot == null) {
+            return null;
+        }
+
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (drawer == null) {
+            drawer = new GlRectDrawer();
+            yuvConverter = new YuvConverter();
+        }
+        try {
+            slot.frameBuffer.setSize(width, height);
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, slot.frameBuffer.getFrameBufferId());
+            float[] matrix = RendererCommon.convertMatrixFromAndroidGraphicsMatrix(source.getTransformMatrix());
+            if (source.getType() == VideoFrame.TextureBuffer.Type.OES) {
+                drawer.drawOes(source.getTextureId(), matrix, width, height, 0, 0, width, height);
+            } else {
+                drawer.drawRgb(source.getTextureId(), matrix, width, height, 0, 0, width, height);
+            }
+            GLES20.glFlush();
+        } finally {
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        }
+
+        final Slot releasedSlot = slot;
+        slot.busy = true;
+        return new TextureBufferImpl(width,
+                height,
+                VideoFrame.TextureBuffer.Type.RGB,
+                slot.frameBuffer.getTextureId(),
+                new Matrix(),
+                handler,
+                yuvConverter,
+                // Fired wherever the last reference is dropped.
+                () -> handler.post(() -> {
+                    releasedSlot.busy = false;
+                    maybeReleaseGl();
+                }));
+    }
+
+    /**
+     * Frees the textures, right away or once the last copy still in use is released.
+     */
+    public void release() {
+        released = true;
+        maybeReleaseGl();
+    }
+
+    private void maybeReleaseGl() {
+        if (!released) {
+            return;
+        }
+        for (Slot slot : slots) {
+            if (slot != null && slot.busy) {
+                return;
+            }
+        }
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                slots[i].frameBuffer.release();
+                slots[i] = null;
+            }
+        }
+        if (drawer != null) {
+            drawer.release();
+            drawer = null;
+            yuvConverter.release();
+            yuvConverter = null;
+        }
+    }
+
+    private static final class Slot {
+        final GlTextureFrameBuffer frameBuffer = new GlTextureFrameBuffer(GLES20.GL_RGBA);
+        // Whether a buffer still uses the texture.
+        boolean busy;
+    }
+}
@@ -1,17 +1,86 @@
 package com.oney.WebRTCModule;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 final class ThreadUtils {
     /**
-     * Thread which will be used to call all WebRTC PeerConnection APIs. They
-     * they don't run on the calling thread anyway, we are deferring the calls
-     * to this thread to avoid (potentially) blocking the calling thread.
+     * Threads on which all WebRTC PeerConnection APIs are called. They don't
+     * run on the calling thread anyway, we are deferring the calls to these
+     * threads to avoid (potentially) blocking the calling thread.
      */
-    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final ExecutorService pool = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "WebRTCModule-executor-" + count.incrementAndGet());
+        }
+    });
+
+    /**
+     * Serial lane for operations which are not tied to a single PeerConnection
+     * (getUserMedia, local streams and tracks, audio output, etc.).
+     *
+     * Local tracks are also used from the PeerConnection lanes (addTrack,
+     * replaceTrack), so calls on the same track issued from JS to different
+     * lanes are not ordered relative to each other. Disposing a local track
+     * takes the write side of {@link WebRTCModule#localTracksLock}, the
+     * PeerConnection lanes the read side while they use one, so a track is
+     * never disposed while it is being added.
+     */
+    private static final ExecutorLane executor = new ExecutorLane("global", pool);
+
+    /**
+     * One serial lane per PeerConnection, so a slow operation on one
+     * PeerConnection doesn't hold up the others. Operations on the same
+     * PeerConnection stay strictly ordered.
+     */
+    private static final Map<Integer, ExecutorLane> peerConnectionLanes = new ConcurrentHashMap<>();
+
+    /**
+     * Lane shared by all disposed PeerConnections. The old lane forwards to it, and once that has
+     * drained the id is routed to it through {@link #disposedIds}, so callbacks and calls arriving
+     * after the dispose neither re-create a lane (which would never be released) nor run
+     * concurrently with what was still queued on the old one.
+     */
+    private static final ExecutorLane disposedLane = new ExecutorLane("disposed", pool);
+
+    /**
+     * The most recently disposed PeerConnection ids, bounded so they don't pile up over a long
+     * session; a call that late for an older one would just get a lane of its own.
+     */
+    private static final int MAX_DISPOSED_IDS = 1024;
+    private static final Set<Integer> disposedIds = // Guarded by itself.
+            Collections.newSetFromMap(new LinkedHashMap<Integer, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                    return size() > MAX_DISPOSED_IDS;
+                }
+            });
+
+    /**
+     * Single timer thread shared by everything that needs delayed or periodic
+     * work (flush windows, sampling timers). Scheduled tasks must be short;
+     * anything heavier should hop onto a lane.
+     */
+    private static final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "WebRTCModule-scheduler"));
 
     /**
      * Runs the given {@link Runnable} on the executor.
@@ -27,7 +96,9 @@ final class ThreadUtils {
      * @return Future.
      */
     public static <T> Future<T> submitToExecutor(Callable<T> callable) {
-        return executor.submit(callable);
+        FutureTask<T> future = new FutureTask<>(callable);
+        executor.execute(future);
+        return future;
     }
 
     /**
@@ -36,6 +107,102 @@ final class ThreadUtils {
      * @return Future.
      */
     public static Future<?> submitToExecutor(Runnable runnable) {
-        return executor.submit(runnable);
+        FutureTask<Void> future = new FutureTask<>(runnable, null);
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the lane of the given PeerConnection.
+     * A negative id (i.e. a local track) selects the global lane.
+     * @param pcId
+     * @param runnable
+     */
+    public static void runOnExecutor(int pcId, Runnable runnable) {
+        getLane(pcId).execute(runnable);
+    }
+
+    /**
+     * Submits the given {@link Callable} to be run on the lane of the given
+     * PeerConnection. A negative id selects the global lane.
+     * @param pcId
+     * @param callable
+     * @return Future.
+     */
+    public static <T> Future<T> submitToExecutor(int pcId, Callable<T> callable) {
+        FutureTask<T> future = new FutureTask<>(callable);
+        getLane(pcId).execute(future);
+        return future;
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the shared timer thread after
+     * {@code delayMs}.
+     * @param runnable
+     * @param delayMs
+     * @return ScheduledFuture which can be used to cancel it.
+     */
+    static ScheduledFuture<?> schedule(Runnable runnable, long delayMs) {
+        return scheduler.schedule(runnable, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a callable on the calling thread without queuing it on the lane
+     * of the given PeerConnection, but never concurrently with a task of
+     * that lane. See {@link ExecutorLane#runExclusive}.
+     * @param pcId
+     * @param callable
+     */
+    static <T> T runExclusive(int pcId, Callable<T> callable) throws Exception {
+        return getLane(pcId).runExclusive(callable);
+    }
+
+    /**
+     * Retires the lane of a disposed PeerConnection: once the calling task
+     * returns, whatever is still queued on it, and all later tasks for the id,
+     * run on the shared disposed lane. Must be called from a task on that lane.
+     * @param pcId
+     */
+    static void releaseLane(int pcId) {
+        synchronized (disposedIds) {
+            disposedIds.add(pcId);
+        }
+        ExecutorLane lane = peerConnectionLanes.get(pcId);
+        if (lane != null) {
+            lane.closeInto(disposedLane);
+            // Forwarded behind everything submitted so far; later tasks find the disposed lane
+            // through disposedIds.
+            lane.execute(() -> peerConnectionLanes.remove(pcId, lane));
+        }
+    }
+
+    /**
+     * Returns a snapshot of the counters of every live lane, the global one
+     * first.
+     */
+    static List<ExecutorLane.Stats> getLaneStats() {
+        List<ExecutorLane.Stats> stats = new ArrayList<>();
+        stats.add(executor.getStats());
+        for (ExecutorLane lane : peerConnectionLanes.values()) {
+            stats.add(lane.getStats());
+        }
+        return stats;
+    }
+
+    private static ExecutorLane getLane(int pcId) {
+        if (pcId < 0) {
+            return executor;
+        }
+        ExecutorLane lane = peerConnectionLanes.get(pcId);
+        if (lane != null) {
+            return lane;
+        }
+        // Checked together with creating the lane, so a retired id never gets a new one.
+        synchronized (disposedIds) {
+            if (disposedIds.contains(pcId)) {
+                return disposedLane;
+            }
+            return peerConnectionLanes.computeIfAbsent(pcId, id -> new ExecutorLane("pc-" + id, pool));
+        }
     }
 }
@@ -0,0 +1,89 @@
+package com.oney.WebRTCModule;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The transceivers of a PeerConnection by sender id (which is also the id JS knows them by) and by
+ * receiver id, so lookups don't cross JNI for every transceiver. Extended by {@link #add} and
+ * rebuilt by {@link #rescan}: PeerConnection.getTransceivers() disposes the wrappers it handed out
+ * before, so only the latest ones may be kept. Lookups which miss rescan once, which also picks up
+ * transceivers created by addTrack or setRemoteDescription.
+ *
+ * <p>Generic over the transceiver type so it can be exercised without the native library.
+ */
+class TransceiverIndex<T> {
+    interface Source<T> {
+        List<T> getTransceivers();
+
+        String getSenderId(T transceiver);
+
+        String getReceiverId(T transceiver);
+    }
+
+    private final Source<T> source;
+    // Guarded by `this`.
+    private final Map<String, T> bySenderId = new HashMap<>();
+    private final Map<String, T> byReceiverId = new HashMap<>();
+
+    TransceiverIndex(Source<T> source) {
+        this.source = source;
+    }
+
+    synchronized T add(T transceiver) {
+        if (transceiver != null) {
+            put(transceiver);
+        }
+        return transceiver;
+    }
+
+    /**
+     * Fetches the current transceivers from the source and rebuilds the index from them.
+     */
+    synchronized List<T> rescan() {
+        List<T> transceivers = source.getTransceivers();
+        bySenderId.clear();
+        byReceiverId.clear();
+        for (T transceiver : transceivers) {
+            put(transceiver);
+        }
+        return transceivers;
+    }
+
+    synchronized T getBySenderId(String senderId) {
+        return lookUp(bySenderId, senderId);
+    }
+
+    synchronized T getByReceiverId(String receiverId) {
+        return lookUp(byReceiverId, receiverId);
+    }
+
+    /**
+     * Receiver ids of the transceivers known so far, without asking the source.
+     */
+    synchronized Set<String> getReceiverIds() {
+        return new HashSet<>(byReceiverId.keySet());
+    }
+
+    synchronized void clear() {
+        bySenderId.clear();
+        byReceiverId.clear();
+    }
+
+    private void put(T transceiver) {
+        bySenderId.put(source.getSenderId(transceiver), transceiver);
+        byReceiverId.put(source.getReceiverId(transceiver), transceiver);
+    }
+
+    private T lookUp(Map<String, T> index, String id) {
+        T transceiver = index.get(id);
+        if (transceiver == null) {
+            rescan();
+            transceiver = index.get(id);
+        }
+        return transceiver;
+    }
+}
@@ -0,0 +1,74 @@
+package com.oney.WebRTCModule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The transceiver updates last sent to JS after an SDP operation, by transceiver (sender) id, so
+ * the next operation only sends what changed. Not thread-safe: a PeerConnection only touches its
+ * own on its lane.
+ */
+class TransceiverInfoDiff {
+    /** Keys of the serialized RtpParameters in a transceiver update. */
+    private static final String[] RTP_PARAMETERS_KEYS = {"senderRtpParameters", "receiverRtpParameters"};
+
+    private final Map<String, Map<String, Object>> sent = new HashMap<>();
+
+    /**
+     * Records the update about to be sent to JS for a transceiver. Returns false if JS already got
+     * the same one, in which case it needn't be sent. The RtpParameters' transactionId is left out
+     * of the comparison: each getParameters() call makes a new one.
+     */
+    boolean record(String transceiverId, Map<String, Object> info) {
+        Map<String, Object> comparable = withoutTransactionIds(info);
+        return !comparable.equals(sent.put(transceiverId, comparable));
+    }
+
+    /**
+     * Forgets the transceivers not in {@code transceiverIds} and returns the ids of those JS had
+     * been sent updates for.
+     */
+    List<String> retain(Set<String> transceiverIds) {
+        List<String> removed = new ArrayList<>();
+        for (Iterator<String> it = sent.keySet().iterator(); it.hasNext();) {
+            String transceiverId = it.next();
+            if (!transceiverIds.contains(transceiverId)) {
+                it.remove();
+                removed.add(transceiverId);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Makes the next {@link #record} for a transceiver count as changed.
+     */
+    void invalidate(String transceiverId) {
+        sent.remove(transceiverId);
+    }
+
+    void clear() {
+        sent.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> withoutTransactionIds(Map<String, Object> info) {
+        Map<String, Object> result = info;
+        for (String key : RTP_PARAMETERS_KEYS) {
+            Object parameters = info.get(key);
+            if (parameters instanceof Map && ((Map<String, Object>) parameters).containsKey("transactionId")) {
+                if (result == info) {
+                    result = new HashMap<>(info);
+                }
+                Map<String, Object> copy = new HashMap<>((Map<String, Object>) parameters);
+                copy.remove("transactionId");
+                result.put(key, copy);
+            }
+        }
+        return result;
+    }
+}
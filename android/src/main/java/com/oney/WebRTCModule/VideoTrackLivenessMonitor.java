@@ -0,0 +1,155 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.oney.WebRTCModule.webrtcutils.DecoderBudget;
+
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watches the frames of every remote video track, of all PeerConnections, from a single periodic
+ * task on the shared scheduler thread (see {@link ThreadUtils#schedule}).
+ *
+ * <p>Every {@link #CHECK_INTERVAL_MS} it measures each track's frame rate and resolution. A track
+ * which got no frames since the previous check is muted, but not before it has been watched for
+ * {@link #INITIAL_MUTE_DELAY_MS}. The results for all tracks go to JS in one
+ * {@code mediaStreamTrackLiveness} event: {@code {tracks: [{pcId, trackId, muted,
+ * framesPerSecond, width?, height?}]}}. The task only runs while there are tracks to watch.
+ */
+class VideoTrackLivenessMonitor {
+    private static final String TAG = VideoTrackLivenessMonitor.class.getSimpleName();
+
+    static final long INITIAL_MUTE_DELAY_MS = 3000;
+    static final long CHECK_INTERVAL_MS = 1500;
+
+    private final WebRTCModule webRTCModule;
+    private final Set<Entry> entries = ConcurrentHashMap.newKeySet();
+
+    @Nullable
+    private ScheduledFuture<?> nextCheck; // Guarded by `this`.
+
+    VideoTrackLivenessMonitor(WebRTCModule webRTCModule) {
+        this.webRTCModule = webRTCModule;
+    }
+
+    /**
+     * Starts watching a track. Add the returned sink to the track and hand it back to
+     * {@link #unregister} when done.
+     */
+    Entry register(int pcId, String trackId) {
+        Entry entry = new Entry(pcId, trackId, webRTCModule.decoderBudget);
+        entries.add(entry);
+        synchronized (this) {
+            if (nextCheck == null) {
+                nextCheck = ThreadUtils.schedule(this::check, CHECK_INTERVAL_MS);
+            }
+        }
+        return entry;
+    }
+
+    void unregister(Entry entry) {
+        entries.remove(entry);
+    }
+
+    private void check() {
+        long nowMs = System.currentTimeMillis();
+        WritableArray tracks = Arguments.createArray();
+        for (Entry entry : entries) {
+            WritableMap track = entry.check(nowMs);
+            if (track != null) {
+                tracks.pushMap(track);
+            }
+        }
+
+        if (tracks.size() > 0) {
+            WritableMap params = Arguments.createMap();
+            params.putArray("tracks", tracks);
+            webRTCModule.sendEvent("mediaStreamTrackLiveness", params);
+        }
+
+        synchronized (this) {
+            // A track registered from here on schedules the next check itself.
+            nextCheck = entries.isEmpty() ? null : ThreadUtils.schedule(this::check, CHECK_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * One watched track: counts the frames and remembers the size of the last one. With a
+     * {@link DecoderBudget}, it also shows it the frames, so it can tell which decoder feeds the
+     * track.
+     */
+    static final class Entry implements VideoSink {
+        final int pcId;
+        final String trackId;
+        @Nullable
+        private final DecoderBudget decoderBudget;
+
+        private final AtomicInteger frameCounter = new AtomicInteger();
+        private volatile int width;
+        private volatile int height;
+
+        // Only touched on the scheduler thread.
+        private final long registeredMs = System.currentTimeMillis();
+        private int lastFrameCount;
+        private long lastCheckMs = registeredMs;
+        private boolean muted;
+
+        Entry(int pcId, String trackId, @Nullable DecoderBudget decoderBudget) {
+            this.pcId = pcId;
+            this.trackId = trackId;
+            this.decoderBudget = decoderBudget;
+        }
+
+        @Override
+        public void onFrame(VideoFrame frame) {
+            frameCounter.incrementAndGet();
+            width = frame.getRotatedWidth();
+            height = frame.getRotatedHeight();
+            if (decoderBudget != null) {
+                decoderBudget.onTrackFrame(trackId, frame);
+            }
+        }
+
+        @Nullable
+        WritableMap check(long nowMs) {
+            int frameCount = frameCounter.get();
+            int frames = frameCount - lastFrameCount;
+            double seconds = (nowMs - lastCheckMs) / 1000.0;
+            lastFrameCount = frameCount;
+            lastCheckMs = nowMs;
+
+            if (frames == 0 && nowMs - registeredMs < INITIAL_MUTE_DELAY_MS) {
+                // Too early to call it muted.
+                return null;
+            }
+
+            boolean isMuted = frames == 0;
+            if (isMuted != muted) {
+                muted = isMuted;
+                Log.d(TAG, (isMuted ? "Mute" : "Unmute") + " event pcId: " + pcId + " trackId: " + trackId);
+            }
+
+            WritableMap track = Arguments.createMap();
+            track.putInt("pcId", pcId);
+            track.putString("trackId", trackId);
+            track.putBoolean("muted", muted);
+            track.putDouble("framesPerSecond", seconds > 0 ? frames / seconds : 0);
+            if (width > 0 && height > 0) {
+                track.putInt("width", width);
+                track.putInt("height", height);
+            }
+            return track;
+        }
+    }
+}
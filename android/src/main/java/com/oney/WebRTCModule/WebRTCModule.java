@@ -1,9 +1,10 @@
 package com.oney.WebRTCModule;
 
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
 import android.os.Build;
 import android.util.Log;
 import android.util.Pair;
-import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -24,42 +25,79 @@ import com.facebook.react.module.annotations.ReactModule;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.facebook.react.turbomodule.core.CallInvokerHolderImpl;
 import com.oney.WebRTCModule.foregroundService.ForegroundServiceController;
+import com.oney.WebRTCModule.videoEffects.ProcessorProvider;
+import com.oney.WebRTCModule.webrtcutils.BenchmarkedVideoEncoderFactory;
+import com.oney.WebRTCModule.webrtcutils.DecoderBudget;
 import com.oney.WebRTCModule.webrtcutils.H264AndSoftwareVideoDecoderFactory;
 import com.oney.WebRTCModule.webrtcutils.H264AndSoftwareVideoEncoderFactory;
+import com.oney.WebRTCModule.webrtcutils.HardwareCodecProbe;
+import com.oney.WebRTCModule.webrtcutils.VideoEncoderBenchmark;
 
 import org.webrtc.*;
 import org.webrtc.audio.AudioDeviceModule;
 import org.webrtc.audio.JavaAudioDeviceModule;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @ReactModule(name = "WebRTCModule")
 public class WebRTCModule extends ReactContextBaseJavaModule {
     static final String TAG = WebRTCModule.class.getCanonicalName();
 
-    PeerConnectionFactory mFactory;
+    // Only set once initializeFactory() is done; use getFactory().
+    private volatile PeerConnectionFactory mFactory;
     VideoEncoderFactory mVideoEncoderFactory;
     VideoDecoderFactory mVideoDecoderFactory;
     AudioDeviceModule mAudioDeviceModule;
 
+    private final FutureTask<Void> factoryInit = new FutureTask<>(this::initializeFactory, null);
+    private final AtomicBoolean factoryInitStarted = new AtomicBoolean();
+    // Phase name -> duration in ms, in the order they ran.
+    private final Map<String, Double> initPhaseTimings = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    // Shared by the VideoTrackAdapters of all PeerConnections.
+    final VideoTrackLivenessMonitor videoTrackLivenessMonitor = new VideoTrackLivenessMonitor(this);
+    final FrameProbes frameProbes = new FrameProbes();
+    final RemoteMediaIndex remoteMediaIndex = new RemoteMediaIndex();
+    final PeerConnectionPool peerConnectionPool = new PeerConnectionPool(this);
+    final CertificateStore certificateStore;
+    // Only with WebRTCModuleOptions.budgetHardwareVideoDecoders.
+    @Nullable
+    final DecoderBudget decoderBudget;
+
     // Need to expose the peer connection codec factories here to get capabilities
-    private final SparseArray<PeerConnectionObserver> mPeerConnectionObservers;
+    // Concurrent: each PeerConnection's operations run on its own executor lane.
+    private final Map<Integer, PeerConnectionObserver> mPeerConnectionObservers;
     final Map<String, MediaStream> localStreams;
+    // Local tracks are disposed on the global lane but handed to PeerConnections on their own
+    // lanes. Disposing takes the write lock, using one from a PeerConnection lane the read lock.
+    final ReadWriteLock localTracksLock = new ReentrantReadWriteLock();
 
     // Store generated certificates by ID to avoid exposing private keys to JS
     private static final Map<String, RtcCertificatePem> mCertificates = new HashMap<>();
 
+    private final RtpCapabilitiesCache rtpCapabilities = new RtpCapabilitiesCache(this);
+
     private final GetUserMediaImpl getUserMediaImpl;
     private final ForegroundServiceController foregroundServiceController;
     private final AudioOutputManager audioOutputManager;
@@ -76,16 +114,74 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     private FJAudioPushInstaller audioPushInstaller;
     private boolean audioPushInstallerInitialized;
 
+    // JSI path for DataChannel messages. Volatile: DataChannelWrappers sample it
+    // from libwebrtc threads when a channel is created.
+    private volatile FJDataChannelInstaller dataChannelInstaller;
+    private boolean dataChannelInstallerInitialized;
+
     // Core-Telecom (native call UX) and VoIP push bridging
     private final TelecomController telecomController;
     private final VoIPController voipController;
 
+    // Drops idle pooled video effect processors when the system runs low on memory.
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                ProcessorProvider.trimMemory();
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            ProcessorProvider.trimMemory();
+        }
+
+        @Override
+        public void onConfigurationChanged(@NonNull Configuration newConfig) {}
+    };
+
     public WebRTCModule(ReactApplicationContext reactContext) {
         super(reactContext);
-        mPeerConnectionObservers = new SparseArray<>();
-        localStreams = new HashMap<>();
+        mPeerConnectionObservers = new ConcurrentHashMap<>();
+        localStreams = new ConcurrentHashMap<>();
         audioExtractionController = new AudioExtractionController(reactContext, this::getTrack);
 
+        certificateStore = new CertificateStore(reactContext);
+
+        WebRTCModuleOptions options = WebRTCModuleOptions.getInstance();
+        decoderBudget = options.budgetHardwareVideoDecoders
+                ? new DecoderBudget(reactContext, options.maxHardwareVideoDecoders)
+                : null;
+
+        if (options.deferFactoryInitialization) {
+            Log.d(TAG, "Deferring PeerConnectionFactory initialization");
+        } else {
+            factoryInitStarted.set(true);
+            factoryInit.run();
+            // Surfaces a failure right away, like before deferring was an option.
+            getFactory();
+        }
+
+        getUserMediaImpl = new GetUserMediaImpl(this, reactContext);
+        foregroundServiceController = ForegroundServiceController.getInstance();
+        foregroundServiceController.setContext(reactContext);
+        audioOutputManager = new AudioOutputManager(this, reactContext);
+
+        telecomController = new TelecomController(this, reactContext, audioOutputManager);
+        voipController = new VoIPController(this);
+        telecomController.attach();
+        voipController.attach();
+        reactContext.getApplicationContext().registerComponentCallbacks(memoryCallbacks);
+    }
+
+    /**
+     * Builds the PeerConnectionFactory and everything it needs, timing each phase (see
+     * {@link #getInitializationStats}). Runs in the constructor, or with
+     * {@link WebRTCModuleOptions#deferFactoryInitialization} on a background thread on first use.
+     */
+    private void initializeFactory() {
+        ReactApplicationContext reactContext = getReactApplicationContext();
         WebRTCModuleOptions options = WebRTCModuleOptions.getInstance();
 
         AudioDeviceModule adm = options.audioDeviceModule;
@@ -95,6 +191,8 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         Logging.Severity loggingSeverity = options.loggingSeverity;
         String fieldTrials = options.fieldTrials;
 
+        long startNs = System.nanoTime();
+        long phaseStartNs = startNs;
         PeerConnectionFactory.initialize(PeerConnectionFactory.InitializationOptions.builder(reactContext)
                                                  .setFieldTrials(fieldTrials)
                                                  .setNativeLibraryLoader(new LibraryLoader())
@@ -104,18 +202,23 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         if (injectableLogger == null && loggingSeverity != null) {
             Logging.enableLogToDebugOutput(loggingSeverity);
         }
+        phaseStartNs = recordInitPhase("initialize", phaseStartNs);
 
         if (encoderFactory == null || decoderFactory == null) {
             // Initialize EGL context required for HW acceleration.
             EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
+            phaseStartNs = recordInitPhase("eglContext", phaseStartNs);
 
             if (eglContext != null) {
-                encoderFactory = new H264AndSoftwareVideoEncoderFactory(eglContext);
-                decoderFactory = new H264AndSoftwareVideoDecoderFactory(eglContext);
+                encoderFactory = options.benchmarkVideoEncoders
+                        ? new BenchmarkedVideoEncoderFactory(reactContext, eglContext)
+                        : new H264AndSoftwareVideoEncoderFactory(reactContext, eglContext);
+                decoderFactory = new H264AndSoftwareVideoDecoderFactory(reactContext, eglContext, decoderBudget);
             } else {
                 encoderFactory = new SoftwareVideoEncoderFactory();
                 decoderFactory = new SoftwareVideoDecoderFactory();
             }
+            phaseStartNs = recordInitPhase("videoCodecFactories", phaseStartNs);
         }
 
         if (adm == null) {
@@ -123,16 +226,18 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                           .setEnableVolumeLogger(false)
                           .setSamplesReadyCallback(audioExtractionController::onLocalAudioSamplesReady)
                           .createAudioDeviceModule();
+            phaseStartNs = recordInitPhase("audioDeviceModule", phaseStartNs);
         }
 
         Log.d(TAG, "Using video encoder factory: " + encoderFactory.getClass().getCanonicalName());
         Log.d(TAG, "Using video decoder factory: " + decoderFactory.getClass().getCanonicalName());
 
-        mFactory = PeerConnectionFactory.builder()
-                           .setAudioDeviceModule(adm)
-                           .setVideoEncoderFactory(encoderFactory)
-                           .setVideoDecoderFactory(decoderFactory)
-                           .createPeerConnectionFactory();
+        PeerConnectionFactory factory = PeerConnectionFactory.builder()
+                                                .setAudioDeviceModule(adm)
+                                                .setVideoEncoderFactory(encoderFactory)
+                                                .setVideoDecoderFactory(decoderFactory)
+                                                .createPeerConnectionFactory();
+        recordInitPhase("peerConnectionFactory", phaseStartNs);
 
         // PeerConnectionFactory now owns the adm native pointer, and we don't need it anymore.
         adm.release();
@@ -141,16 +246,50 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         mVideoEncoderFactory = encoderFactory;
         mVideoDecoderFactory = decoderFactory;
         mAudioDeviceModule = adm;
+        mFactory = factory;
 
-        getUserMediaImpl = new GetUserMediaImpl(this, reactContext);
-        foregroundServiceController = ForegroundServiceController.getInstance();
-        foregroundServiceController.setContext(reactContext);
-        audioOutputManager = new AudioOutputManager(this, reactContext);
+        recordInitPhase("total", startNs);
+        certificateStore.start();
+    }
 
-        telecomController = new TelecomController(this, reactContext, audioOutputManager);
-        voipController = new VoIPController(this);
-        telecomController.attach();
-        voipController.attach();
+    private long recordInitPhase(String phase, long phaseStartNs) {
+        long nowNs = System.nanoTime();
+        double durationMs = (nowNs - phaseStartNs) / 1e6;
+        initPhaseTimings.put(phase, durationMs);
+        Log.d(TAG, "Initialization phase " + phase + " took " + durationMs + "ms");
+        return nowNs;
+    }
+
+    /**
+     * Starts initializing the PeerConnectionFactory on a background thread, unless it has been
+     * started already.
+     */
+    void startFactoryInitialization() {
+        if (factoryInitStarted.compareAndSet(false, true)) {
+            new Thread(factoryInit, "WebRTCModule-init").start();
+        }
+    }
+
+    /**
+     * Returns the PeerConnectionFactory. With deferred initialization, the first callers wait
+     * until it's been built, starting that if need be; calls thus queue up behind it.
+     */
+    PeerConnectionFactory getFactory() {
+        PeerConnectionFactory factory = mFactory;
+        if (factory != null) {
+            return factory;
+        }
+
+        startFactoryInitialization();
+        try {
+            factoryInit.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to initialize the PeerConnectionFactory", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        return mFactory;
     }
 
     @Override
@@ -163,12 +302,15 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public void invalidate() {
         super.invalidate();
         audioOutputManager.stopObserving();
+        frameProbes.disableAll(-1);
+        peerConnectionPool.dispose();
         getUserMediaImpl.dispose();
         // prevent using stale context
         foregroundServiceController.setContext(null);
 
         telecomController.detach();
         voipController.detach();
+        getReactApplicationContext().getApplicationContext().unregisterComponentCallbacks(memoryCallbacks);
     }
 
     @NonNull
@@ -233,7 +375,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return iceServers;
     }
 
-    private PeerConnection.RTCConfiguration parseRTCConfiguration(ReadableMap map) {
+    PeerConnection.RTCConfiguration parseRTCConfiguration(ReadableMap map) {
         ReadableArray iceServersArray = null;
         if (map != null && map.hasKey("iceServers")) {
             iceServersArray = map.getArray("iceServers");
@@ -449,30 +591,83 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return conf;
     }
 
+    /**
+     * Runs a blocking PeerConnection call for a isBlockingSynchronousMethod and records how long
+     * the JS thread was blocked for in {@link BlockingCallStats}.
+     *
+     * By default the call is queued on the PeerConnection's executor lane, so it waits for
+     * everything queued before it. With {@link WebRTCModuleOptions#inlineBlockingCalls} it runs
+     * on the calling thread instead, ahead of the queued tasks but still excluding the lane (it
+     * only waits for the task running on it, if any), so it never sees the PeerConnection's state
+     * mid-change. {@code fallback} is returned if the PeerConnection got disposed in the meantime.
+     */
+    private <T> T runBlocking(String method, int pcId, T fallback, Callable<T> callable)
+            throws ExecutionException, InterruptedException {
+        boolean inline = WebRTCModuleOptions.getInstance().inlineBlockingCalls;
+        long startNs = System.nanoTime();
+        try {
+            if (!inline) {
+                return ThreadUtils.submitToExecutor(pcId, callable).get();
+            }
+
+            try {
+                return ThreadUtils.runExclusive(pcId, () -> {
+                    PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
+                    // peerConnectionInit runs before there is an observer.
+                    return pco != null ? pco.runInline(callable, fallback) : callable.call();
+                });
+            } catch (Exception e) {
+                throw new ExecutionException(e);
+            }
+        } finally {
+            BlockingCallStats.record(method, System.nanoTime() - startNs, inline);
+        }
+    }
+
     @ReactMethod(isBlockingSynchronousMethod = true)
     public boolean peerConnectionInit(ReadableMap configuration, int id) {
-        PeerConnection.RTCConfiguration rtcConfiguration = parseRTCConfiguration(configuration);
+        long startNs = System.nanoTime();
 
         try {
-            return (boolean) ThreadUtils
-                    .submitToExecutor(() -> {
+            return (boolean) runBlocking("peerConnectionInit", id, false,
+                    () -> {
                         PeerConnectionObserver observer = new PeerConnectionObserver(this, id);
-                        PeerConnection peerConnection = mFactory.createPeerConnection(rtcConfiguration, observer);
+                        PeerConnectionPool.Entry pooled = peerConnectionPool.claim(configuration);
+                        if (pooled != null) {
+                            observer.setPeerConnection(pooled.peerConnection);
+                            pooled.observer.attach(observer);
+                            mPeerConnectionObservers.put(id, observer);
+                            peerConnectionPool.recordInit(true, System.nanoTime() - startNs);
+                            return true;
+                        }
+
+                        // First, as the certificate store needs the native library loaded.
+                        PeerConnectionFactory factory = getFactory();
+                        PeerConnection.RTCConfiguration rtcConfiguration = parseRTCConfiguration(configuration);
+                        if (rtcConfiguration.certificate == null) {
+                            // Otherwise the PeerConnection generates one itself.
+                            CertificateStore.Certificate certificate =
+                                    certificateStore.take(PeerConnection.KeyType.ECDSA, 0);
+                            if (certificate != null) {
+                                rtcConfiguration.certificate = certificate.pem;
+                            }
+                        }
+                        PeerConnection peerConnection = factory.createPeerConnection(rtcConfiguration, observer);
                         if (peerConnection == null) {
                             return false;
                         }
                         observer.setPeerConnection(peerConnection);
                         mPeerConnectionObservers.put(id, observer);
+                        peerConnectionPool.recordInit(false, System.nanoTime() - startNs);
                         return true;
-                    })
-                    .get();
+                    });
         } catch (ExecutionException | InterruptedException e) {
             e.printStackTrace();
             throw new RuntimeException(e);
         }
     }
 
-    // Must be called in the executor.
+    // Can be called from any thread.
     MediaStream getStreamForReactTag(String streamReactTag) {
         MediaStream stream = localStreams.get(streamReactTag);
 
@@ -480,15 +675,27 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             return stream;
         }
 
-        for (int i = 0, size = mPeerConnectionObservers.size(); i < size; i++) {
-            PeerConnectionObserver pco = mPeerConnectionObservers.valueAt(i);
-            stream = pco.remoteStreams.get(streamReactTag);
-            if (stream != null) {
-                return stream;
+        RemoteMediaIndex.Entry<MediaStream> entry = remoteMediaIndex.getStream(streamReactTag);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * The first video track of a stream, for the views to render. Can be called from any thread: a
+     * local stream's video tracks are only changed while holding its monitor, and a remote
+     * stream's is the one recorded when it was indexed, since the native code changes those lists.
+     */
+    @Nullable
+    VideoTrack getVideoTrackForReactTag(String streamReactTag) {
+        MediaStream stream = localStreams.get(streamReactTag);
+
+        if (stream != null) {
+            synchronized (stream) {
+                return stream.videoTracks.isEmpty() ? null : stream.videoTracks.get(0);
             }
         }
 
-        return null;
+        RemoteMediaIndex.Entry<VideoTrack> entry = remoteMediaIndex.getStreamVideoTrack(streamReactTag);
+        return entry != null ? entry.value : null;
     }
 
     public MediaStreamTrack getTrack(int pcId, String trackId) {
@@ -496,6 +703,12 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             return getLocalTrack(trackId);
         }
 
+        RemoteMediaIndex.Entry<MediaStreamTrack> entry = remoteMediaIndex.getTrack(trackId);
+        if (entry != null && entry.pcId == pcId) {
+            return entry.value;
+        }
+
+        // Not there, or another PeerConnection has a track with the same id.
         PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
         if (pco == null) {
             Log.d(TAG, "getTrack(): could not find PeerConnection");
@@ -544,8 +757,8 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     @ReactMethod(isBlockingSynchronousMethod = true)
     public WritableMap peerConnectionAddTransceiver(int id, ReadableMap options) {
         try {
-            return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
+            return (WritableMap) runBlocking("peerConnectionAddTransceiver", id, null,
+                    (Callable<Object>) () -> {
                         PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                         if (pco == null) {
                             Log.d(TAG, "peerConnectionAddTransceiver() peerConnection is null");
@@ -559,9 +772,14 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                                     SerializeUtils.parseTransceiverOptions(options.getMap("init")));
                         } else if (options.hasKey("trackId")) {
                             String trackId = options.getString("trackId");
-                            MediaStreamTrack track = getLocalTrack(trackId);
-                            transceiver = pco.addTransceiver(
-                                    track, SerializeUtils.parseTransceiverOptions(options.getMap("init")));
+                            localTracksLock.readLock().lock();
+                            try {
+                                MediaStreamTrack track = getLocalTrack(trackId);
+                                transceiver = pco.addTransceiver(
+                                        track, SerializeUtils.parseTransceiverOptions(options.getMap("init")));
+                            } finally {
+                                localTracksLock.readLock().unlock();
+                            }
 
                         } else {
                             // This should technically never happen as the JS side checks for that.
@@ -579,8 +797,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                         params.putInt("transceiverOrder", pco.getNextTransceiverId());
                         params.putMap("transceiver", SerializeUtils.serializeTransceiver(id, transceiver));
                         return params;
-                    })
-                    .get();
+                    });
         } catch (InterruptedException | ExecutionException e) {
             Log.d(TAG, "peerConnectionAddTransceiver() " + e.getMessage());
             return null;
@@ -590,20 +807,14 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     @ReactMethod(isBlockingSynchronousMethod = true)
     public WritableMap peerConnectionAddTrack(int id, String trackId, ReadableMap options) {
         try {
-            return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
+            return (WritableMap) runBlocking("peerConnectionAddTrack", id, null,
+                    (Callable<Object>) () -> {
                         PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                         if (pco == null) {
                             Log.d(TAG, "peerConnectionAddTrack() peerConnection is null");
                             return null;
                         }
 
-                        MediaStreamTrack track = getLocalTrack(trackId);
-                        if (track == null) {
-                            Log.w(TAG, "peerConnectionAddTrack() couldn't find track " + trackId);
-                            return null;
-                        }
-
                         List<String> streamIds = new ArrayList<>();
                         if (options.hasKey("streamIds")) {
                             ReadableArray rawStreamIds = options.getArray("streamIds");
@@ -613,7 +824,19 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                                 }
                             }
                         }
-                        RtpSender sender = pco.getPeerConnection().addTrack(track, streamIds);
+
+                        RtpSender sender;
+                        localTracksLock.readLock().lock();
+                        try {
+                            MediaStreamTrack track = getLocalTrack(trackId);
+                            if (track == null) {
+                                Log.w(TAG, "peerConnectionAddTrack() couldn't find track " + trackId);
+                                return null;
+                            }
+                            sender = pco.getPeerConnection().addTrack(track, streamIds);
+                        } finally {
+                            localTracksLock.readLock().unlock();
+                        }
 
                         // Need to get the corresponding transceiver as well
                         RtpTransceiver transceiver = pco.getTransceiver(sender.id());
@@ -625,8 +848,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                         params.putMap("transceiver", SerializeUtils.serializeTransceiver(id, transceiver));
                         params.putMap("sender", SerializeUtils.serializeSender(id, sender));
                         return params;
-                    })
-                    .get();
+                    });
         } catch (InterruptedException | ExecutionException e) {
             Log.d(TAG, "peerConnectionAddTrack() " + e.getMessage());
             return null;
@@ -636,8 +858,8 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     @ReactMethod(isBlockingSynchronousMethod = true)
     public boolean peerConnectionRemoveTrack(int id, String senderId) {
         try {
-            return (boolean) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
+            return (boolean) runBlocking("peerConnectionRemoveTrack", id, false,
+                    (Callable<Object>) () -> {
                         PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                         if (pco == null) {
                             Log.d(TAG, "peerConnectionRemoveTrack() peerConnection is null");
@@ -650,8 +872,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                         }
 
                         return pco.getPeerConnection().removeTrack(sender);
-                    })
-                    .get();
+                    });
         } catch (InterruptedException | ExecutionException e) {
             Log.d(TAG, "peerConnectionRemoveTrack() " + e.getMessage());
             return false;
@@ -660,7 +881,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void senderSetParameters(int id, String senderId, ReadableMap options, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             try {
                 PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                 if (pco == null) {
@@ -679,6 +900,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 RtpParameters params = sender.getParameters();
                 params = SerializeUtils.updateRtpParameters(options, params);
                 sender.setParameters(params);
+                pco.invalidateTransceiverInfo(senderId);
                 promise.resolve(SerializeUtils.serializeRtpParameters(sender.getParameters()));
             } catch (Exception e) {
                 Log.d(TAG, "senderSetParameters: " + e.getMessage());
@@ -689,7 +911,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void transceiverStop(int id, String senderId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             try {
                 PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                 if (pco == null) {
@@ -705,6 +927,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 }
 
                 transceiver.stopStandard();
+                pco.invalidateTransceiverInfo(senderId);
                 promise.resolve(true);
             } catch (Exception e) {
                 Log.d(TAG, "transceiverStop(): " + e.getMessage());
@@ -715,7 +938,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void senderReplaceTrack(int id, String senderId, String trackId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             try {
                 PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                 if (pco == null) {
@@ -731,8 +954,13 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                     return;
                 }
 
-                MediaStreamTrack track = getLocalTrack(trackId);
-                sender.setTrack(track, false);
+                localTracksLock.readLock().lock();
+                try {
+                    MediaStreamTrack track = getLocalTrack(trackId);
+                    sender.setTrack(track, false);
+                } finally {
+                    localTracksLock.readLock().unlock();
+                }
                 promise.resolve(true);
             } catch (Exception e) {
                 Log.d(TAG, "senderReplaceTrack(): " + e.getMessage());
@@ -743,7 +971,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void transceiverSetDirection(int id, String senderId, String direction, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap identifier = Arguments.createMap();
             WritableMap params = Arguments.createMap();
             identifier.putInt("peerConnectionId", id);
@@ -774,7 +1002,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod(isBlockingSynchronousMethod = true)
     public boolean transceiverSetCodecPreferences(int id, String senderId, ReadableArray codecPreferences) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap identifier = Arguments.createMap();
             WritableMap params = Arguments.createMap();
             identifier.putInt("peerConnectionId", id);
@@ -797,20 +1025,12 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 if (direction.equals(RtpTransceiver.RtpTransceiverDirection.SEND_RECV)
                         || direction.equals(RtpTransceiver.RtpTransceiverDirection.SEND_ONLY)) {
-                    RtpCapabilities capabilities = mFactory.getRtpSenderCapabilities(transceiver.getMediaType());
-                    for (RtpCapabilities.CodecCapability codec : capabilities.codecs) {
-                        Map<String, Object> codecDict = SerializeUtils.serializeRtpCapabilitiesCodec(codec).toHashMap();
-                        availableCodecs.add(new Pair<>(codecDict, codec));
-                    }
+                    availableCodecs.addAll(rtpCapabilities.getCodecCandidates(true, transceiver.getMediaType()));
                 }
 
                 if (direction.equals(RtpTransceiver.RtpTransceiverDirection.SEND_RECV)
                         || direction.equals(RtpTransceiver.RtpTransceiverDirection.RECV_ONLY)) {
-                    RtpCapabilities capabilities = mFactory.getRtpReceiverCapabilities(transceiver.getMediaType());
-                    for (RtpCapabilities.CodecCapability codec : capabilities.codecs) {
-                        Map<String, Object> codecDict = SerializeUtils.serializeRtpCapabilitiesCodec(codec).toHashMap();
-                        availableCodecs.add(new Pair<>(codecDict, codec));
-                    }
+                    availableCodecs.addAll(rtpCapabilities.getCodecCandidates(false, transceiver.getMediaType()));
                 }
 
                 // Codec preferences is order sensitive.
@@ -884,7 +1104,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     @ReactMethod
     public void mediaStreamCreate(String id) {
         ThreadUtils.runOnExecutor(() -> {
-            MediaStream mediaStream = mFactory.createLocalMediaStream(id);
+            MediaStream mediaStream = getFactory().createLocalMediaStream(id);
             localStreams.put(id, mediaStream);
         });
     }
@@ -908,7 +1128,9 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             if ("audio".equals(kind)) {
                 stream.addTrack((AudioTrack) track);
             } else if ("video".equals(kind)) {
-                stream.addTrack((VideoTrack) track);
+                synchronized (stream) {
+                    stream.addTrack((VideoTrack) track);
+                }
                 WebRTCView.notifyStreamVideoTrackChanged(streamId);
             }
         });
@@ -933,7 +1155,9 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             if ("audio".equals(kind)) {
                 stream.removeTrack((AudioTrack) track);
             } else if ("video".equals(kind)) {
-                stream.removeTrack((VideoTrack) track);
+                synchronized (stream) {
+                    stream.removeTrack((VideoTrack) track);
+                }
                 WebRTCView.notifyStreamVideoTrackChanged(streamId);
             }
         });
@@ -947,8 +1171,15 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 Log.d(TAG, "mediaStreamRelease() stream is null");
                 return;
             }
-            localStreams.remove(id);
-            stream.dispose();
+            localTracksLock.writeLock().lock();
+            try {
+                localStreams.remove(id);
+                synchronized (stream) {
+                    stream.dispose();
+                }
+            } finally {
+                localTracksLock.writeLock().unlock();
+            }
         });
     }
 
@@ -960,14 +1191,19 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 Log.d(TAG, "mediaStreamTrackRelease() track is null");
                 return;
             }
-            track.setEnabled(false);
-            getUserMediaImpl.disposeTrack(id);
+            localTracksLock.writeLock().lock();
+            try {
+                track.setEnabled(false);
+                getUserMediaImpl.disposeTrack(id);
+            } finally {
+                localTracksLock.writeLock().unlock();
+            }
         });
     }
 
     @ReactMethod
     public void mediaStreamTrackSetEnabled(int pcId, String id, boolean enabled) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, () -> {
             MediaStreamTrack track = getTrack(pcId, id);
             if (track == null) {
                 Log.d(TAG, "mediaStreamTrackSetEnabled() could not find track " + id);
@@ -996,7 +1232,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void mediaStreamTrackSetVolume(int pcId, String id, double volume) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, () -> {
             MediaStreamTrack track = getTrack(pcId, id);
             if (track == null) {
                 Log.d(TAG, "mediaStreamTrackSetVolume() could not find track " + id);
@@ -1012,6 +1248,27 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         });
     }
 
+    /**
+     * Adds (or removes) a {@link FrameProbes} sink on a local (pcId -1) or remote video track.
+     */
+    @ReactMethod
+    public void mediaStreamTrackSetFrameProbe(int pcId, String id, boolean enabled) {
+        ThreadUtils.runOnExecutor(pcId, () -> {
+            if (!enabled) {
+                frameProbes.disable(pcId, id);
+                return;
+            }
+
+            MediaStreamTrack track = getTrack(pcId, id);
+            if (!(track instanceof VideoTrack)) {
+                Log.d(TAG, "mediaStreamTrackSetFrameProbe() could not find video track " + id);
+                return;
+            }
+
+            frameProbes.enable(pcId, (VideoTrack) track);
+        });
+    }
+
     @ReactMethod
     public void installAudioSinkJSI(Promise promise) {
         audioExtractionController.installAudioSink(promise);
@@ -1085,6 +1342,56 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return audioPushInstaller;
     }
 
+    /**
+     * Lazily builds the DataChannel JSI installer from the JS CallInvoker. Returns null when there
+     * is no CallInvoker (old architecture), in which case DataChannels keep using events.
+     *
+     * <p>Sends through the JSI global run synchronously on the JS thread, with the message bytes
+     * wrapped in place; {@link #sendDataChannelMessage} only looks the channel up in thread-safe
+     * maps before handing it to libwebrtc, which copies it, so it is safe off the executor.
+     */
+    private synchronized FJDataChannelInstaller getDataChannelInstaller() {
+        if (dataChannelInstallerInitialized) {
+            return dataChannelInstaller;
+        }
+        try {
+            ReactApplicationContext ctx = getReactApplicationContext();
+            if (ctx.getJSCallInvokerHolder() instanceof CallInvokerHolderImpl) {
+                dataChannelInstaller = new FJDataChannelInstaller(ctx, this::sendDataChannelMessage);
+            }
+            // Same latching rationale as the video installer above.
+            dataChannelInstallerInitialized = true;
+        } catch (Throwable t) {
+            Log.w(TAG, "DataChannel JSI unavailable: failed to build the JSI installer", t);
+        }
+        return dataChannelInstaller;
+    }
+
+    /**
+     * Returns the DataChannel JSI installer if JS has registered its receive handler, null
+     * otherwise. Sampled once per DataChannel, when it is created.
+     */
+    @Nullable
+    FJDataChannelInstaller getDataChannelJSI() {
+        FJDataChannelInstaller inst = dataChannelInstaller;
+        return inst != null && inst.hasHandler() ? inst : null;
+    }
+
+    private boolean sendDataChannelMessage(int pcId, String reactTag, ByteBuffer data, boolean binary) {
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
+        if (pco == null) {
+            Log.d(TAG, "sendDataChannelMessage() peerConnection is null");
+            return false;
+        }
+        try {
+            // Holds off a concurrent dispose() while libwebrtc copies the message.
+            return pco.runInline(() -> pco.dataChannelSend(reactTag, data, binary), false);
+        } catch (Exception e) {
+            Log.d(TAG, "sendDataChannelMessage() " + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Stops and removes a custom audio track's pacing scheduler, joining its feeder thread so
      * no frame is in flight before the track's source is disposed. No-op for other tracks.
@@ -1136,6 +1443,18 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         inst.install(promise);
     }
 
+    @ReactMethod
+    public void installDataChannelJSI(Promise promise) {
+        FJDataChannelInstaller inst = getDataChannelInstaller();
+        if (inst == null) {
+            promise.reject("E_NO_JSI", "The DataChannel JSI binding requires the New Architecture.");
+            return;
+        }
+        // Re-run the C++ install on every call, for the same JS-reload reason as
+        // installCustomVideoJSI; FJDataChannel::install owns idempotency.
+        inst.install(promise);
+    }
+
     @ReactMethod
     public void createCustomAudioTrack(ReadableMap init, Promise promise) {
         FJAudioPushInstaller inst = getAudioPushInstaller();
@@ -1157,14 +1476,21 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     }
 
     /**
-     * This serializes the transceivers current direction and mid and returns them
-     * for update when an sdp negotiation/renegotiation happens
+     * This serializes the transceivers current direction and mid and puts them in
+     * {@code params} for update when an sdp negotiation/renegotiation happens.
+     * Only the transceivers whose update differs from the one sent last time are
+     * included in {@code transceiversInfo}; the ones which are gone are listed in
+     * {@code removedTransceiverIds}.
      */
-    private ReadableArray getTransceiversInfo(PeerConnection peerConnection) {
+    private void putTransceiversInfo(
+            WritableMap params, PeerConnectionObserver pco, List<RtpTransceiver> transceivers) {
         WritableArray transceiverUpdates = Arguments.createArray();
+        Set<String> transceiverIds = new HashSet<>();
 
-        for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
+        for (RtpTransceiver transceiver : transceivers) {
             WritableMap transceiverUpdate = Arguments.createMap();
+            String transceiverId = transceiver.getSender().id();
+            transceiverIds.add(transceiverId);
 
             RtpTransceiver.RtpTransceiverDirection direction = transceiver.getCurrentDirection();
             if (direction != null) {
@@ -1172,16 +1498,35 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 transceiverUpdate.putString("currentDirection", directionSerialized);
             }
 
-            transceiverUpdate.putString("transceiverId", transceiver.getSender().id());
+            transceiverUpdate.putString("transceiverId", transceiverId);
             transceiverUpdate.putString("mid", transceiver.getMid());
             transceiverUpdate.putBoolean("isStopped", transceiver.isStopped());
             transceiverUpdate.putMap("senderRtpParameters",
                     SerializeUtils.serializeRtpParameters(transceiver.getSender().getParameters()));
             transceiverUpdate.putMap("receiverRtpParameters",
                     SerializeUtils.serializeRtpParameters(transceiver.getReceiver().getParameters()));
-            transceiverUpdates.pushMap(transceiverUpdate);
+            if (pco.recordTransceiverInfo(transceiverId, transceiverUpdate.toHashMap())) {
+                transceiverUpdates.pushMap(transceiverUpdate);
+            }
+        }
+
+        WritableArray removedIds = Arguments.createArray();
+        for (String transceiverId : pco.retainTransceiverInfo(transceiverIds)) {
+            removedIds.pushString(transceiverId);
         }
-        return transceiverUpdates;
+
+        params.putArray("transceiversInfo", transceiverUpdates);
+        params.putArray("removedTransceiverIds", removedIds);
+    }
+
+    @ReactMethod
+    public void mediaStreamTrackGetScreenCaptureStats(String id, Promise promise) {
+        ThreadUtils.runOnExecutor(() -> getUserMediaImpl.getScreenCaptureStats(id, promise));
+    }
+
+    @ReactMethod
+    public void mediaStreamTrackGetVideoEffectsStats(String id, Promise promise) {
+        ThreadUtils.runOnExecutor(() -> getUserMediaImpl.getVideoEffectsStats(id, promise));
     }
 
     @ReactMethod
@@ -1191,7 +1536,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionSetConfiguration(ReadableMap configuration, int id) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             PeerConnection peerConnection = getPeerConnection(id);
             if (peerConnection == null) {
                 Log.d(TAG, "peerConnectionSetConfiguration() peerConnection is null");
@@ -1203,7 +1548,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionCreateOffer(int id, ReadableMap options, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
             PeerConnection peerConnection = pco.getPeerConnection();
 
@@ -1213,31 +1558,29 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 return;
             }
 
-            List<String> receiversIds = new ArrayList<>();
-            for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
-                receiversIds.add(transceiver.getReceiver().id());
-            }
+            Set<String> receiversIds = pco.getKnownReceiverIds();
 
             final SdpObserver observer = new SdpObserver() {
                 @Override
                 public void onCreateFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(id, () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
 
                 @Override
                 public void onCreateSuccess(SessionDescription sdp) {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(id, () -> {
                         WritableMap params = Arguments.createMap();
                         WritableMap sdpInfo = Arguments.createMap();
 
                         sdpInfo.putString("sdp", sdp.description);
                         sdpInfo.putString("type", sdp.type.canonicalForm());
 
-                        params.putArray("transceiversInfo", getTransceiversInfo(peerConnection));
+                        List<RtpTransceiver> transceivers = pco.getTransceivers();
+                        putTransceiversInfo(params, pco, transceivers);
                         params.putMap("sdpInfo", sdpInfo);
 
                         WritableArray newTransceivers = Arguments.createArray();
-                        for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
+                        for (RtpTransceiver transceiver : transceivers) {
                             if (!receiversIds.contains(transceiver.getReceiver().id())) {
                                 WritableMap newTransceiver = Arguments.createMap();
                                 newTransceiver.putInt("transceiverOrder", pco.getNextTransceiverId());
@@ -1266,8 +1609,9 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionCreateAnswer(int id, ReadableMap options, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
-            PeerConnection peerConnection = getPeerConnection(id);
+        ThreadUtils.runOnExecutor(id, () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
+            PeerConnection peerConnection = pco != null ? pco.getPeerConnection() : null;
 
             if (peerConnection == null) {
                 Log.d(TAG, "peerConnectionCreateAnswer() peerConnection is null");
@@ -1278,19 +1622,19 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             final SdpObserver observer = new SdpObserver() {
                 @Override
                 public void onCreateFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(id, () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
 
                 @Override
                 public void onCreateSuccess(SessionDescription sdp) {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(id, () -> {
                         WritableMap params = Arguments.createMap();
                         WritableMap sdpInfo = Arguments.createMap();
 
                         sdpInfo.putString("sdp", sdp.description);
                         sdpInfo.putString("type", sdp.type.canonicalForm());
 
-                        params.putArray("transceiversInfo", getTransceiversInfo(peerConnection));
+                        putTransceiversInfo(params, pco, pco.getTransceivers());
                         params.putMap("sdpInfo", sdpInfo);
 
                         promise.resolve(params);
@@ -1310,8 +1654,9 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionSetLocalDescription(int pcId, ReadableMap desc, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
-            PeerConnection peerConnection = getPeerConnection(pcId);
+        ThreadUtils.runOnExecutor(pcId, () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
+            PeerConnection peerConnection = pco != null ? pco.getPeerConnection() : null;
             if (peerConnection == null) {
                 Log.d(TAG, "peerConnectionSetLocalDescription() peerConnection is null");
                 promise.reject(new Exception("PeerConnection not found"));
@@ -1324,19 +1669,11 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onSetSuccess() {
-                    ThreadUtils.runOnExecutor(() -> {
-                        WritableMap newSdpMap = Arguments.createMap();
+                    ThreadUtils.runOnExecutor(pcId, () -> {
                         WritableMap params = Arguments.createMap();
 
-                        SessionDescription newSdp = peerConnection.getLocalDescription();
-                        // Can happen when doing a rollback.
-                        if (newSdp != null) {
-                            newSdpMap.putString("type", newSdp.type.canonicalForm());
-                            newSdpMap.putString("sdp", newSdp.description);
-                        }
-
-                        params.putMap("sdpInfo", newSdpMap);
-                        params.putArray("transceiversInfo", getTransceiversInfo(peerConnection));
+                        params.putMap("sdpInfo", pco.takeLocalDescription());
+                        putTransceiversInfo(params, pco, pco.getTransceivers());
 
                         promise.resolve(params);
                     });
@@ -1347,7 +1684,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onSetFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(pcId, () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
             };
 
@@ -1365,7 +1702,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionSetRemoteDescription(int id, ReadableMap desc, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
             PeerConnection peerConnection = pco.getPeerConnection();
 
@@ -1378,10 +1715,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             SessionDescription sdp = new SessionDescription(
                     SessionDescription.Type.fromCanonicalForm(desc.getString("type")), desc.getString("sdp"));
 
-            List<String> receiversIds = new ArrayList<>();
-            for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
-                receiversIds.add(transceiver.getReceiver().id());
-            }
+            Set<String> receiversIds = pco.getKnownReceiverIds();
 
             final SdpObserver observer = new SdpObserver() {
                 @Override
@@ -1389,7 +1723,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onSetSuccess() {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(id, () -> {
                         WritableMap newSdpMap = Arguments.createMap();
                         WritableMap params = Arguments.createMap();
 
@@ -1400,11 +1734,12 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                             newSdpMap.putString("sdp", newSdp.description);
                         }
 
-                        params.putArray("transceiversInfo", getTransceiversInfo(peerConnection));
+                        List<RtpTransceiver> transceivers = pco.getTransceivers();
+                        putTransceiversInfo(params, pco, transceivers);
                         params.putMap("sdpInfo", newSdpMap);
 
                         WritableArray newTransceivers = Arguments.createArray();
-                        for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
+                        for (RtpTransceiver transceiver : transceivers) {
                             if (!receiversIds.contains(transceiver.getReceiver().id())) {
                                 WritableMap newTransceiver = Arguments.createMap();
                                 newTransceiver.putInt("transceiverOrder", pco.getNextTransceiverId());
@@ -1425,7 +1760,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onSetFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(id, () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
             };
 
@@ -1435,55 +1770,27 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod(isBlockingSynchronousMethod = true)
     public WritableMap receiverGetCapabilities(String kind) {
+        long startNs = System.nanoTime();
         try {
-            return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
-                        MediaStreamTrack.MediaType mediaType;
-                        if (kind.equals("audio")) {
-                            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_AUDIO;
-                        } else if (kind.equals("video")) {
-                            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_VIDEO;
-                        } else {
-                            return Arguments.createMap();
-                        }
-
-                        RtpCapabilities capabilities = mFactory.getRtpReceiverCapabilities(mediaType);
-                        return SerializeUtils.serializeRtpCapabilities(capabilities);
-                    })
-                    .get();
-        } catch (ExecutionException | InterruptedException e) {
-            Log.d(TAG, "receiverGetCapabilities() " + e.getMessage());
-            return null;
+            return rtpCapabilities.getReceiverCapabilities(kind);
+        } finally {
+            BlockingCallStats.record("receiverGetCapabilities", System.nanoTime() - startNs, true);
         }
     }
 
     @ReactMethod(isBlockingSynchronousMethod = true)
     public WritableMap senderGetCapabilities(String kind) {
+        long startNs = System.nanoTime();
         try {
-            return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
-                        MediaStreamTrack.MediaType mediaType;
-                        if (kind.equals("audio")) {
-                            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_AUDIO;
-                        } else if (kind.equals("video")) {
-                            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_VIDEO;
-                        } else {
-                            return Arguments.createMap();
-                        }
-
-                        RtpCapabilities capabilities = mFactory.getRtpSenderCapabilities(mediaType);
-                        return SerializeUtils.serializeRtpCapabilities(capabilities);
-                    })
-                    .get();
-        } catch (ExecutionException | InterruptedException e) {
-            Log.d(TAG, "senderGetCapabilities() " + e.getMessage());
-            return null;
+            return rtpCapabilities.getSenderCapabilities(kind);
+        } finally {
+            BlockingCallStats.record("senderGetCapabilities", System.nanoTime() - startNs, true);
         }
     }
 
     @ReactMethod
     public void receiverGetStats(int pcId, String receiverId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "receiverGetStats() peerConnection is null");
@@ -1496,7 +1803,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void senderGetStats(int pcId, String senderId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "senderGetStats() peerConnection is null");
@@ -1509,7 +1816,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionAddICECandidate(int pcId, ReadableMap candidateMap, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, () -> {
             PeerConnection peerConnection = getPeerConnection(pcId);
             if (peerConnection == null) {
                 Log.d(TAG, "peerConnectionAddICECandidate() peerConnection is null");
@@ -1533,7 +1840,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             peerConnection.addIceCandidate(candidate, new AddIceObserver() {
                 @Override
                 public void onAddSuccess() {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(pcId, () -> {
                         WritableMap newSdpMap = Arguments.createMap();
                         SessionDescription newSdp = peerConnection.getRemoteDescription();
                         newSdpMap.putString("type", newSdp.type.canonicalForm());
@@ -1544,7 +1851,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onAddFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(pcId, () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
             });
         });
@@ -1552,7 +1859,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionGetStats(int peerConnectionId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "peerConnectionGetStats() peerConnection is null");
@@ -1563,9 +1870,71 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         });
     }
 
+    /**
+     * Like {@link #peerConnectionGetStats} but only encodes the stats types and members listed in
+     * {@code filter} ({@code {types?: string[], members?: string[]}}).
+     */
+    @ReactMethod
+    public void peerConnectionGetFilteredStats(int peerConnectionId, ReadableMap filter, Promise promise) {
+        StatsEncoder.Filter statsFilter = StatsEncoder.Filter.fromMap(filter);
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "peerConnectionGetFilteredStats() peerConnection is null");
+                promise.resolve(StringUtils.statsToJSON(new RTCStatsReport(0, new HashMap<>())));
+            } else {
+                pco.getStats(statsFilter, promise);
+            }
+        });
+    }
+
+    /**
+     * Resolves with bitrate, packet loss, jitter, framerate, freeze and RTT figures per sender and
+     * receiver, computed natively from consecutive stats reports.
+     */
+    @ReactMethod
+    public void peerConnectionGetQualitySnapshot(int peerConnectionId, Promise promise) {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "peerConnectionGetQualitySnapshot() peerConnection is null");
+                promise.reject(new Exception("Peer Connection is not initialized"));
+                return;
+            }
+            promise.resolve(pco.getQualitySnapshot());
+        });
+    }
+
+    /**
+     * Starts emitting {@code peerConnectionStatsDelta} events for the given PeerConnection, replacing
+     * any previous subscription. {@code options} is {@code {intervalMs?, types?, members?}}.
+     */
+    @ReactMethod
+    public void peerConnectionSubscribeStats(int peerConnectionId, ReadableMap options) {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "peerConnectionSubscribeStats() peerConnection is null");
+                return;
+            }
+            pco.subscribeStats(options);
+        });
+    }
+
+    @ReactMethod
+    public void peerConnectionUnsubscribeStats(int peerConnectionId) {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null) {
+                return;
+            }
+            pco.unsubscribeStats();
+        });
+    }
+
     @ReactMethod
     public void peerConnectionClose(int id) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "peerConnectionClose() peerConnection is null");
@@ -1577,19 +1946,24 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionDispose(int id) {
-        ThreadUtils.runOnExecutor(() -> {
-            PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
-            if (pco == null || pco.getPeerConnection() == null) {
-                Log.d(TAG, "peerConnectionDispose() peerConnection is null");
+        ThreadUtils.runOnExecutor(id, () -> {
+            try {
+                // Unregister first so that inline blocking calls don't pick it up anymore.
+                PeerConnectionObserver pco = mPeerConnectionObservers.remove(id);
+                if (pco == null || pco.getPeerConnection() == null) {
+                    Log.d(TAG, "peerConnectionDispose() peerConnection is null");
+                    return;
+                }
+                pco.dispose();
+            } finally {
+                ThreadUtils.releaseLane(id);
             }
-            pco.dispose();
-            mPeerConnectionObservers.remove(id);
         });
     }
 
     @ReactMethod
     public void peerConnectionRestartIce(int pcId) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, () -> {
             PeerConnection peerConnection = getPeerConnection(pcId);
             if (peerConnection == null) {
                 Log.w(TAG, "peerConnectionRestartIce() peerConnection is null");
@@ -1603,8 +1977,8 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     @ReactMethod(isBlockingSynchronousMethod = true)
     public WritableMap createDataChannel(int peerConnectionId, String label, ReadableMap config) {
         try {
-            return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
+            return (WritableMap) runBlocking("createDataChannel", peerConnectionId, null,
+                    (Callable<Object>) () -> {
                         PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
                         if (pco == null || pco.getPeerConnection() == null) {
                             Log.d(TAG, "createDataChannel() peerConnection is null");
@@ -1612,8 +1986,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                         } else {
                             return pco.createDataChannel(label, config);
                         }
-                    })
-                    .get();
+                    });
         } catch (ExecutionException | InterruptedException e) {
             return null;
         }
@@ -1621,7 +1994,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void dataChannelClose(int peerConnectionId, String reactTag) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
             // Forward to PeerConnectionObserver which deals with DataChannels
             // because DataChannel is owned by PeerConnection.
             PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
@@ -1636,7 +2009,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void dataChannelDispose(int peerConnectionId, String reactTag) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "dataChannelDispose() peerConnection is null");
@@ -1649,7 +2022,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void dataChannelSend(int peerConnectionId, String reactTag, String data, String type) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
             // Forward to PeerConnectionObserver which deals with DataChannels
             // because DataChannel is owned by PeerConnection.
             PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
@@ -1662,6 +2035,19 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         });
     }
 
+    @ReactMethod
+    public void dataChannelSetBatching(int peerConnectionId, String reactTag, @Nullable ReadableMap options) {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "dataChannelSetBatching() peerConnection is null");
+                return;
+            }
+
+            pco.dataChannelSetBatching(reactTag, options);
+        });
+    }
+
     @ReactMethod
     public void selectAudioOutput(String deviceId, Promise promise) {
         ThreadUtils.runOnExecutor(() -> audioOutputManager.selectAudioOutput(deviceId, promise));
@@ -1682,7 +2068,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         ThreadUtils.runOnExecutor(() -> {
             try {
                 PeerConnection.KeyType keyType = PeerConnection.KeyType.ECDSA;
-                long expires = 2592000L; // Default 30 days
+                long expires = CertificateStore.DEFAULT_EXPIRES_SECONDS;
 
                 if (options.hasKey("keyType")) {
                     String keyTypeStr = options.getString("keyType");
@@ -1697,7 +2083,10 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                     expires = (long) options.getDouble("expires");
                 }
 
-                RtcCertificatePem cert = RtcCertificatePem.generateCertificate(keyType, expires);
+                // Generating certificates needs the native library, which is loaded with the factory.
+                getFactory();
+                CertificateStore.Certificate certificate = certificateStore.obtain(keyType, expires);
+                RtcCertificatePem cert = certificate.pem;
                 String certId = java.util.UUID.randomUUID().toString();
                 synchronized (mCertificates) {
                     mCertificates.put(certId, cert);
@@ -1706,7 +2095,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 WritableMap params = Arguments.createMap();
                 params.putString("certificateId", certId);
                 // Return expires as millis since epoch
-                params.putDouble("expires", System.currentTimeMillis() + expires * 1000);
+                params.putDouble("expires", certificate.expiresAtMs);
 
                 // Calculate fingerprints
                 WritableArray fingerprints = Arguments.createArray();
@@ -1749,6 +2138,170 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return sb.toString();
     }
 
+    /**
+     * Resolves the counters of every executor lane (the global one and one per
+     * live PeerConnection): current and peak queue depth, task counts and the
+     * time tasks spent queued before running. Read without hopping to any lane
+     * so a congested lane can still be inspected.
+     */
+    @ReactMethod
+    public void getExecutorLaneStats(Promise promise) {
+        WritableArray lanes = Arguments.createArray();
+        for (ExecutorLane.Stats stats : ThreadUtils.getLaneStats()) {
+            WritableMap lane = Arguments.createMap();
+            lane.putString("name", stats.name);
+            lane.putInt("queueDepth", stats.queueDepth);
+            lane.putInt("maxQueueDepth", stats.maxQueueDepth);
+            lane.putDouble("submitted", stats.submittedCount);
+            lane.putDouble("completed", stats.completedCount);
+            lane.putDouble("totalWaitMs", stats.totalWaitNs / 1e6);
+            lane.putDouble("maxWaitMs", stats.maxWaitNs / 1e6);
+            lane.putDouble("lastWaitMs", stats.lastWaitNs / 1e6);
+            lanes.pushMap(lane);
+        }
+        promise.resolve(lanes);
+    }
+
+    /**
+     * Configures the pool of warm PeerConnections handed out by peerConnectionInit when it gets
+     * the same configuration. A size of 0 disables it. Options: {@code preGatherCandidates}.
+     */
+    @ReactMethod
+    public void peerConnectionPoolConfigure(ReadableMap configuration, int size, ReadableMap options) {
+        boolean preGatherCandidates = options != null && options.hasKey("preGatherCandidates")
+                && options.getBoolean("preGatherCandidates");
+        peerConnectionPool.configure(configuration, size, preGatherCandidates);
+    }
+
+    @ReactMethod
+    public void getPeerConnectionPoolStats(Promise promise) {
+        promise.resolve(peerConnectionPool.getStats());
+    }
+
+    @ReactMethod
+    public void getCertificateStoreStats(Promise promise) {
+        promise.resolve(certificateStore.getStats());
+    }
+
+    /**
+     * Resolves with the hardware video codecs of the device and their limits, probed once per app
+     * version and device build.
+     */
+    @ReactMethod
+    public void getHardwareCodecLimits(Promise promise) {
+        ThreadUtils.runOnExecutor(() -> {
+            WritableArray result = Arguments.createArray();
+            for (HardwareCodecProbe.Limits limits : HardwareCodecProbe.getLimits(getReactApplicationContext())) {
+                WritableMap codec = Arguments.createMap();
+                codec.putString("codecName", limits.codecName);
+                codec.putString("mimeType", limits.mimeType);
+                codec.putBoolean("encoder", limits.encoder);
+                codec.putInt("maxWidth", limits.maxWidth);
+                codec.putInt("maxHeight", limits.maxHeight);
+                codec.putInt("maxFrameRate", limits.maxFrameRate);
+                codec.putInt("maxInstances", limits.maxInstances);
+                result.pushMap(codec);
+            }
+            promise.resolve(result);
+        });
+    }
+
+    /**
+     * Resolves with, per codec, whether VP8, VP9 and AV1 are encoded in hardware and the benchmark
+     * results that decision is based on (see {@link WebRTCModuleOptions#benchmarkVideoEncoders}).
+     */
+    @ReactMethod
+    public void getVideoEncoderSelection(Promise promise) {
+        WritableMap selection = Arguments.createMap();
+        ReactApplicationContext context = getReactApplicationContext();
+        Map<String, VideoEncoderBenchmark.Result> results = VideoEncoderBenchmark.getResults(context);
+        for (Map.Entry<String, VideoEncoderBenchmark.Result> entry : results.entrySet()) {
+            VideoEncoderBenchmark.Result result = entry.getValue();
+            WritableMap codec = Arguments.createMap();
+            // False as well once the hardware encoder failed in this process.
+            codec.putBoolean("hardware", VideoEncoderBenchmark.useHardware(context, entry.getKey()));
+            codec.putBoolean("demoted", result.demoted);
+            codec.putInt("callFailures", result.callFailures);
+            codec.putInt("framesSubmitted", result.framesSubmitted);
+            codec.putInt("framesEncoded", result.framesEncoded);
+            codec.putInt("failures", result.failures);
+            codec.putDouble("throughputFps", result.throughputFps);
+            codec.putDouble("avgLatencyMs", result.avgLatencyMs);
+            codec.putDouble("avgEncodeCallMs", result.avgEncodeCallMs);
+            selection.putMap(entry.getKey(), codec);
+        }
+        promise.resolve(selection);
+    }
+
+    /**
+     * Resolves with the decoder each remote video track got from the decoder budget (see
+     * {@link WebRTCModuleOptions#budgetHardwareVideoDecoders}): {@code {maxHardwareDecoders,
+     * decoders: [{trackId?, codec, decoder: 'hardware' | 'software' | 'paused', area}]}}.
+     */
+    @ReactMethod
+    public void getDecoderAssignments(Promise promise) {
+        WritableMap result = Arguments.createMap();
+        WritableArray decoders = Arguments.createArray();
+        if (decoderBudget != null) {
+            result.putInt("maxHardwareDecoders", decoderBudget.getMaxHardwareDecoders());
+            for (Map<String, Object> assignment : decoderBudget.getAssignments()) {
+                decoders.pushMap(Arguments.makeNativeMap(assignment));
+            }
+        }
+        result.putArray("decoders", decoders);
+        promise.resolve(result);
+    }
+
+    /**
+     * Starts initializing the native WebRTC stack in the background, for apps which deferred it
+     * (see {@link WebRTCModuleOptions#deferFactoryInitialization}). A no-op otherwise.
+     */
+    @ReactMethod
+    public void warmUp() {
+        startFactoryInitialization();
+    }
+
+    @ReactMethod
+    public void getInitializationStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        stats.putBoolean("deferred", WebRTCModuleOptions.getInstance().deferFactoryInitialization);
+        stats.putBoolean("initialized", mFactory != null);
+        WritableMap phases = Arguments.createMap();
+        synchronized (initPhaseTimings) {
+            for (Map.Entry<String, Double> phase : initPhaseTimings.entrySet()) {
+                phases.putDouble(phase.getKey(), phase.getValue());
+            }
+        }
+        stats.putMap("phasesMs", phases);
+        promise.resolve(stats);
+    }
+
+    @ReactMethod
+    public void getBlockingCallStats(Promise promise) {
+        WritableArray calls = Arguments.createArray();
+        for (BlockingCallStats.Snapshot stats : BlockingCallStats.getSnapshots()) {
+            WritableMap call = Arguments.createMap();
+            call.putString("method", stats.method);
+            call.putDouble("calls", stats.callCount);
+            call.putDouble("inlineCalls", stats.inlineCount);
+            call.putDouble("totalBlockedMs", stats.totalBlockedNs / 1e6);
+            call.putDouble("maxBlockedMs", stats.maxBlockedNs / 1e6);
+            call.putDouble("lastBlockedMs", stats.lastBlockedNs / 1e6);
+            calls.pushMap(call);
+        }
+        promise.resolve(calls);
+    }
+
+    /**
+     * Resolves the counters of every track with a frame probe (see
+     * mediaStreamTrackSetFrameProbe), all at once. Read without hopping to any
+     * lane, like the lane stats above.
+     */
+    @ReactMethod
+    public void getFrameProbeStats(Promise promise) {
+        promise.resolve(frameProbes.getStats());
+    }
+
     @ReactMethod
     public void addListener(String eventName) {
         // Keep: Required for RN built in Event Emitter Calls.
@@ -17,6 +17,58 @@ public class WebRTCModuleOptions {
     public String fieldTrials;
     public boolean enableMediaProjectionService;
 
+    /**
+     * When set, blocking PeerConnection calls (addTransceiver, addTrack, removeTrack,
+     * createDataChannel) run directly on the calling JS thread instead of waiting behind
+     * whatever is already queued on the PeerConnection's executor lane. They still never
+     * run concurrently with a task of the lane, only wait for the one running, but are no
+     * longer ordered relative to operations still pending on it (e.g. an unawaited
+     * setRemoteDescription), which matches the browser behaviour for addTrack et al.
+     */
+    public boolean inlineBlockingCalls;
+
+    /**
+     * When set, video effects run on a dedicated GL worker rather than on the capture thread, so a
+     * slow effect lowers its own frame rate instead of the capturer's. At most
+     * {@link #videoEffectsMaxPendingFrames} frames wait for the worker; older ones are dropped.
+     */
+    public boolean pipelinedVideoEffects;
+    public int videoEffectsMaxPendingFrames = 1;
+
+    /**
+     * How many ECDSA certificates to keep generated ahead of time for generateCertificate and
+     * PeerConnections created without one; 0 disables the stock. With
+     * {@link #persistCertificates} the stock is kept on disk, encrypted, across restarts.
+     */
+    public int certificateStockSize;
+    public boolean persistCertificates = true;
+
+    /**
+     * When set, the PeerConnectionFactory (native library, EGL context, codec factories, audio
+     * device module) is not built while React Native creates the module, but on a background
+     * thread on first use or when JS calls {@code warmUp()}. Calls arriving in the meantime wait
+     * for it.
+     */
+    public boolean deferFactoryInitialization;
+
+    /**
+     * When set, the default video encoder factory also encodes VP8, VP9 and AV1 in hardware where a
+     * short on-device benchmark, run once per app version, found the hardware encoder good enough.
+     * Hardware encoders which fail during a call fall back to software, for the rest of the
+     * process, and for good once they failed in a few calls in a row. Only applies when no
+     * {@link #videoEncoderFactory} is given.
+     */
+    public boolean benchmarkVideoEncoders;
+
+    /**
+     * When set, remote tracks share the hardware H.264 decoders: the largest visible tracks get
+     * them, the others are decoded in software or paused until one frees up. At most
+     * {@link #maxHardwareVideoDecoders} are used at once, or the device's limit if 0. Only applies
+     * when no {@link #videoDecoderFactory} is given.
+     */
+    public boolean budgetHardwareVideoDecoders;
+    public int maxHardwareVideoDecoders;
+
     public static WebRTCModuleOptions getInstance() {
         if (instance == null) {
             instance = new WebRTCModuleOptions();
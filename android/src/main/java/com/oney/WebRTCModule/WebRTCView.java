@@ -279,9 +279,10 @@ public class WebRTCView extends ViewGroup {
     }
 
     /**
-     * Asynchronously retrieves the VideoTrack for the given streamURL.
-     * This method avoids blocking the UI thread by performing the lookup
-     * on the WebRTC executor thread and posting the result back to the UI thread.
+     * Retrieves the VideoTrack for the given streamURL. The streams are
+     * indexed by react tag in concurrent maps and their video tracks are
+     * read safely by {@link WebRTCModule#getVideoTrackForReactTag}, so the
+     * lookup is done right here on the UI thread.
      *
      * @param streamURL The stream URL to lookup
      * @param callback Callback invoked on UI thread with the VideoTrack (or null if not found)
@@ -295,36 +296,17 @@ public class WebRTCView extends ViewGroup {
         ReactContext reactContext = (ReactContext) getContext();
         WebRTCModule module = reactContext.getNativeModule(WebRTCModule.class);
 
-        // Submit lookup to executor thread to avoid blocking UI thread
-        ThreadUtils.runOnExecutor(() -> {
-            try {
-                MediaStream stream = module.getStreamForReactTag(streamURL);
-                if (stream == null) {
-                    Log.w(TAG, "Stream not found for URL: " + streamURL);
-                    post(() -> callback.accept(null));
-                    return;
-                }
-
-                VideoTrack videoTrack = null;
-                List<VideoTrack> videoTracks = stream.videoTracks;
-                if (!videoTracks.isEmpty()) {
-                    videoTrack = videoTracks.get(0);
-                }
-
-                if (videoTrack == null) {
-                    Log.w(TAG, "No video stream for react tag: " + streamURL);
-                    post(() -> callback.accept(null));
-                    return;
-                }
-
-                // Post result back to UI thread
-                final VideoTrack result = videoTrack;
-                post(() -> callback.accept(result));
-            } catch (Throwable tr) {
-                Log.e(TAG, "Error getting video track for stream URL: " + streamURL, tr);
-                post(() -> callback.accept(null));
+        VideoTrack videoTrack = null;
+        if (module.getStreamForReactTag(streamURL) == null) {
+            Log.w(TAG, "Stream not found for URL: " + streamURL);
+        } else {
+            videoTrack = module.getVideoTrackForReactTag(streamURL);
+            if (videoTrack == null) {
+                Log.w(TAG, "No video stream for react tag: " + streamURL);
             }
-        });
+        }
+
+        callback.accept(videoTrack);
     }
 
     @Override
@@ -346,6 +328,7 @@ public class WebRTCView extends ViewGroup {
             // window. Additionally, a memory leak was solved in a similar way
             // on iOS.
             tryAddRendererToVideoTrack();
+            updateDecoderBudget(videoTrack, true);
 
             // Notify PIP manager if it exists
             if (pipManager != null) {
@@ -366,6 +349,7 @@ public class WebRTCView extends ViewGroup {
             // window. Additionally, a memory leak was solved in a similar way
             // on iOS.
             removeRendererFromVideoTrack();
+            updateDecoderBudget(videoTrack, false);
 
             // Notify PIP manager if it exists
             if (pipManager != null) {
@@ -493,6 +477,28 @@ public class WebRTCView extends ViewGroup {
             }
         }
         surfaceViewRenderer.layout(l, t, r, b);
+        updateDecoderBudget(videoTrack, isAttachedToWindow());
+    }
+
+    /**
+     * Tells the decoder budget, if any, how large {@code videoTrack} is shown by this view, so the
+     * largest tracks get the hardware decoders.
+     */
+    private void updateDecoderBudget(VideoTrack videoTrack, boolean attached) {
+        ReactContext reactContext = (ReactContext) getContext();
+        WebRTCModule module = reactContext.getNativeModule(WebRTCModule.class);
+        if (module == null || module.decoderBudget == null) {
+            return;
+        }
+
+        int area = getWidth() * getHeight();
+        try {
+            String trackId = attached && videoTrack != null && area > 0 ? videoTrack.id() : null;
+            module.decoderBudget.setViewTrack(this, trackId, area);
+        } catch (IllegalStateException e) {
+            // The track was disposed.
+            module.decoderBudget.setViewTrack(this, null, 0);
+        }
     }
 
     /**
@@ -637,6 +643,8 @@ public class WebRTCView extends ViewGroup {
             return;
         }
 
+        updateDecoderBudget(videoTrack, isAttachedToWindow());
+
         // Case 1: Swapping one live track for another while the renderer is active.
         // Just move the sink — no EGL context churn.
         if (oldVideoTrack != null && videoTrack != null && rendererAttached) {
@@ -1,38 +1,233 @@
 package com.oney.WebRTCModule.videoEffects;
 
-import java.util.HashMap;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Manages VideoFrameProcessorFactoryInterfaces corresponding to name using hashmap, and provides
- * get, add and remove functionality.
+ * Manages VideoFrameProcessorFactoryInterfaces corresponding to name, and provides get, add and
+ * remove functionality. Safe to use from any thread.
+ *
+ * <p>Built processors are pooled per name: {@link #getProcessor} hands out an idle instance when
+ * there is one and {@link #recycleProcessor} takes it back once its effect chain is gone, so
+ * toggling an effect (or applying it to another track) doesn't rebuild it. With a warm-up count
+ * (see {@link #addProcessor(String, VideoFrameProcessorFactoryInterface, int)}) instances are built
+ * ahead of time on a background thread. Idle instances are dropped by {@link #trimMemory()}.
+ *
+ * <p>A pooled instance may serve a different track, on a different GL thread, than it did before;
+ * it is only ever used by one effect chain at a time. Each idle instance remembers the GL thread it
+ * was last used on, and is released there (see {@link VideoFrameProcessor#release()}).
  */
 public class ProcessorProvider {
-    private static Map<String, VideoFrameProcessorFactoryInterface> methodMap =
-            new HashMap<String, VideoFrameProcessorFactoryInterface>();
+    private static final String TAG = ProcessorProvider.class.getSimpleName();
+
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
 
+    private static final ExecutorService warmUpExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ProcessorProvider-warmup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Returns an idle pooled processor, or builds a new one. Null if no factory is registered
+     * under that name. Hand it back with {@link #recycleProcessor} once it's no longer used.
+     */
     public static VideoFrameProcessor getProcessor(String name) {
-        if (methodMap.containsKey(name)) {
-            return methodMap.get(name).build();
-        } else {
-            return null;
+        Entry entry = name != null ? entries.get(name) : null;
+        return entry != null ? entry.acquire() : null;
+    }
+
+    /**
+     * Returns a processor obtained from {@link #getProcessor} to the pool. It is released instead
+     * if the pool is full or its factory has been removed or replaced since.
+     */
+    public static void recycleProcessor(String name, VideoFrameProcessor processor) {
+        recycleProcessor(name, processor, null);
+    }
+
+    /**
+     * Like {@link #recycleProcessor(String, VideoFrameProcessor)}, for a processor which was used
+     * on {@code glHandler}'s thread: it is released there whenever that happens.
+     */
+    public static void recycleProcessor(
+            String name, VideoFrameProcessor processor, @Nullable Handler glHandler) {
+        Entry entry = name != null ? entries.get(name) : null;
+        if (entry == null || !entry.recycle(processor, glHandler)) {
+            releaseQuietly(processor, glHandler);
         }
     }
 
     public static void addProcessor(
             String name, VideoFrameProcessorFactoryInterface videoFrameProcessorFactoryInterface) {
+        addProcessor(name, videoFrameProcessorFactoryInterface, 0);
+    }
+
+    /**
+     * Registers a factory and builds {@code warmUpCount} instances of it in the background, so the
+     * first {@code warmUpCount} uses don't pay for {@code build()}. At most
+     * {@code max(1, warmUpCount)} idle instances are kept.
+     */
+    public static void addProcessor(
+            String name, VideoFrameProcessorFactoryInterface videoFrameProcessorFactoryInterface, int warmUpCount) {
         if (name != null && videoFrameProcessorFactoryInterface != null) {
-            methodMap.put(name, videoFrameProcessorFactoryInterface);
+            Entry entry = new Entry(videoFrameProcessorFactoryInterface, Math.max(1, warmUpCount));
+            Entry previous = entries.put(name, entry);
+            if (previous != null) {
+                previous.releaseIdle();
+            }
+            if (warmUpCount > 0) {
+                warmUp(name, warmUpCount);
+            }
         } else {
             throw new NullPointerException("Name or VideoFrameProcessorFactry can not be null");
         }
     }
 
     public static void removeProcessor(String name) {
-        if (name != null && methodMap.containsKey(name)) {
-            methodMap.remove(name);
+        Entry entry = name != null ? entries.remove(name) : null;
+        if (entry != null) {
+            entry.releaseIdle();
         } else {
             throw new RuntimeException("VideoFrameProcessorFactry with " + name + " does not exist");
         }
     }
+
+    /**
+     * Builds instances of a registered processor in the background until {@code count} are idle.
+     */
+    public static void warmUp(String name, int count) {
+        warmUpExecutor.execute(() -> {
+            Entry entry = entries.get(name);
+            while (entry != null && entries.get(name) == entry && entry.needsWarmUp(count)) {
+                VideoFrameProcessor processor;
+                try {
+                    processor = entry.factory.build();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to warm up processor " + name, e);
+                    return;
+                }
+                if (processor == null || !entry.addIdle(processor)) {
+                    releaseQuietly(processor, null);
+                    return;
+                }
+            }
+            if (entry != null && entries.get(name) != entry) {
+                // Removed or replaced while building.
+                entry.releaseIdle();
+            }
+        });
+    }
+
+    /**
+     * Releases every idle instance. Instances in use are left alone.
+     */
+    public static void trimMemory() {
+        for (Entry entry : entries.values()) {
+            entry.releaseIdle();
+        }
+    }
+
+    /**
+     * Releases {@code processor} on {@code glHandler}'s thread, or right here if it has none or
+     * that thread has ended.
+     */
+    private static void releaseQuietly(VideoFrameProcessor processor, @Nullable Handler glHandler) {
+        if (processor == null) {
+            return;
+        }
+        if (glHandler != null && glHandler.getLooper().getThread() != Thread.currentThread()
+                && glHandler.post(() -> releaseQuietly(processor, null))) {
+            return;
+        }
+        try {
+            processor.release();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to release processor", e);
+        }
+    }
+
+    private static final class Entry {
+        final VideoFrameProcessorFactoryInterface factory;
+        final int maxIdle;
+
+        // Both guarded by `this`.
+        final ArrayDeque<VideoFrameProcessor> idle = new ArrayDeque<>();
+        final Set<VideoFrameProcessor> leased = Collections.newSetFromMap(new IdentityHashMap<>());
+        // The GL thread each idle instance was last used on, if any.
+        final Map<VideoFrameProcessor, Handler> glHandlers = new IdentityHashMap<>();
+
+        Entry(VideoFrameProcessorFactoryInterface factory, int maxIdle) {
+            this.factory = factory;
+            this.maxIdle = maxIdle;
+        }
+
+        VideoFrameProcessor acquire() {
+            synchronized (this) {
+                VideoFrameProcessor processor = idle.pollFirst();
+                if (processor != null) {
+                    glHandlers.remove(processor);
+                    leased.add(processor);
+                    return processor;
+                }
+            }
+            // Nothing idle: build on the caller's thread, outside the lock.
+            VideoFrameProcessor processor = factory.build();
+            if (processor != null) {
+                synchronized (this) {
+                    leased.add(processor);
+                }
+            }
+            return processor;
+        }
+
+        synchronized boolean recycle(VideoFrameProcessor processor, @Nullable Handler glHandler) {
+            if (!leased.remove(processor) || idle.size() >= maxIdle) {
+                return false;
+            }
+            idle.addLast(processor);
+            if (glHandler != null) {
+                glHandlers.put(processor, glHandler);
+            }
+            return true;
+        }
+
+        synchronized boolean needsWarmUp(int count) {
+            return idle.size() < Math.min(count, maxIdle);
+        }
+
+        synchronized boolean addIdle(VideoFrameProcessor processor) {
+            if (idle.size() >= maxIdle) {
+                return false;
+            }
+            idle.addLast(processor);
+            return true;
+        }
+
+        void releaseIdle() {
+            List<VideoFrameProcessor> released;
+            Map<VideoFrameProcessor, Handler> handlers;
+            synchronized (this) {
+                released = new ArrayList<>(idle);
+                idle.clear();
+                handlers = new IdentityHashMap<>(glHandlers);
+                glHandlers.clear();
+            }
+            for (VideoFrameProcessor processor : released) {
+                releaseQuietly(processor, handlers.get(processor));
+            }
+        }
+    }
 }
@@ -1,24 +1,70 @@
 package com.oney.WebRTCModule.videoEffects;
 
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.oney.WebRTCModule.TextureFrameCopier;
+
+import org.webrtc.EglBase;
 import org.webrtc.SurfaceTextureHelper;
 import org.webrtc.VideoFrame;
 import org.webrtc.VideoProcessor;
 import org.webrtc.VideoSink;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Lightweight abstraction for an object that can receive video frames, process and add effects in
  * them, and pass them on to another object.
+ *
+ * <p>By default the processors run synchronously in {@link #onFrameCaptured}, on the capture
+ * thread. In pipelined mode they run on a dedicated GL worker instead, so a slow processor lowers
+ * the effect's frame rate rather than the capturer's: texture frames are copied on the GPU (the
+ * capture texture is released right away) and queued for the worker. At most
+ * {@code maxPendingFrames} frames wait; when a new one arrives the oldest waiting one is dropped,
+ * never the newest. Processors then run on the worker thread, with its own EGL context (shared with
+ * the capture one) current.
+ *
+ * <p>Either way, processors with a cadence above 1 are told to refresh on every cadence-th frame
+ * only (see {@link VideoFrameProcessor#getCadence()}).
  */
 public class VideoEffectProcessor implements VideoProcessor {
-    private VideoSink mSink;
+    private static final String TAG = VideoEffectProcessor.class.getSimpleName();
+
+    private volatile VideoSink mSink;
     final private SurfaceTextureHelper textureHelper;
     final private List<VideoFrameProcessor> videoFrameProcessors;
+    final private ProcessorStats[] processorStats;
+
+    @Nullable
+    final private Pipeline pipeline;
 
     public VideoEffectProcessor(List<VideoFrameProcessor> processors, SurfaceTextureHelper textureHelper) {
+        this(processors, textureHelper, null, 0);
+    }
+
+    /**
+     * @param sharedContext when non-null, processors run pipelined on a GL worker whose EGL context
+     *                      is shared with this one (it must be shared with the capture context)
+     * @param maxPendingFrames how many frames may wait for the worker, at least 1
+     */
+    public VideoEffectProcessor(List<VideoFrameProcessor> processors,
+            SurfaceTextureHelper textureHelper,
+            @Nullable EglBase.Context sharedContext,
+            int maxPendingFrames) {
         this.textureHelper = textureHelper;
         this.videoFrameProcessors = processors;
+        this.processorStats = new ProcessorStats[processors.size()];
+        for (int i = 0; i < processorStats.length; i++) {
+            processorStats[i] = new ProcessorStats();
+        }
+        this.pipeline = sharedContext != null ? new Pipeline(sharedContext, Math.max(1, maxPendingFrames)) : null;
     }
 
     @Override
@@ -40,20 +86,264 @@ public class VideoEffectProcessor implements VideoProcessor {
      */
     @Override
     public void onFrameCaptured(VideoFrame frame) {
+        if (pipeline != null) {
+            pipeline.enqueue(frame);
+        } else {
+            processAndDeliver(frame);
+        }
+    }
+
+    /**
+     * Stops the pipeline worker, if any, dropping the frames still waiting for it. Called once the
+     * processor has been replaced on its VideoSource.
+     */
+    public void release() {
+        release(null);
+    }
+
+    /**
+     * Like {@link #release()}; {@code onIdle} then runs once no processor of the chain can be
+     * running anymore (right away unless pipelined), e.g. to recycle them.
+     */
+    public void release(@Nullable Runnable onIdle) {
+        if (pipeline != null) {
+            pipeline.release(onIdle);
+        } else if (onIdle != null) {
+            onIdle.run();
+        }
+    }
+
+    /**
+     * The thread whose EGL context the processors' GL objects live in: the capture thread. The
+     * pipeline worker's context is shared with it and gone once the chain is released.
+     */
+    public Handler getGlHandler() {
+        return textureHelper.getHandler();
+    }
+
+    /**
+     * Snapshot of the per-processor counters, in chain order.
+     */
+    public List<ProcessorStats> getProcessorStats() {
+        List<ProcessorStats> result = new ArrayList<>(processorStats.length);
+        for (ProcessorStats stats : processorStats) {
+            synchronized (stats) {
+                result.add(stats.copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Frames dropped by the pipeline because a newer one arrived (or no texture was free) before
+     * the worker got to them. Always 0 when not pipelined.
+     */
+    public long getDroppedFrames() {
+        return pipeline != null ? pipeline.droppedFrames : 0;
+    }
+
+    public boolean isPipelined() {
+        return pipeline != null;
+    }
+
+    private void processAndDeliver(VideoFrame frame) {
         frame.retain();
         VideoFrame outputFrame = frame;
-        for (VideoFrameProcessor processor : this.videoFrameProcessors) {
-            outputFrame = processor.process(outputFrame, textureHelper);
+        for (int i = 0; i < videoFrameProcessors.size(); i++) {
+            VideoFrameProcessor processor = videoFrameProcessors.get(i);
+            ProcessorStats stats = processorStats[i];
+            boolean refresh;
+            synchronized (stats) {
+                refresh = stats.frames % Math.max(1, processor.getCadence()) == 0;
+            }
+
+            long startNs = System.nanoTime();
+            outputFrame = processor.process(outputFrame, textureHelper, refresh);
+            long elapsedNs = System.nanoTime() - startNs;
+
+            synchronized (stats) {
+                stats.record(elapsedNs, refresh);
+            }
 
             if (outputFrame == null) {
-                mSink.onFrame(frame);
+                deliver(frame);
                 frame.release();
                 return;
             }
         }
 
-        mSink.onFrame(outputFrame);
+        deliver(outputFrame);
         outputFrame.release();
         frame.release();
     }
+
+    private void deliver(VideoFrame frame) {
+        VideoSink sink = mSink;
+        if (sink != null) {
+            sink.onFrame(frame);
+        }
+    }
+
+    /**
+     * Latency counters of one processor in the chain.
+     */
+    public static final class ProcessorStats {
+        public long frames;
+        public long refreshes;
+        public long lastNs;
+        public long maxNs;
+        public long totalNs;
+
+        void record(long elapsedNs, boolean refresh) {
+            frames++;
+            if (refresh) {
+                refreshes++;
+            }
+            lastNs = elapsedNs;
+            maxNs = Math.max(maxNs, elapsedNs);
+            totalNs += elapsedNs;
+        }
+
+        ProcessorStats copy() {
+            ProcessorStats copy = new ProcessorStats();
+            copy.frames = frames;
+            copy.refreshes = refreshes;
+            copy.lastNs = lastNs;
+            copy.maxNs = maxNs;
+            copy.totalNs = totalNs;
+            return copy;
+        }
+    }
+
+    /**
+     * The GL worker of pipelined mode.
+     */
+    private final class Pipeline {
+        private final int maxPendingFrames;
+        private final HandlerThread thread;
+        private final Handler workerHandler;
+        // Created on the capture thread, where the texture copies are made.
+        private final TextureFrameCopier copier;
+
+        private final ArrayDeque<VideoFrame> pending = new ArrayDeque<>(); // Guarded by `pending`.
+        private boolean released; // Guarded by `pending`.
+        private volatile long droppedFrames;
+
+        @Nullable
+        private EglBase eglBase; // Only touched on the worker.
+
+        Pipeline(EglBase.Context sharedContext, int maxPendingFrames) {
+            this.maxPendingFrames = maxPendingFrames;
+            // The frame being processed, the waiting ones, the new one, and one still held
+            // downstream.
+            this.copier = new TextureFrameCopier(textureHelper.getHandler(), maxPendingFrames + 3);
+            this.thread = new HandlerThread("VideoEffects");
+            this.thread.start();
+            this.workerHandler = new Handler(thread.getLooper());
+            workerHandler.post(() -> {
+                try {
+                    eglBase = EglBase.create(sharedContext, EglBase.CONFIG_PIXEL_BUFFER);
+                    eglBase.createDummyPbufferSurface();
+                    eglBase.makeCurrent();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to create the video effects EGL context", e);
+                    eglBase = null;
+                }
+            });
+        }
+
+        // Capture thread.
+        void enqueue(VideoFrame frame) {
+            VideoFrame queued = copy(frame);
+            if (queued == null) {
+                droppedFrames++;
+                return;
+            }
+
+            VideoFrame stale = null;
+            synchronized (pending) {
+                if (released) {
+                    stale = queued;
+                } else {
+                    if (pending.size() >= maxPendingFrames) {
+                        stale = pending.pollFirst();
+                        droppedFrames++;
+                    }
+                    pending.addLast(queued);
+                }
+            }
+            if (stale != null) {
+                stale.release();
+            }
+            workerHandler.post(this::drain);
+        }
+
+        /**
+         * Returns a frame which can be held without stalling the capturer, or null if there is
+         * no free texture to copy into.
+         */
+        @Nullable
+        private VideoFrame copy(VideoFrame frame) {
+            VideoFrame.Buffer buffer = frame.getBuffer();
+            if (!(buffer instanceof VideoFrame.TextureBuffer)) {
+                // Memory frames can be held as they are.
+                frame.retain();
+                return frame;
+            }
+            VideoFrame.Buffer copy;
+            try {
+                copy = copier.copy((VideoFrame.TextureBuffer) buffer);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "GPU frame copy failed, processing on the CPU copy", e);
+                copy = buffer.toI420();
+            }
+            if (copy == null) {
+                return null;
+            }
+            if (copy instanceof VideoFrame.TextureBuffer) {
+                // The worker samples the copy from another EGL context.
+                GLES20.glFinish();
+            }
+            return new VideoFrame(copy, frame.getRotation(), frame.getTimestampNs());
+        }
+
+        // Worker thread.
+        private void drain() {
+            VideoFrame frame;
+            synchronized (pending) {
+                frame = pending.pollFirst();
+            }
+            if (frame == null) {
+                return;
+            }
+            try {
+                processAndDeliver(frame);
+            } finally {
+                frame.release();
+            }
+        }
+
+        void release(@Nullable Runnable onIdle) {
+            List<VideoFrame> dropped;
+            synchronized (pending) {
+                released = true;
+                dropped = new ArrayList<>(pending);
+                pending.clear();
+            }
+            for (VideoFrame frame : dropped) {
+                frame.release();
+            }
+            workerHandler.post(() -> {
+                if (eglBase != null) {
+                    eglBase.release();
+                    eglBase = null;
+                }
+                thread.quitSafely();
+                if (onIdle != null) {
+                    onIdle.run();
+                }
+            });
+            textureHelper.getHandler().post(copier::release);
+        }
+    }
 }
@@ -16,4 +16,36 @@ public interface VideoFrameProcessor {
      * @return processed videoframe which will rendered
      */
     public VideoFrame process(VideoFrame frame, SurfaceTextureHelper textureHelper);
+
+    /**
+     * Like {@link #process(VideoFrame, SurfaceTextureHelper)}, for processors with a cadence
+     * above 1 (see {@link #getCadence()}). {@code refresh} is true on every cadence-th frame; on
+     * the others the processor should reuse what it computed last (e.g. a segmentation mask) and
+     * only apply it.
+     * @param frame raw videoframe which need to be processed
+     * @param textureHelper
+     * @param refresh whether to recompute the expensive part of the effect
+     * @return processed videoframe which will rendered
+     */
+    default VideoFrame process(VideoFrame frame, SurfaceTextureHelper textureHelper, boolean refresh) {
+        return process(frame, textureHelper);
+    }
+
+    /**
+     * How often the expensive part of the effect needs to run: 1 means every frame, 3 every third
+     * frame, and so on.
+     */
+    default int getCadence() {
+        return 1;
+    }
+
+    /**
+     * Called when {@link ProcessorProvider} drops this instance for good (its pool is full or
+     * trimmed, or its factory was removed). Runs on the thread the instance last processed frames
+     * on, with the EGL context it used current, so GL objects can be freed. If that thread has
+     * ended since (its track is gone), it runs on another thread without a context: the GL objects
+     * went away with their context and must only be forgotten. Instances which never processed a
+     * frame are released on any thread.
+     */
+    default void release() {}
 }
@@ -0,0 +1,72 @@
+package com.oney.WebRTCModule.webrtcutils;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.EglBase;
+import org.webrtc.HardwareVideoEncoderFactory;
+import org.webrtc.VideoCodecInfo;
+import org.webrtc.VideoEncoder;
+import org.webrtc.VideoEncoderFallback;
+import org.webrtc.VideoEncoderFactory;
+
+/**
+ * Like {@link H264AndSoftwareVideoEncoderFactory}, but also encodes VP8, VP9 and AV1 in hardware
+ * on devices where {@link VideoEncoderBenchmark} found the hardware encoder good enough.
+ *
+ * Hardware encoders are wrapped in a {@link VideoEncoderFallback}, so if one fails during a call
+ * the call carries on with the software encoder. Later calls use software too, see
+ * {@link VideoEncoderBenchmark#reportFailure}.
+ */
+public class BenchmarkedVideoEncoderFactory implements VideoEncoderFactory {
+    private final VideoEncoderFactory defaultVideoEncoderFactory;
+    private final VideoEncoderFactory hardwareVideoEncoderFactory;
+    private final VideoEncoderFactory softwareVideoEncoderFactory;
+    @Nullable
+    private final Context context;
+
+    public BenchmarkedVideoEncoderFactory(@Nullable Context context, @Nullable EglBase.Context eglContext) {
+        this.context = context;
+        this.defaultVideoEncoderFactory = new H264AndSoftwareVideoEncoderFactory(context, eglContext);
+        this.hardwareVideoEncoderFactory = new HardwareVideoEncoderFactory(eglContext, false, true);
+        this.softwareVideoEncoderFactory = new SoftwareVideoEncoderFactoryProxy();
+
+        VideoEncoderBenchmark.start(context, hardwareVideoEncoderFactory);
+    }
+
+    @Nullable
+    @Override
+    public VideoEncoder createEncoder(VideoCodecInfo codecInfo) {
+        if (!codecInfo.name.equalsIgnoreCase("H264") && VideoEncoderBenchmark.useHardware(context, codecInfo.name)) {
+            VideoEncoder hardwareEncoder = this.hardwareVideoEncoderFactory.createEncoder(codecInfo);
+            VideoEncoder softwareEncoder = this.softwareVideoEncoderFactory.createEncoder(codecInfo);
+            if (hardwareEncoder != null && softwareEncoder != null) {
+                String codecName = codecInfo.name;
+                FallbackReportingVideoEncoder.Reporter reporter = new FallbackReportingVideoEncoder.Reporter() {
+                    @Override
+                    public void onFailure() {
+                        VideoEncoderBenchmark.reportFailure(context, codecName);
+                    }
+
+                    @Override
+                    public void onSuccess() {
+                        VideoEncoderBenchmark.reportSuccess(context, codecName);
+                    }
+                };
+                return new VideoEncoderFallback(
+                        softwareEncoder, new FallbackReportingVideoEncoder(hardwareEncoder, reporter));
+            }
+            if (softwareEncoder != null) {
+                return softwareEncoder;
+            }
+        }
+
+        return this.defaultVideoEncoderFactory.createEncoder(codecInfo);
+    }
+
+    @Override
+    public VideoCodecInfo[] getSupportedCodecs() {
+        return this.defaultVideoEncoderFactory.getSupportedCodecs();
+    }
+}
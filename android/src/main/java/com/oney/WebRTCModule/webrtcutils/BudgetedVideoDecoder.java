@@ -0,0 +1,132 @@
+package com.oney.WebRTCModule.webrtcutils;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.EncodedImage;
+import org.webrtc.VideoCodecStatus;
+import org.webrtc.VideoDecoder;
+
+/**
+ * Wraps a hardware decoder which only runs while {@link DecoderBudget} grants it a slot.
+ *
+ * <p>Without a slot it is either replaced by software, by returning
+ * {@link VideoCodecStatus#FALLBACK_SOFTWARE} to the {@link org.webrtc.VideoDecoderFallback} around
+ * it, or, when there is no software decoder for the codec, paused: frames are dropped until a slot
+ * frees up, and decoding resumes at the next key frame.
+ *
+ * <p>Until it is matched to its track, the budget can't rank a decoder, so it starts on the
+ * hardware regardless, over budget if need be, and only gives it up once ranked. Once replaced by
+ * software, the fallback wrapper keeps decoding in software until WebRTC reinitializes the
+ * decoder (e.g. on a codec change), which puts it up for a slot again.
+ */
+class BudgetedVideoDecoder implements VideoDecoder {
+    enum State { PAUSED, HARDWARE, SOFTWARE }
+
+    private final VideoDecoder decoder;
+    private final DecoderBudget budget;
+    final String codecName;
+    final boolean softwareFallback;
+    // Registration order, to break ties between equally visible tracks.
+    final long order;
+
+    // Written by the budget.
+    volatile boolean granted;
+    @Nullable
+    volatile String trackId;
+
+    volatile State state = State.PAUSED;
+
+    // Only touched on the decoder thread.
+    @Nullable
+    private Settings settings;
+    @Nullable
+    private Callback callback;
+
+    BudgetedVideoDecoder(VideoDecoder decoder, DecoderBudget budget, String codecName, boolean softwareFallback) {
+        this.decoder = decoder;
+        this.budget = budget;
+        this.codecName = codecName;
+        this.softwareFallback = softwareFallback;
+        this.order = budget.nextOrder();
+    }
+
+    @Override
+    public VideoCodecStatus initDecode(Settings settings, Callback decodeCallback) {
+        this.settings = settings;
+        this.callback = (frame, decodeTimeMs, qp) -> {
+            if (trackId == null) {
+                budget.onDecodedFrame(this, frame.getBuffer());
+            }
+            decodeCallback.onDecodedFrame(frame, decodeTimeMs, qp);
+        };
+
+        // A reinitialized decoder competes for the hardware again.
+        state = State.PAUSED;
+        budget.register(this);
+        if (mayUseHardware()) {
+            return startHardware();
+        }
+        return softwareFallback ? switchToSoftware() : VideoCodecStatus.OK;
+    }
+
+    @Override
+    public VideoCodecStatus release() {
+        budget.unregister(this);
+        if (state == State.HARDWARE) {
+            state = State.PAUSED;
+            return decoder.release();
+        }
+        return VideoCodecStatus.OK;
+    }
+
+    @Override
+    public VideoCodecStatus decode(EncodedImage frame, DecodeInfo info) {
+        if (state == State.HARDWARE && !mayUseHardware()) {
+            // The slot went to a more visible track.
+            decoder.release();
+            state = State.PAUSED;
+            if (softwareFallback) {
+                return switchToSoftware();
+            }
+        }
+        if (state == State.PAUSED) {
+            if (!mayUseHardware()) {
+                return VideoCodecStatus.NO_OUTPUT;
+            }
+            if (frame.frameType != EncodedImage.FrameType.VideoFrameKey) {
+                // An error makes the receiver ask for a key frame.
+                return VideoCodecStatus.ERROR;
+            }
+            VideoCodecStatus status = startHardware();
+            if (status != VideoCodecStatus.OK) {
+                return status;
+            }
+        }
+        return decoder.decode(frame, info);
+    }
+
+    @Override
+    public String getImplementationName() {
+        return decoder.getImplementationName();
+    }
+
+    private boolean mayUseHardware() {
+        return granted || trackId == null;
+    }
+
+    private VideoCodecStatus startHardware() {
+        VideoCodecStatus status = decoder.initDecode(settings, callback);
+        if (status == VideoCodecStatus.OK) {
+            state = State.HARDWARE;
+        } else if (softwareFallback) {
+            return switchToSoftware();
+        }
+        return status;
+    }
+
+    private VideoCodecStatus switchToSoftware() {
+        state = State.SOFTWARE;
+        budget.rebalance();
+        return VideoCodecStatus.FALLBACK_SOFTWARE;
+    }
+}
@@ -0,0 +1,244 @@
+package com.oney.WebRTCModule.webrtcutils;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.VideoFrame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares the device's hardware video decoders between remote tracks, so large rooms don't run into
+ * the MediaCodec instance limit. The limit comes from {@link HardwareCodecProbe} (the H.264 hardware
+ * decoder's maximum number of instances) unless one is given.
+ *
+ * <p>Tracks are ranked by the largest area they are shown at, as reported by the views rendering
+ * them ({@link #setViewTrack}). The highest ranked decoders get the hardware; the others switch to
+ * software or pause (see {@link BudgetedVideoDecoder}). The ranking is redone whenever a decoder
+ * comes or goes or a view changes.
+ *
+ * <p>Decoders don't know which track they feed. A decoder is matched to its track the first time
+ * one of its decoded frames shows up in the track's sink ({@link #onTrackFrame}). Only matched
+ * decoders are ranked; until then a decoder runs on the hardware without taking a slot, so the
+ * choice between hardware and software is made once its track's visibility is known.
+ */
+public class DecoderBudget {
+    private static final String TAG = DecoderBudget.class.getSimpleName();
+
+    private static final String H264_MIME_TYPE = "video/avc";
+    private static final int DEFAULT_MAX_HARDWARE_DECODERS = 4;
+
+    private static final class View {
+        final String trackId;
+        final int area;
+
+        View(String trackId, int area) {
+            this.trackId = trackId;
+            this.area = area;
+        }
+    }
+
+    @Nullable
+    private final Context context;
+    private final int maxHardwareDecodersOption;
+    private final AtomicLong order = new AtomicLong();
+
+    // All guarded by `this`.
+    private int maxHardwareDecoders = -1;
+    private final List<BudgetedVideoDecoder> decoders = new ArrayList<>();
+    private final Map<Object, View> views = new HashMap<>();
+
+    // Frames of decoders not matched to a track yet. Guarded by itself.
+    private final Map<VideoFrame.Buffer, BudgetedVideoDecoder> unmatchedFrames = new WeakHashMap<>();
+    private volatile int unmatchedDecoders;
+
+    /**
+     * @param maxHardwareDecoders How many decoders may use the hardware at once, or 0 for the
+     * device's limit.
+     */
+    public DecoderBudget(@Nullable Context context, int maxHardwareDecoders) {
+        this.context = context;
+        this.maxHardwareDecodersOption = maxHardwareDecoders;
+    }
+
+    /**
+     * Records that {@code view} shows {@code trackId} over {@code area} pixels. Pass a null track
+     * once the view is gone.
+     */
+    public void setViewTrack(Object view, @Nullable String trackId, int area) {
+        synchronized (this) {
+            View current = views.get(view);
+            if (trackId != null && area > 0) {
+                if (current != null && current.trackId.equals(trackId) && current.area == area) {
+                    return;
+                }
+                views.put(view, new View(trackId, area));
+            } else if (views.remove(view) == null) {
+                return;
+            }
+        }
+        rebalance();
+    }
+
+    /**
+     * Called by the sink of every remote video track; matches the decoder the frame came from to
+     * the track.
+     */
+    public void onTrackFrame(String trackId, VideoFrame frame) {
+        if (unmatchedDecoders == 0) {
+            return;
+        }
+
+        BudgetedVideoDecoder decoder;
+        synchronized (unmatchedFrames) {
+            decoder = unmatchedFrames.get(frame.getBuffer());
+            if (decoder == null) {
+                return;
+            }
+            unmatchedFrames.values().removeIf(d -> d == decoder);
+        }
+        synchronized (this) {
+            if (decoder.trackId == null) {
+                decoder.trackId = trackId;
+                unmatchedDecoders--;
+            }
+        }
+        rebalance();
+    }
+
+    /**
+     * Which decoder each track got: {@code hardware}, {@code software} or {@code paused}.
+     */
+    public synchronized List<Map<String, Object>> getAssignments() {
+        List<Map<String, Object>> assignments = new ArrayList<>();
+        for (BudgetedVideoDecoder decoder : decoders) {
+            Map<String, Object> assignment = new HashMap<>();
+            assignment.put("trackId", decoder.trackId);
+            assignment.put("codec", decoder.codecName);
+            assignment.put("decoder", decoder.state.name().toLowerCase());
+            assignment.put("area", getArea(decoder.trackId));
+            assignments.add(assignment);
+        }
+        return assignments;
+    }
+
+    public synchronized int getMaxHardwareDecoders() {
+        if (maxHardwareDecoders < 0) {
+            maxHardwareDecoders = maxHardwareDecodersOption > 0 ? maxHardwareDecodersOption : probeLimit();
+        }
+        return maxHardwareDecoders;
+    }
+
+    long nextOrder() {
+        return order.getAndIncrement();
+    }
+
+    void register(BudgetedVideoDecoder decoder) {
+        synchronized (this) {
+            if (decoders.contains(decoder)) {
+                return;
+            }
+            decoders.add(decoder);
+            if (decoder.trackId == null) {
+                unmatchedDecoders++;
+            }
+        }
+        rebalance();
+    }
+
+    void unregister(BudgetedVideoDecoder decoder) {
+        synchronized (this) {
+            if (!decoders.remove(decoder)) {
+                return;
+            }
+            if (decoder.trackId == null) {
+                unmatchedDecoders--;
+            }
+        }
+        synchronized (unmatchedFrames) {
+            unmatchedFrames.values().removeIf(d -> d == decoder);
+        }
+        rebalance();
+    }
+
+    void onDecodedFrame(BudgetedVideoDecoder decoder, VideoFrame.Buffer buffer) {
+        synchronized (unmatchedFrames) {
+            unmatchedFrames.put(buffer, decoder);
+        }
+    }
+
+    /**
+     * Hands the hardware slots to the decoders of the most visible tracks. A decoder keeps its slot
+     * over an equally visible one, so they don't swap back and forth.
+     */
+    synchronized void rebalance() {
+        if (decoders.isEmpty()) {
+            // Nothing to do, and no need to probe the limit yet.
+            return;
+        }
+
+        List<BudgetedVideoDecoder> candidates = new ArrayList<>();
+        for (BudgetedVideoDecoder decoder : decoders) {
+            if (decoder.state == BudgetedVideoDecoder.State.SOFTWARE || decoder.trackId == null) {
+                decoder.granted = false;
+            } else {
+                candidates.add(decoder);
+            }
+        }
+
+        Map<String, Integer> areas = new HashMap<>();
+        for (BudgetedVideoDecoder decoder : candidates) {
+            areas.put(decoder.trackId, getArea(decoder.trackId));
+        }
+        Collections.sort(candidates, (a, b) -> {
+            int byArea = Integer.compare(areas.get(b.trackId), areas.get(a.trackId));
+            if (byArea != 0) {
+                return byArea;
+            }
+            if (a.granted != b.granted) {
+                return a.granted ? -1 : 1;
+            }
+            return Long.compare(a.order, b.order);
+        });
+
+        int slots = getMaxHardwareDecoders();
+        for (int i = 0; i < candidates.size(); i++) {
+            candidates.get(i).granted = i < slots;
+        }
+    }
+
+    // Must be called with `this` held.
+    private int getArea(@Nullable String trackId) {
+        int area = 0;
+        if (trackId != null) {
+            for (View view : views.values()) {
+                if (view.trackId.equals(trackId)) {
+                    area = Math.max(area, view.area);
+                }
+            }
+        }
+        return area;
+    }
+
+    private int probeLimit() {
+        int limit = 0;
+        for (HardwareCodecProbe.Limits limits : HardwareCodecProbe.getLimits(context)) {
+            if (!limits.encoder && limits.mimeType.equalsIgnoreCase(H264_MIME_TYPE)) {
+                limit = Math.max(limit, limits.maxInstances);
+            }
+        }
+        if (limit <= 0) {
+            limit = DEFAULT_MAX_HARDWARE_DECODERS;
+        }
+        Log.d(TAG, "Up to " + limit + " hardware decoders");
+        return limit;
+    }
+}
@@ -0,0 +1,104 @@
+package com.oney.WebRTCModule.webrtcutils;
+
+import org.webrtc.VideoCodecStatus;
+import org.webrtc.VideoEncoder;
+import org.webrtc.VideoFrame;
+
+/**
+ * Wraps a hardware encoder used as the primary encoder of a {@link org.webrtc.VideoEncoderFallback}.
+ * Errors are turned into {@link VideoCodecStatus#FALLBACK_SOFTWARE}, so the call switches to the
+ * software encoder right away. The first error is reported, and so is getting through a call
+ * without any, so later calls can decide whether to try the hardware encoder again.
+ */
+class FallbackReportingVideoEncoder implements VideoEncoder {
+    interface Reporter {
+        void onFailure();
+
+        void onSuccess();
+    }
+
+    private final VideoEncoder encoder;
+    private final Reporter reporter;
+    // Only touched on the encoder thread.
+    private boolean failed;
+    private boolean encodedFrames;
+
+    FallbackReportingVideoEncoder(VideoEncoder encoder, Reporter reporter) {
+        this.encoder = encoder;
+        this.reporter = reporter;
+    }
+
+    @Override
+    public long createNativeVideoEncoder() {
+        return encoder.createNativeVideoEncoder();
+    }
+
+    @Override
+    public boolean isHardwareEncoder() {
+        return encoder.isHardwareEncoder();
+    }
+
+    @Override
+    public VideoCodecStatus initEncode(Settings settings, Callback encodeCallback) {
+        return check(encoder.initEncode(settings, encodeCallback));
+    }
+
+    @Override
+    public VideoCodecStatus release() {
+        if (encodedFrames && !failed) {
+            reporter.onSuccess();
+        }
+        encodedFrames = false;
+        return encoder.release();
+    }
+
+    @Override
+    public VideoCodecStatus encode(VideoFrame frame, EncodeInfo info) {
+        VideoCodecStatus status = check(encoder.encode(frame, info));
+        if (status == VideoCodecStatus.OK) {
+            encodedFrames = true;
+        }
+        return status;
+    }
+
+    @Override
+    public VideoCodecStatus setRateAllocation(BitrateAllocation allocation, int framerate) {
+        return encoder.setRateAllocation(allocation, framerate);
+    }
+
+    @Override
+    public VideoCodecStatus setRates(RateControlParameters rcParameters) {
+        return encoder.setRates(rcParameters);
+    }
+
+    @Override
+    public ScalingSettings getScalingSettings() {
+        return encoder.getScalingSettings();
+    }
+
+    @Override
+    public ResolutionBitrateLimits[] getResolutionBitrateLimits() {
+        return encoder.getResolutionBitrateLimits();
+    }
+
+    @Override
+    public String getImplementationName() {
+        return encoder.getImplementationName();
+    }
+
+    @Override
+    public EncoderInfo getEncoderInfo() {
+        return encoder.getEncoderInfo();
+    }
+
+    private VideoCodecStatus check(VideoCodecStatus status) {
+        if (status == VideoCodecStatus.OK || status == VideoCodecStatus.NO_OUTPUT) {
+            return status;
+        }
+        if (!failed) {
+            failed = true;
+            reporter.onFailure();
+        }
+        return VideoCodecStatus.FALLBACK_SOFTWARE;
+    }
+}
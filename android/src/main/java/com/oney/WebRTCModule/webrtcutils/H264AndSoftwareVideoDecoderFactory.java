@@ -1,11 +1,14 @@
 package com.oney.WebRTCModule.webrtcutils;
 
+import android.content.Context;
+
 import androidx.annotation.Nullable;
 
 import org.webrtc.EglBase;
 import org.webrtc.HardwareVideoDecoderFactory;
 import org.webrtc.VideoCodecInfo;
 import org.webrtc.VideoDecoder;
+import org.webrtc.VideoDecoderFallback;
 import org.webrtc.VideoDecoderFactory;
 
 import java.util.ArrayList;
@@ -18,12 +21,33 @@ import java.util.List;
  *
  * - In hardware: H.264 (high, baseline)
  * - In software: VP8, VP9, AV1
+ *
+ * The hardware codecs are probed once and cached, see {@link HardwareCodecProbe}. With a
+ * {@link DecoderBudget}, hardware decoders are only used while the budget allows.
  */
 public class H264AndSoftwareVideoDecoderFactory implements VideoDecoderFactory {
     private final VideoDecoderFactory hardwareVideoDecoderFactory;
     private final VideoDecoderFactory softwareVideoDecoderFactory;
+    @Nullable
+    private final Context context;
+    @Nullable
+    private final DecoderBudget decoderBudget;
 
     public H264AndSoftwareVideoDecoderFactory(@Nullable EglBase.Context eglContext) {
+        this(null, eglContext);
+    }
+
+    /**
+     * With a context, the probed hardware codecs are also cached on disk.
+     */
+    public H264AndSoftwareVideoDecoderFactory(@Nullable Context context, @Nullable EglBase.Context eglContext) {
+        this(context, eglContext, null);
+    }
+
+    public H264AndSoftwareVideoDecoderFactory(
+            @Nullable Context context, @Nullable EglBase.Context eglContext, @Nullable DecoderBudget decoderBudget) {
+        this.context = context;
+        this.decoderBudget = decoderBudget;
         this.hardwareVideoDecoderFactory = new HardwareVideoDecoderFactory(eglContext);
         this.softwareVideoDecoderFactory = new SoftwareVideoDecoderFactoryProxy();
     }
@@ -32,7 +56,16 @@ public class H264AndSoftwareVideoDecoderFactory implements VideoDecoderFactory {
     @Override
     public VideoDecoder createDecoder(VideoCodecInfo codecInfo) {
         if (codecInfo.name.equalsIgnoreCase("H264")) {
-            return this.hardwareVideoDecoderFactory.createDecoder(codecInfo);
+            VideoDecoder hardwareDecoder = this.hardwareVideoDecoderFactory.createDecoder(codecInfo);
+            if (hardwareDecoder == null || this.decoderBudget == null) {
+                return hardwareDecoder;
+            }
+
+            VideoDecoder softwareDecoder = this.softwareVideoDecoderFactory.createDecoder(codecInfo);
+            BudgetedVideoDecoder budgetedDecoder = new BudgetedVideoDecoder(
+                    hardwareDecoder, this.decoderBudget, codecInfo.name, softwareDecoder != null);
+            return softwareDecoder != null ? new VideoDecoderFallback(softwareDecoder, budgetedDecoder)
+                                           : budgetedDecoder;
         }
 
         return this.softwareVideoDecoderFactory.createDecoder(codecInfo);
@@ -45,7 +78,8 @@ public class H264AndSoftwareVideoDecoderFactory implements VideoDecoderFactory {
         VideoCodecInfo h264Baseline = null;
         VideoCodecInfo h264High = null;
 
-        VideoCodecInfo[] hwCodecs = this.hardwareVideoDecoderFactory.getSupportedCodecs();
+        VideoCodecInfo[] hwCodecs =
+                HardwareCodecProbe.getDecoderCodecs(this.context, this.hardwareVideoDecoderFactory::getSupportedCodecs);
         for (VideoCodecInfo hwCodec : hwCodecs) {
             if (hwCodec.name.equalsIgnoreCase("H264")) {
                 String profileLevel = hwCodec.params.get(VideoCodecInfo.H264_FMTP_PROFILE_LEVEL_ID);
@@ -1,5 +1,7 @@
 package com.oney.WebRTCModule.webrtcutils;
 
+import android.content.Context;
+
 import androidx.annotation.Nullable;
 
 import org.webrtc.EglBase;
@@ -18,12 +20,24 @@ import java.util.List;
  *
  * - In hardware: H.264 (high, baseline)
  * - In software: VP8, VP9, AV1
+ *
+ * The hardware codecs are probed once and cached, see {@link HardwareCodecProbe}.
  */
 public class H264AndSoftwareVideoEncoderFactory implements VideoEncoderFactory {
     private final VideoEncoderFactory hardwareVideoEncoderFactory;
     private final VideoEncoderFactory softwareVideoEncoderFactory;
+    @Nullable
+    private final Context context;
 
     public H264AndSoftwareVideoEncoderFactory(@Nullable EglBase.Context eglContext) {
+        this(null, eglContext);
+    }
+
+    /**
+     * With a context, the probed hardware codecs are also cached on disk.
+     */
+    public H264AndSoftwareVideoEncoderFactory(@Nullable Context context, @Nullable EglBase.Context eglContext) {
+        this.context = context;
         this.hardwareVideoEncoderFactory = new HardwareVideoEncoderFactory(eglContext, false, true);
         this.softwareVideoEncoderFactory = new SoftwareVideoEncoderFactoryProxy();
     }
@@ -45,7 +59,8 @@ public class H264AndSoftwareVideoEncoderFactory implements VideoEncoderFactory {
         VideoCodecInfo h264Baseline = null;
         VideoCodecInfo h264High = null;
 
-        VideoCodecInfo[] hwCodecs = this.hardwareVideoEncoderFactory.getSupportedCodecs();
+        VideoCodecInfo[] hwCodecs =
+                HardwareCodecProbe.getEncoderCodecs(this.context, this.hardwareVideoEncoderFactory::getSupportedCodecs);
         for (VideoCodecInfo hwCodec : hwCodecs) {
             if (hwCodec.name.equalsIgnoreCase("H264")) {
                 String profileLevel = hwCodec.params.get(VideoCodecInfo.H264_FMTP_PROFILE_LEVEL_ID);
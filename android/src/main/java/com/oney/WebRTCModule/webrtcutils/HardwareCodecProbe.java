@@ -0,0 +1,275 @@
+package com.oney.WebRTCModule.webrtcutils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.pm.PackageInfoCompat;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.VideoCodecInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Probes what the hardware video codecs support once per app version and device build, and serves
+ * the results from memory and from disk afterwards. Walking the MediaCodecList is slow, and the
+ * answer only changes with a system update.
+ *
+ * <p>It caches the codecs the hardware encoder and decoder factories report, with their profiles
+ * (in the codec parameters). It also records the limits of each hardware codec: maximum resolution,
+ * frame rate and number of concurrent instances (see {@link #getLimits}).
+ *
+ * <p>Without a {@link Context} the results are only kept in memory, for the life of the process.
+ */
+public class HardwareCodecProbe {
+    private static final String TAG = HardwareCodecProbe.class.getSimpleName();
+
+    private static final String PREFS_NAME = "WebRTCModuleCodecProbe";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_ENCODERS = "encoders";
+    private static final String KEY_DECODERS = "decoders";
+    private static final String KEY_LIMITS = "limits";
+
+    private static final String[] VIDEO_MIME_TYPES = {
+        "video/avc", "video/hevc", "video/x-vnd.on2.vp8", "video/x-vnd.on2.vp9", "video/av01"};
+
+    /**
+     * What one hardware codec can do.
+     */
+    public static final class Limits {
+        public final String codecName;
+        public final String mimeType;
+        public final boolean encoder;
+        public final int maxWidth;
+        public final int maxHeight;
+        public final int maxFrameRate;
+        public final int maxInstances;
+
+        Limits(String codecName, String mimeType, boolean encoder, int maxWidth, int maxHeight, int maxFrameRate,
+                int maxInstances) {
+            this.codecName = codecName;
+            this.mimeType = mimeType;
+            this.encoder = encoder;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.maxFrameRate = maxFrameRate;
+            this.maxInstances = maxInstances;
+        }
+    }
+
+    // All guarded by the class.
+    private static final Map<String, VideoCodecInfo[]> codecs = new HashMap<>();
+    @Nullable
+    private static List<Limits> limits;
+
+    private HardwareCodecProbe() {}
+
+    public static VideoCodecInfo[] getEncoderCodecs(@Nullable Context context, Supplier<VideoCodecInfo[]> probe) {
+        return getCodecs(context, KEY_ENCODERS, probe);
+    }
+
+    public static VideoCodecInfo[] getDecoderCodecs(@Nullable Context context, Supplier<VideoCodecInfo[]> probe) {
+        return getCodecs(context, KEY_DECODERS, probe);
+    }
+
+    /**
+     * The hardware video codecs of the device and their limits.
+     */
+    public static synchronized List<Limits> getLimits(@Nullable Context context) {
+        if (limits != null) {
+            return limits;
+        }
+
+        SharedPreferences prefs = getPrefs(context);
+        String json = prefs != null ? prefs.getString(KEY_LIMITS, null) : null;
+        if (json != null) {
+            try {
+                limits = parseLimits(json);
+            } catch (JSONException e) {
+                Log.w(TAG, "Failed to parse the cached codec limits", e);
+            }
+        }
+        if (limits == null) {
+            limits = Collections.unmodifiableList(probeLimits());
+            if (prefs != null) {
+                try {
+                    prefs.edit().putString(KEY_LIMITS, serializeLimits(limits)).apply();
+                } catch (JSONException e) {
+                    Log.w(TAG, "Failed to cache the codec limits", e);
+                }
+            }
+        }
+        return limits;
+    }
+
+    private static synchronized VideoCodecInfo[] getCodecs(
+            @Nullable Context context, String key, Supplier<VideoCodecInfo[]> probe) {
+        VideoCodecInfo[] result = codecs.get(key);
+        if (result == null) {
+            SharedPreferences prefs = getPrefs(context);
+            String json = prefs != null ? prefs.getString(key, null) : null;
+            if (json != null) {
+                try {
+                    result = parseCodecs(json);
+                } catch (JSONException e) {
+                    Log.w(TAG, "Failed to parse the cached " + key, e);
+                }
+            }
+            if (result == null) {
+                result = probe.get();
+                if (prefs != null) {
+                    try {
+                        prefs.edit().putString(key, serializeCodecs(result)).apply();
+                    } catch (JSONException e) {
+                        Log.w(TAG, "Failed to cache the " + key, e);
+                    }
+                }
+            }
+            codecs.put(key, result);
+        }
+        // Callers get their own array.
+        return result.clone();
+    }
+
+    /**
+     * The preferences holding the cache, cleared first if they were written by another app
+     * version or device build. {@link VideoEncoderBenchmark} keeps its results there too.
+     */
+    @Nullable
+    static SharedPreferences getPrefs(@Nullable Context context) {
+        if (context == null) {
+            return null;
+        }
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String fingerprint = getFingerprint(context);
+        if (!fingerprint.equals(prefs.getString(KEY_FINGERPRINT, null))) {
+            prefs.edit().clear().putString(KEY_FINGERPRINT, fingerprint).apply();
+        }
+        return prefs;
+    }
+
+    private static String getFingerprint(Context context) {
+        long versionCode = 0;
+        try {
+            versionCode = PackageInfoCompat.getLongVersionCode(
+                    context.getPackageManager().getPackageInfo(context.getPackageName(), 0));
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Failed to get the app version", e);
+        }
+        return versionCode + "|" + Build.FINGERPRINT;
+    }
+
+    private static List<Limits> probeLimits() {
+        List<Limits> result = new ArrayList<>();
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (!isHardware(info)) {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) {
+                if (!isVideoType(type)) {
+                    continue;
+                }
+                try {
+                    MediaCodecInfo.CodecCapabilities capabilities = info.getCapabilitiesForType(type);
+                    MediaCodecInfo.VideoCapabilities video = capabilities.getVideoCapabilities();
+                    if (video == null) {
+                        continue;
+                    }
+                    result.add(new Limits(info.getName(), type, info.isEncoder(),
+                            video.getSupportedWidths().getUpper(), video.getSupportedHeights().getUpper(),
+                            video.getSupportedFrameRates().getUpper(), capabilities.getMaxSupportedInstances()));
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Failed to probe " + info.getName() + " for " + type, e);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isHardware(MediaCodecInfo info) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return info.isHardwareAccelerated();
+        }
+        String name = info.getName();
+        return !name.startsWith("OMX.google.") && !name.startsWith("c2.android.");
+    }
+
+    private static boolean isVideoType(String type) {
+        for (String videoType : VIDEO_MIME_TYPES) {
+            if (videoType.equalsIgnoreCase(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String serializeCodecs(VideoCodecInfo[] codecs) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (VideoCodecInfo codec : codecs) {
+            JSONObject entry = new JSONObject();
+            entry.put("name", codec.name);
+            entry.put("params", new JSONObject(codec.params));
+            array.put(entry);
+        }
+        return array.toString();
+    }
+
+    private static VideoCodecInfo[] parseCodecs(String json) throws JSONException {
+        JSONArray array = new JSONArray(json);
+        VideoCodecInfo[] result = new VideoCodecInfo[array.length()];
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject entry = array.getJSONObject(i);
+            JSONObject paramsJson = entry.getJSONObject("params");
+            Map<String, String> params = new HashMap<>();
+            for (Iterator<String> keys = paramsJson.keys(); keys.hasNext();) {
+                String key = keys.next();
+                params.put(key, paramsJson.getString(key));
+            }
+            result[i] = new VideoCodecInfo(entry.getString("name"), params);
+        }
+        return result;
+    }
+
+    private static String serializeLimits(List<Limits> limits) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (Limits codec : limits) {
+            JSONObject entry = new JSONObject();
+            entry.put("codecName", codec.codecName);
+            entry.put("mimeType", codec.mimeType);
+            entry.put("encoder", codec.encoder);
+            entry.put("maxWidth", codec.maxWidth);
+            entry.put("maxHeight", codec.maxHeight);
+            entry.put("maxFrameRate", codec.maxFrameRate);
+            entry.put("maxInstances", codec.maxInstances);
+            array.put(entry);
+        }
+        return array.toString();
+    }
+
+    private static List<Limits> parseLimits(String json) throws JSONException {
+        JSONArray array = new JSONArray(json);
+        List<Limits> result = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject entry = array.getJSONObject(i);
+            result.add(new Limits(entry.getString("codecName"), entry.getString("mimeType"),
+                    entry.getBoolean("encoder"), entry.getInt("maxWidth"), entry.getInt("maxHeight"),
+                    entry.getInt("maxFrameRate"), entry.getInt("maxInstances")));
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
@@ -0,0 +1,361 @@
+package com.oney.WebRTCModule.webrtcutils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.EncodedImage;
+import org.webrtc.JavaI420Buffer;
+import org.webrtc.VideoCodecInfo;
+import org.webrtc.VideoCodecStatus;
+import org.webrtc.VideoEncoder;
+import org.webrtc.VideoEncoderFactory;
+import org.webrtc.VideoFrame;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides, per codec, whether {@link BenchmarkedVideoEncoderFactory} encodes VP8, VP9 and AV1 in
+ * hardware. The first time, each hardware encoder the device has encodes a couple of seconds of
+ * synthetic 360p video in real time; it is picked if it keeps up, with low latency and without
+ * errors. The decision is cached like {@link HardwareCodecProbe}'s results, once per app version
+ * and device build.
+ *
+ * <p>The software encoders are native and can't be driven from Java, so the hardware encoder is
+ * measured against fixed thresholds rather than against them. The benchmark feeds I420 buffers,
+ * whereas calls mostly feed textures, which the encoder takes through its input surface; that path
+ * isn't measured, so its failures are only caught during calls. A codec whose hardware encoder
+ * fails during a call is encoded in software for the rest of the process, and demoted to software
+ * for good once it failed in {@link #MAX_CALL_FAILURES} calls in a row (see {@link #reportFailure}).
+ */
+public class VideoEncoderBenchmark {
+    private static final String TAG = VideoEncoderBenchmark.class.getSimpleName();
+
+    private static final String KEY_PREFIX = "benchmark.";
+    private static final String[] CODECS = {"VP8", "VP9", "AV1"};
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+    private static final int FRAME_RATE = 30;
+    private static final int BITRATE_KBPS = 800;
+    private static final int FRAMES = 60;
+    private static final long DRAIN_TIMEOUT_MS = 500;
+
+    // A hardware encoder must keep up with real time and stay within these.
+    private static final double MIN_THROUGHPUT_RATIO = 0.9;
+    private static final double MAX_FAILURE_RATE = 0.05;
+    private static final double MAX_AVG_LATENCY_MS = 100;
+    private static final int MAX_CALL_FAILURES = 3;
+
+    public static final class Result {
+        public final String codecName;
+        public final boolean useHardware;
+        // Set once the hardware encoder failed in MAX_CALL_FAILURES calls in a row.
+        public final boolean demoted;
+        // The calls in a row in which the hardware encoder failed.
+        public final int callFailures;
+        public final int framesSubmitted;
+        public final int framesEncoded;
+        public final int failures;
+        public final double throughputFps;
+        public final double avgLatencyMs;
+        public final double avgEncodeCallMs;
+
+        Result(String codecName, boolean useHardware, boolean demoted, int callFailures, int framesSubmitted,
+                int framesEncoded, int failures, double throughputFps, double avgLatencyMs, double avgEncodeCallMs) {
+            this.codecName = codecName;
+            this.useHardware = useHardware;
+            this.demoted = demoted;
+            this.callFailures = callFailures;
+            this.framesSubmitted = framesSubmitted;
+            this.framesEncoded = framesEncoded;
+            this.failures = failures;
+            this.throughputFps = throughputFps;
+            this.avgLatencyMs = avgLatencyMs;
+            this.avgEncodeCallMs = avgEncodeCallMs;
+        }
+
+        static Result failed(String codecName) {
+            return new Result(codecName, false, false, 0, 0, 0, 1, 0, 0, 0);
+        }
+
+        Result withCallFailures(int callFailures) {
+            boolean demoted = callFailures >= MAX_CALL_FAILURES;
+            return new Result(codecName, useHardware && !demoted, demoted, callFailures, framesSubmitted,
+                    framesEncoded, failures, throughputFps, avgLatencyMs, avgEncodeCallMs);
+        }
+    }
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "VideoEncoderBenchmark");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // All guarded by the class.
+    private static final Map<String, Result> results = new HashMap<>();
+    private static final Set<String> scheduled = new HashSet<>();
+    // Codecs whose hardware encoder failed in this process.
+    private static final Set<String> failed = new HashSet<>();
+
+    private VideoEncoderBenchmark() {}
+
+    /**
+     * Benchmarks, in the background, the hardware encoders of {@code factory} which have no result
+     * yet. Until then their codecs are encoded in software.
+     */
+    public static void start(@Nullable Context context, VideoEncoderFactory factory) {
+        executor.execute(() -> {
+            VideoCodecInfo[] codecs = HardwareCodecProbe.getEncoderCodecs(context, factory::getSupportedCodecs);
+            for (VideoCodecInfo info : codecs) {
+                if (!isBenchmarked(info.name) || getResult(context, info.name) != null || !schedule(info.name)) {
+                    continue;
+                }
+                Result result;
+                try {
+                    result = run(factory, info);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to benchmark the " + info.name + " encoder", e);
+                    result = Result.failed(info.name);
+                }
+                Log.d(TAG,
+                        info.name + " encoder: " + (result.useHardware ? "hardware" : "software") + ", "
+                                + result.throughputFps + " fps, " + result.avgLatencyMs + " ms latency, "
+                                + result.failures + " failures");
+                store(context, result);
+            }
+        });
+    }
+
+    /**
+     * The decision for {@code codecName}, or null if it wasn't benchmarked yet.
+     */
+    @Nullable
+    public static synchronized Result getResult(@Nullable Context context, String codecName) {
+        String key = codecName.toUpperCase();
+        Result result = results.get(key);
+        if (result == null) {
+            SharedPreferences prefs = HardwareCodecProbe.getPrefs(context);
+            String json = prefs != null ? prefs.getString(KEY_PREFIX + key, null) : null;
+            if (json != null) {
+                try {
+                    result = parse(json);
+                    results.put(key, result);
+                } catch (JSONException e) {
+                    Log.w(TAG, "Failed to parse the cached " + key + " result", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    public static synchronized Map<String, Result> getResults(@Nullable Context context) {
+        Map<String, Result> all = new HashMap<>();
+        for (String codecName : CODECS) {
+            Result result = getResult(context, codecName);
+            if (result != null) {
+                all.put(codecName, result);
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Whether {@code codecName} is to be encoded in hardware: it was benchmarked, picked, and its
+     * hardware encoder hasn't failed in this process.
+     */
+    public static synchronized boolean useHardware(@Nullable Context context, String codecName) {
+        Result result = getResult(context, codecName);
+        return result != null && result.useHardware && !failed.contains(codecName.toUpperCase());
+    }
+
+    /**
+     * Switches {@code codecName} to software for the rest of the process after its hardware encoder
+     * failed during a call, and for good after {@link #MAX_CALL_FAILURES} such calls in a row.
+     */
+    static synchronized void reportFailure(@Nullable Context context, String codecName) {
+        if (!failed.add(codecName.toUpperCase())) {
+            return;
+        }
+        Result result = getResult(context, codecName);
+        if (result != null && result.useHardware) {
+            Result updated = result.withCallFailures(result.callFailures + 1);
+            Log.w(TAG,
+                    "The " + codecName + " hardware encoder failed, using software "
+                            + (updated.demoted ? "from now on" : "until restarted"));
+            store(context, updated);
+        }
+    }
+
+    /**
+     * Resets the count of failed calls once the hardware encoder of {@code codecName} got through a
+     * call without failing.
+     */
+    static synchronized void reportSuccess(@Nullable Context context, String codecName) {
+        Result result = getResult(context, codecName);
+        if (result != null && result.callFailures > 0 && !result.demoted) {
+            store(context, result.withCallFailures(0));
+        }
+    }
+
+    private static boolean isBenchmarked(String codecName) {
+        for (String name : CODECS) {
+            if (name.equalsIgnoreCase(codecName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A factory may report several profiles of a codec; only the first one is benchmarked.
+    private static synchronized boolean schedule(String codecName) {
+        return scheduled.add(codecName.toUpperCase());
+    }
+
+    private static synchronized void store(@Nullable Context context, Result result) {
+        String key = result.codecName.toUpperCase();
+        results.put(key, result);
+        SharedPreferences prefs = HardwareCodecProbe.getPrefs(context);
+        if (prefs != null) {
+            try {
+                prefs.edit().putString(KEY_PREFIX + key, serialize(result)).apply();
+            } catch (JSONException e) {
+                Log.w(TAG, "Failed to cache the " + key + " result", e);
+            }
+        }
+    }
+
+    // Must be called on the benchmark thread, the encoder is confined to it.
+    private static Result run(VideoEncoderFactory factory, VideoCodecInfo info) {
+        VideoEncoder encoder = factory.createEncoder(info);
+        if (encoder == null) {
+            return Result.failed(info.name);
+        }
+
+        AtomicInteger encoded = new AtomicInteger();
+        AtomicLong totalLatencyNs = new AtomicLong();
+        AtomicLong lastOutputNs = new AtomicLong();
+        VideoEncoder.Callback callback = (EncodedImage image, VideoEncoder.CodecSpecificInfo codecInfo) -> {
+            long nowNs = System.nanoTime();
+            totalLatencyNs.addAndGet(nowNs - image.captureTimeNs);
+            lastOutputNs.set(nowNs);
+            encoded.incrementAndGet();
+        };
+
+        VideoEncoder.Settings settings = new VideoEncoder.Settings(
+                1, WIDTH, HEIGHT, BITRATE_KBPS, FRAME_RATE, 1, true, new VideoEncoder.Capabilities(false));
+        if (encoder.initEncode(settings, callback) != VideoCodecStatus.OK) {
+            encoder.release();
+            return Result.failed(info.name);
+        }
+
+        JavaI420Buffer buffer = JavaI420Buffer.allocate(WIDTH, HEIGHT);
+        int submitted = 0;
+        int failures = 0;
+        long totalEncodeCallNs = 0;
+        long frameIntervalNs = 1_000_000_000L / FRAME_RATE;
+        long firstSubmitNs = System.nanoTime();
+        try {
+            for (int i = 0; i < FRAMES; i++) {
+                fillFrame(buffer, i);
+                buffer.retain();
+                long submitNs = System.nanoTime();
+                VideoFrame frame = new VideoFrame(buffer, 0, submitNs);
+                EncodedImage.FrameType frameType =
+                        i == 0 ? EncodedImage.FrameType.VideoFrameKey : EncodedImage.FrameType.VideoFrameDelta;
+                VideoCodecStatus status =
+                        encoder.encode(frame, new VideoEncoder.EncodeInfo(new EncodedImage.FrameType[] {frameType}));
+                frame.release();
+                totalEncodeCallNs += System.nanoTime() - submitNs;
+                submitted++;
+                // NO_OUTPUT is a dropped frame, which shows in the throughput.
+                if (status != VideoCodecStatus.OK && status != VideoCodecStatus.NO_OUTPUT) {
+                    failures++;
+                }
+
+                long sleepNs = firstSubmitNs + (i + 1) * frameIntervalNs - System.nanoTime();
+                if (sleepNs > 0) {
+                    Thread.sleep(sleepNs / 1_000_000, (int) (sleepNs % 1_000_000));
+                }
+            }
+
+            long drainDeadlineNs = System.nanoTime() + DRAIN_TIMEOUT_MS * 1_000_000;
+            while (encoded.get() < submitted - failures && System.nanoTime() < drainDeadlineNs) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            encoder.release();
+            buffer.release();
+        }
+
+        int framesEncoded = encoded.get();
+        double elapsedSec = (Math.max(lastOutputNs.get(), firstSubmitNs + 1) - firstSubmitNs) / 1e9;
+        double throughputFps = framesEncoded / elapsedSec;
+        double avgLatencyMs = framesEncoded > 0 ? totalLatencyNs.get() / 1e6 / framesEncoded : 0;
+        double avgEncodeCallMs = submitted > 0 ? totalEncodeCallNs / 1e6 / submitted : 0;
+        boolean useHardware = submitted == FRAMES && throughputFps >= FRAME_RATE * MIN_THROUGHPUT_RATIO
+                && (double) failures / submitted <= MAX_FAILURE_RATE && avgLatencyMs <= MAX_AVG_LATENCY_MS;
+        return new Result(info.name, useHardware, false, 0, submitted, framesEncoded, failures, throughputFps,
+                avgLatencyMs, avgEncodeCallMs);
+    }
+
+    /**
+     * Draws a moving gradient, so the encoder has some motion to deal with.
+     */
+    private static void fillFrame(JavaI420Buffer buffer, int index) {
+        ByteBuffer y = buffer.getDataY();
+        int strideY = buffer.getStrideY();
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                y.put(row * strideY + col, (byte) (row + col + index * 8));
+            }
+        }
+        if (index == 0) {
+            fillPlane(buffer.getDataU(), buffer.getStrideU(), (HEIGHT + 1) / 2);
+            fillPlane(buffer.getDataV(), buffer.getStrideV(), (HEIGHT + 1) / 2);
+        }
+    }
+
+    private static void fillPlane(ByteBuffer plane, int stride, int rows) {
+        for (int i = 0; i < stride * rows; i++) {
+            plane.put(i, (byte) 128);
+        }
+    }
+
+    private static String serialize(Result result) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("codecName", result.codecName);
+        json.put("useHardware", result.useHardware);
+        json.put("demoted", result.demoted);
+        json.put("callFailures", result.callFailures);
+        json.put("framesSubmitted", result.framesSubmitted);
+        json.put("framesEncoded", result.framesEncoded);
+        json.put("failures", result.failures);
+        json.put("throughputFps", result.throughputFps);
+        json.put("avgLatencyMs", result.avgLatencyMs);
+        json.put("avgEncodeCallMs", result.avgEncodeCallMs);
+        return json.toString();
+    }
+
+    private static Result parse(String string) throws JSONException {
+        JSONObject json = new JSONObject(string);
+        return new Result(json.getString("codecName"), json.getBoolean("useHardware"), json.getBoolean("demoted"),
+                json.optInt("callFailures"), json.getInt("framesSubmitted"), json.getInt("framesEncoded"),
+                json.getInt("failures"),
+                json.getDouble("throughputFps"), json.getDouble("avgLatencyMs"), json.getDouble("avgEncodeCallMs"));
+    }
+}
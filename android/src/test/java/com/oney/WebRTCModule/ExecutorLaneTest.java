@@ -0,0 +1,190 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutorLaneTest {
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private static void await(ExecutorLane lane) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        lane.execute(done::countDown);
+        assertTrue("lane didn't drain", done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void runsTasksInSubmissionOrder() throws Exception {
+        ExecutorLane lane = new ExecutorLane("test", pool);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 1000; i++) {
+            int n = i;
+            lane.execute(() -> order.add(n));
+        }
+        await(lane);
+
+        assertEquals(1000, order.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void neverRunsTwoTasksAtOnce() throws Exception {
+        ExecutorLane lane = new ExecutorLane("test", pool);
+        AtomicInteger running = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        for (int i = 0; i < 200; i++) {
+            lane.execute(() -> {
+                if (running.incrementAndGet() > 1) {
+                    overlapped.set(true);
+                }
+                Thread.yield();
+                running.decrementAndGet();
+            });
+        }
+        await(lane);
+
+        assertFalse(overlapped.get());
+    }
+
+    @Test
+    public void lanesDoNotWaitForEachOther() throws Exception {
+        ExecutorLane blocked = new ExecutorLane("blocked", pool);
+        ExecutorLane other = new ExecutorLane("other", pool);
+        CountDownLatch release = new CountDownLatch(1);
+        blocked.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        await(other);
+        release.countDown();
+        await(blocked);
+    }
+
+    @Test
+    public void keepsRunningAfterAFailingTask() throws Exception {
+        ExecutorLane lane = new ExecutorLane("test", pool);
+        AtomicBoolean ran = new AtomicBoolean();
+        lane.execute(() -> {
+            throw new IllegalStateException("boom");
+        });
+        lane.execute(() -> ran.set(true));
+        await(lane);
+
+        assertTrue(ran.get());
+        assertEquals(3, lane.getStats().submittedCount);
+    }
+
+    @Test
+    public void closedLaneForwardsQueuedAndLaterTasksInOrder() throws Exception {
+        ExecutorLane lane = new ExecutorLane("pc-1", pool);
+        ExecutorLane disposed = new ExecutorLane("disposed", pool);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch closing = new CountDownLatch(1);
+
+        lane.execute(() -> {
+            try {
+                closing.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            order.add("dispose");
+            lane.closeInto(disposed);
+        });
+        lane.execute(() -> order.add("queued"));
+        closing.countDown();
+        await(disposed);
+        lane.execute(() -> order.add("later"));
+        await(disposed);
+
+        assertEquals(Arrays.asList("dispose", "queued", "later"), order);
+        assertEquals(0, lane.getStats().queueDepth);
+    }
+
+    @Test
+    public void closedLaneForwardsOnlyOnceTheClosingTaskReturns() throws Exception {
+        ExecutorLane lane = new ExecutorLane("pc-1", pool);
+        ExecutorLane disposed = new ExecutorLane("disposed", pool);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch closing = new CountDownLatch(1);
+
+        lane.execute(() -> {
+            try {
+                closing.await();
+                lane.closeInto(disposed);
+                lane.execute(() -> order.add("submitted while closing"));
+                // A forwarded task would run meanwhile.
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            order.add("rest of the closing task");
+        });
+        lane.execute(() -> order.add("queued"));
+        closing.countDown();
+        await(lane);
+
+        assertEquals(Arrays.asList("rest of the closing task", "queued", "submitted while closing"), order);
+    }
+
+    @Test
+    public void runExclusiveWaitsForTheRunningTaskOnly() throws Exception {
+        ExecutorLane lane = new ExecutorLane("test", pool);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean firstDone = new AtomicBoolean();
+        AtomicBoolean queuedRan = new AtomicBoolean();
+
+        lane.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            firstDone.set(true);
+        });
+        lane.execute(() -> queuedRan.set(true));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Thread caller = Thread.currentThread();
+        pool.execute(() -> {
+            // Let the task in progress finish once runExclusive waits for it.
+            while (caller.getState() != Thread.State.WAITING) {
+                Thread.yield();
+            }
+            release.countDown();
+        });
+        // Runs after the task in progress, but ahead of the queued one.
+        boolean[] seen = lane.runExclusive(() -> new boolean[] {firstDone.get(), queuedRan.get()});
+        await(lane);
+
+        assertTrue(seen[0]);
+        assertFalse(seen[1]);
+        assertTrue(queuedRan.get());
+    }
+}
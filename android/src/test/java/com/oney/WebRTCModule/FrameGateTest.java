@@ -0,0 +1,237 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class FrameGateTest {
+    private static final long MS = 1_000_000L;
+    private static final long SAMPLE_INTERVAL_NS = 100 * MS;
+    private static final long MAX_STALENESS_NS = 1000 * MS;
+
+    /** A frame showing {@code content}; contents at most 1 apart count as unchanged. */
+    private static final class Frame {
+        final int content;
+        final boolean throttled;
+        int refs = 1;
+
+        Frame(int content, boolean throttled) {
+            this.content = content;
+            this.throttled = throttled;
+        }
+    }
+
+    private static final class Task {
+        final long atNs;
+        final Runnable runnable;
+
+        Task(long atNs, Runnable runnable) {
+            this.atNs = atNs;
+            this.runnable = runnable;
+        }
+    }
+
+    private final List<Frame> frames = new ArrayList<>();
+    private final List<Task> tasks = new ArrayList<>();
+    private final List<Integer> forwarded = new ArrayList<>();
+    private final List<Integer> forwardedLate = new ArrayList<>();
+    private long nowNs;
+    private Integer reference;
+    private int sampled;
+
+    private final FrameGate<Frame> gate = new FrameGate<>(new FrameGate.Host<Frame>() {
+        @Override
+        public long nowNs() {
+            return nowNs;
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayNs) {
+            tasks.add(new Task(nowNs + delayNs, task));
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            for (Iterator<Task> it = tasks.iterator(); it.hasNext();) {
+                if (it.next().runnable == task) {
+                    it.remove();
+                }
+            }
+        }
+
+        @Override
+        public boolean isThrottled(Frame frame) {
+            return frame.throttled;
+        }
+
+        @Override
+        public boolean changed(Frame frame) {
+            sampled = frame.content;
+            return reference == null || Math.abs(frame.content - reference) > 1;
+        }
+
+        @Override
+        public void forward(Frame frame, boolean late) {
+            assertEquals(frame.content, sampled);
+            reference = frame.content;
+            forwarded.add(frame.content);
+            if (late) {
+                forwardedLate.add(frame.content);
+            }
+        }
+
+        @Override
+        public void retain(Frame frame) {
+            frame.refs++;
+        }
+
+        @Override
+        public void release(Frame frame) {
+            frame.refs--;
+        }
+
+        @Override
+        public Frame copy(Frame frame) {
+            Frame copy = new Frame(frame.content, frame.throttled);
+            frames.add(copy);
+            return copy;
+        }
+    }, SAMPLE_INTERVAL_NS, MAX_STALENESS_NS);
+
+    @After
+    public void releasesEveryFrame() {
+        gate.clear();
+        for (Frame frame : frames) {
+            assertEquals("frame " + frame.content, 0, frame.refs);
+        }
+    }
+
+    /** Delivers a texture frame at {@code ms}, released by the capturer right after. */
+    private void frameAt(long ms, int content) {
+        advanceTo(ms);
+        Frame frame = new Frame(content, true);
+        frames.add(frame);
+        gate.onFrame(frame);
+        frame.refs--;
+    }
+
+    private void advanceTo(long ms) {
+        while (true) {
+            Task next = null;
+            for (Task task : tasks) {
+                if (task.atNs <= ms * MS && (next == null || task.atNs < next.atNs)) {
+                    next = task;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            tasks.remove(next);
+            nowNs = next.atNs;
+            next.runnable.run();
+        }
+        nowNs = ms * MS;
+    }
+
+    @Test
+    public void changeRightAfterASampleIsForwardedWithoutAnotherFrame() {
+        frameAt(0, 10);
+        frameAt(50, 20);
+        assertEquals(Collections.singletonList(10), forwarded);
+
+        // The screen stays static, the capturer delivers nothing more.
+        advanceTo(100);
+        assertEquals(Arrays.asList(10, 20), forwarded);
+        assertEquals(Collections.singletonList(20), forwardedLate);
+        assertEquals(0, gate.getDroppedFrames());
+    }
+
+    @Test
+    public void changeAfterAnUnchangedSampleIsNotLost() {
+        frameAt(0, 10);
+        frameAt(150, 11); // Unchanged, dropped.
+        frameAt(180, 20); // Within the interval of the unchanged sample.
+
+        advanceTo(250);
+        assertEquals(Arrays.asList(10, 20), forwarded);
+    }
+
+    @Test
+    public void onlyTheNewestHeldFrameIsSampled() {
+        frameAt(0, 10);
+        frameAt(30, 20);
+        frameAt(60, 30);
+
+        advanceTo(100);
+        assertEquals(Arrays.asList(10, 30), forwarded);
+        assertEquals(1, gate.getDroppedFrames());
+        assertEquals(3, gate.getCapturedFrames());
+    }
+
+    @Test
+    public void framesOutsideTheIntervalAreSampledRightAway() {
+        frameAt(0, 10);
+        frameAt(100, 20);
+        frameAt(200, 30);
+
+        assertEquals(Arrays.asList(10, 20, 30), forwarded);
+        assertEquals(Collections.<Integer>emptyList(), forwardedLate);
+    }
+
+    @Test
+    public void unthrottledFramesAreNeverHeld() {
+        frameAt(0, 10);
+        Frame frame = new Frame(20, false);
+        frames.add(frame);
+        gate.onFrame(frame);
+        frame.refs--;
+
+        assertEquals(Arrays.asList(10, 20), forwarded);
+    }
+
+    @Test
+    public void droppedFrameIsForwardedOnceStaleWithoutAnotherFrame() {
+        frameAt(0, 10);
+        frameAt(200, 11);
+        frameAt(400, 10);
+        assertEquals(Collections.singletonList(10), forwarded);
+
+        advanceTo(999);
+        assertEquals(Collections.singletonList(10), forwarded);
+        advanceTo(1000);
+        // The newest dropped frame, not the first one.
+        assertEquals(Arrays.asList(10, 10), forwarded);
+        assertEquals(Collections.singletonList(10), forwardedLate);
+        assertEquals(1, gate.getDroppedFrames());
+    }
+
+    @Test
+    public void forwardingCancelsTheStalenessTimer() {
+        frameAt(0, 10);
+        frameAt(200, 11);
+        frameAt(400, 20);
+
+        advanceTo(2000);
+        assertEquals(Arrays.asList(10, 20), forwarded);
+        assertEquals(1, gate.getDroppedFrames());
+    }
+
+    @Test
+    public void clearReleasesHeldFrames() {
+        frameAt(0, 10);
+        frameAt(200, 11);
+        frameAt(250, 20);
+
+        gate.clear();
+        advanceTo(2000);
+        assertEquals(Collections.singletonList(10), forwarded);
+        assertEquals(2, gate.getDroppedFrames());
+    }
+}
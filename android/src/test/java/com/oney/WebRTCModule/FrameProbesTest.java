@@ -0,0 +1,85 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FrameProbesTest {
+    private static final long MS = 1_000_000L;
+
+    private static FrameProbes.Probe probe() {
+        return new FrameProbes.Probe(-1, null);
+    }
+
+    private static void gaps(FrameProbes.Probe probe, long gapMs, int count) {
+        for (int i = 0; i < count; i++) {
+            probe.onGap(gapMs * MS);
+        }
+    }
+
+    @Test
+    public void countsGapsIntoBuckets() {
+        FrameProbes.Probe probe = probe();
+        probe.onGap(10 * MS); // < 17
+        probe.onGap(17 * MS); // [17, 34)
+        probe.onGap(33 * MS); // [17, 34)
+        probe.onGap(120 * MS); // [100, 200)
+        probe.onGap(5000 * MS); // >= 1000
+
+        long[] expected = {1, 2, 0, 0, 1, 0, 0, 1};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("bucket " + i, expected[i], probe.gapCounts.get(i));
+        }
+    }
+
+    @Test
+    public void hasNoMedianUntilEnoughGaps() {
+        FrameProbes.Probe probe = probe();
+        gaps(probe, 33, 7);
+        assertEquals(0, probe.medianGapNs);
+
+        probe.onGap(33 * MS);
+        assertEquals(33 * MS, probe.medianGapNs);
+    }
+
+    @Test
+    public void medianIgnoresOutliers() {
+        FrameProbes.Probe probe = probe();
+        gaps(probe, 33, 13);
+        gaps(probe, 400, 3);
+        assertEquals(33 * MS, probe.medianGapNs);
+    }
+
+    @Test
+    public void medianFollowsTheRecentWindow() {
+        FrameProbes.Probe probe = probe();
+        gaps(probe, 33, 32);
+        assertEquals(33 * MS, probe.medianGapNs);
+
+        // A full window of slower frames replaces the old ones.
+        gaps(probe, 66, 32);
+        assertEquals(66 * MS, probe.medianGapNs);
+    }
+
+    @Test
+    public void detectsFreezesAgainstTheMedian() {
+        FrameProbes.Probe probe = probe();
+        gaps(probe, 33, 8);
+
+        probe.onGap(99 * MS); // Exactly 3x: not a freeze.
+        probe.onGap(500 * MS);
+        probe.onGap(40 * MS);
+
+        assertEquals(1, probe.freezeCount);
+        assertEquals(500 * MS, probe.totalFreezesNs);
+    }
+
+    @Test
+    public void noFreezesBeforeTheMedianIsKnown() {
+        FrameProbes.Probe probe = probe();
+        probe.onGap(33 * MS);
+        probe.onGap(2000 * MS);
+
+        assertEquals(0, probe.freezeCount);
+    }
+}
@@ -0,0 +1,73 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.webrtc.IceCandidate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class IceCandidateBatchTest {
+    private final IceCandidateBatch batch = new IceCandidateBatch();
+
+    private static IceCandidate candidate(int n) {
+        return new IceCandidate("0", 0, "candidate:" + n);
+    }
+
+    @Test
+    public void onlyTheFirstPendingCandidateSchedulesAFlush() {
+        assertTrue(batch.add(candidate(1)));
+        assertFalse(batch.add(candidate(2)));
+        assertFalse(batch.add(candidate(3)));
+
+        batch.takePending();
+        assertTrue(batch.add(candidate(4)));
+    }
+
+    @Test
+    public void takesPendingCandidatesInOrderOnce() {
+        IceCandidate first = candidate(1);
+        IceCandidate second = candidate(2);
+        batch.add(first);
+        batch.add(second);
+
+        assertEquals(Arrays.asList(first, second), batch.takePending());
+        assertEquals(Collections.emptyList(), batch.takePending());
+    }
+
+    @Test
+    public void localDescriptionChangesWithEveryCandidate() {
+        batch.markLocalDescriptionSent();
+        assertFalse(batch.isLocalDescriptionChanged());
+
+        batch.add(candidate(1));
+        assertTrue(batch.isLocalDescriptionChanged());
+
+        batch.markLocalDescriptionSent();
+        assertFalse(batch.isLocalDescriptionChanged());
+    }
+
+    @Test
+    public void candidateAfterMarkingKeepsTheDescriptionChanged() {
+        batch.add(candidate(1));
+        // Marked before the description is read; a candidate arriving meanwhile must not be lost.
+        batch.markLocalDescriptionSent();
+        batch.add(candidate(2));
+
+        assertTrue(batch.isLocalDescriptionChanged());
+    }
+
+    @Test
+    public void clearDropsPendingCandidates() {
+        batch.add(candidate(1));
+        batch.clear();
+
+        List<IceCandidate> pending = batch.takePending();
+        assertTrue(pending.isEmpty());
+        assertTrue(batch.add(candidate(2)));
+    }
+}
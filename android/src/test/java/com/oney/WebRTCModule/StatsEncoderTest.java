@@ -0,0 +1,109 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class StatsEncoderTest {
+    private static String string(String value) {
+        StringBuilder sb = new StringBuilder();
+        StatsEncoder.appendString(sb, value);
+        return sb.toString();
+    }
+
+    private static String value(Object value) {
+        StringBuilder sb = new StringBuilder();
+        StatsEncoder.appendValue(sb, value);
+        return sb.toString();
+    }
+
+    private static RTCStatsReport report() {
+        Map<String, Object> inbound = new LinkedHashMap<>();
+        inbound.put("bytesReceived", BigInteger.valueOf(1234));
+        inbound.put("jitter", 0.5);
+        inbound.put("trackIdentifier", "track\"1");
+
+        Map<String, Object> pair = new LinkedHashMap<>();
+        pair.put("nominated", true);
+        pair.put("currentRoundTripTime", Double.NaN);
+
+        Map<String, RTCStats> stats = new LinkedHashMap<>();
+        stats.put("IT01", new RTCStats(2_000_000L, "inbound-rtp", "IT01", inbound));
+        stats.put("CP01", new RTCStats(2_000_000L, "candidate-pair", "CP01", pair));
+        return new RTCStatsReport(2_000_000L, stats);
+    }
+
+    @Test
+    public void escapesQuotesAndBackslashes() {
+        assertEquals("\"a\\\"b\\\\c\"", string("a\"b\\c"));
+    }
+
+    @Test
+    public void escapesControlCharacters() {
+        assertEquals("\"\\n\\r\\t\\b\\f\\u0001\"", string("\n\r\t\b\f\u0001"));
+    }
+
+    @Test
+    public void escapesLineAndParagraphSeparators() {
+        assertEquals("\"a\\u2028b\\u2029\"", string("a\u2028b\u2029"));
+    }
+
+    @Test
+    public void keepsOtherCharactersAsIs() {
+        assertEquals("\"zażółć 🎥\"", string("zażółć 🎥"));
+    }
+
+    @Test
+    public void encodesNonFiniteDoublesAsNull() {
+        assertEquals("null", value(Double.NaN));
+        assertEquals("null", value(Double.POSITIVE_INFINITY));
+        assertEquals("1.5", value(1.5));
+    }
+
+    @Test
+    public void encodesNestedValues() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a", new Object[] {1L, "x", null});
+        map.put("b", false);
+        assertEquals("{\"a\":[1,\"x\",null],\"b\":false}", value(map));
+        assertEquals("18446744073709551615", value(new BigInteger("18446744073709551615")));
+    }
+
+    @Test
+    public void encodesWholeReport() {
+        String json = StatsEncoder.get().encode(report());
+        assertEquals("[[\"IT01\",{\"timestamp\":2000.0,\"type\":\"inbound-rtp\",\"id\":\"IT01\","
+                        + "\"bytesReceived\":1234,\"jitter\":0.5,\"trackIdentifier\":\"track\\\"1\"}],"
+                        + "[\"CP01\",{\"timestamp\":2000.0,\"type\":\"candidate-pair\",\"id\":\"CP01\","
+                        + "\"nominated\":true,\"currentRoundTripTime\":null}]]",
+                json);
+    }
+
+    @Test
+    public void filtersTypesAndMembers() {
+        StatsEncoder.Filter filter = new StatsEncoder.Filter(
+                Collections.singleton("inbound-rtp"), new HashSet<>(Arrays.asList("jitter", "nominated")));
+        String json = StatsEncoder.get().encode(report(), filter);
+        // timestamp, type and id are always kept.
+        assertEquals("[[\"IT01\",{\"timestamp\":2000.0,\"type\":\"inbound-rtp\",\"id\":\"IT01\",\"jitter\":0.5}]]",
+                json);
+    }
+
+    @Test
+    public void reusedEncoderGivesTheSameOutput() {
+        StatsEncoder encoder = StatsEncoder.get();
+        String first = encoder.encode(report());
+        encoder.encode(new RTCStatsReport(0, Collections.<String, RTCStats>emptyMap()));
+        assertEquals(first, encoder.encode(report()));
+        assertEquals("[]", encoder.encode(new RTCStatsReport(0, Collections.<String, RTCStats>emptyMap())));
+    }
+}
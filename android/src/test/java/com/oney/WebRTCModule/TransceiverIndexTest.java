@@ -0,0 +1,116 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class TransceiverIndexTest {
+    private static final class FakeTransceiver {
+        final String senderId;
+        final String receiverId;
+
+        FakeTransceiver(String senderId, String receiverId) {
+            this.senderId = senderId;
+            this.receiverId = receiverId;
+        }
+    }
+
+    private static final class FakeSource implements TransceiverIndex.Source<FakeTransceiver> {
+        final List<FakeTransceiver> transceivers = new ArrayList<>();
+        int scans;
+
+        @Override
+        public List<FakeTransceiver> getTransceivers() {
+            scans++;
+            // Like PeerConnection.getTransceivers(), every scan hands out new wrappers.
+            List<FakeTransceiver> result = new ArrayList<>();
+            for (FakeTransceiver transceiver : transceivers) {
+                result.add(new FakeTransceiver(transceiver.senderId, transceiver.receiverId));
+            }
+            return result;
+        }
+
+        @Override
+        public String getSenderId(FakeTransceiver transceiver) {
+            return transceiver.senderId;
+        }
+
+        @Override
+        public String getReceiverId(FakeTransceiver transceiver) {
+            return transceiver.receiverId;
+        }
+    }
+
+    private final FakeSource source = new FakeSource();
+    private final TransceiverIndex<FakeTransceiver> index = new TransceiverIndex<>(source);
+
+    @Test
+    public void findsAddedTransceiversWithoutScanning() {
+        FakeTransceiver transceiver = new FakeTransceiver("s1", "r1");
+        assertSame(transceiver, index.add(transceiver));
+
+        assertSame(transceiver, index.getBySenderId("s1"));
+        assertSame(transceiver, index.getByReceiverId("r1"));
+        assertEquals(0, source.scans);
+    }
+
+    @Test
+    public void missRescansOnceAndPicksUpNewTransceivers() {
+        source.transceivers.add(new FakeTransceiver("s1", "r1"));
+
+        FakeTransceiver found = index.getBySenderId("s1");
+        assertEquals("r1", found.receiverId);
+        assertEquals(1, source.scans);
+
+        // Now indexed, so found without another scan.
+        assertSame(found, index.getByReceiverId("r1"));
+        assertEquals(1, source.scans);
+    }
+
+    @Test
+    public void unknownIdScansOnceAndGivesNull() {
+        assertNull(index.getBySenderId("missing"));
+        assertEquals(1, source.scans);
+    }
+
+    @Test
+    public void rescanReplacesStaleWrappers() {
+        FakeTransceiver added = new FakeTransceiver("s1", "r1");
+        index.add(added);
+        source.transceivers.add(added);
+
+        List<FakeTransceiver> scanned = index.rescan();
+
+        FakeTransceiver current = index.getBySenderId("s1");
+        assertSame(scanned.get(0), current);
+        assertSame(current, index.getByReceiverId("r1"));
+    }
+
+    @Test
+    public void rescanDropsRemovedTransceivers() {
+        source.transceivers.add(new FakeTransceiver("s1", "r1"));
+        source.transceivers.add(new FakeTransceiver("s2", "r2"));
+        index.rescan();
+        assertEquals(new HashSet<>(Arrays.asList("r1", "r2")), index.getReceiverIds());
+
+        source.transceivers.remove(0);
+        index.rescan();
+        assertEquals(new HashSet<>(Arrays.asList("r2")), index.getReceiverIds());
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        index.add(new FakeTransceiver("s1", "r1"));
+        index.clear();
+
+        assertEquals(0, index.getReceiverIds().size());
+        assertNull(index.getBySenderId("s1"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+public class TransceiverInfoDiffTest {
+    private final TransceiverInfoDiff diff = new TransceiverInfoDiff();
+
+    private static Map<String, Object> info(String direction, String transactionId) {
+        Map<String, Object> senderParameters = new HashMap<>();
+        senderParameters.put("transactionId", transactionId);
+        senderParameters.put("encodings", Collections.singletonList(Collections.singletonMap("active", true)));
+        Map<String, Object> receiverParameters = new HashMap<>();
+        receiverParameters.put("transactionId", "");
+
+        Map<String, Object> info = new HashMap<>();
+        info.put("transceiverId", "t1");
+        info.put("currentDirection", direction);
+        info.put("mid", "0");
+        info.put("senderRtpParameters", senderParameters);
+        info.put("receiverRtpParameters", receiverParameters);
+        return info;
+    }
+
+    @Test
+    public void firstUpdateIsSent() {
+        assertTrue(diff.record("t1", info("sendrecv", "a")));
+    }
+
+    @Test
+    public void unchangedUpdateIsSkippedDespiteNewTransactionId() {
+        diff.record("t1", info("sendrecv", "a"));
+        assertFalse(diff.record("t1", info("sendrecv", "b")));
+    }
+
+    @Test
+    public void changedUpdateIsSent() {
+        diff.record("t1", info("sendrecv", "a"));
+        assertTrue(diff.record("t1", info("recvonly", "a")));
+        assertFalse(diff.record("t1", info("recvonly", "a")));
+    }
+
+    @Test
+    public void recordLeavesTheSentUpdateIntact() {
+        Map<String, Object> info = info("sendrecv", "a");
+        diff.record("t1", info);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> senderParameters = (Map<String, Object>) info.get("senderRtpParameters");
+        assertEquals("a", senderParameters.get("transactionId"));
+    }
+
+    @Test
+    public void invalidatedUpdateIsSentAgain() {
+        diff.record("t1", info("sendrecv", "a"));
+        diff.invalidate("t1");
+        assertTrue(diff.record("t1", info("sendrecv", "a")));
+    }
+
+    @Test
+    public void retainReportsRemovedTransceiversOnce() {
+        diff.record("t1", info("sendrecv", "a"));
+        diff.record("t2", info("sendrecv", "a"));
+        diff.record("t3", info("sendrecv", "a"));
+
+        assertEquals(new HashSet<>(Arrays.asList("t1", "t3")),
+                new HashSet<>(diff.retain(Collections.singleton("t2"))));
+        assertEquals(Collections.emptyList(), diff.retain(Collections.singleton("t2")));
+        // A removed transceiver coming back counts as new.
+        assertTrue(diff.record("t1", info("sendrecv", "a")));
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        diff.record("t1", info("sendrecv", "a"));
+        diff.clear();
+
+        assertEquals(Collections.emptyList(), diff.retain(Collections.<String>emptySet()));
+        assertTrue(diff.record("t1", info("sendrecv", "a")));
+    }
+}
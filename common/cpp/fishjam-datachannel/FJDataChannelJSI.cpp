@@ -0,0 +1,130 @@
+#include "FJDataChannelJSI.h"
+
+namespace jsi = facebook::jsi;
+
+void FJDataChannel::install(std::function<void()> onInstalled) {
+    // Reset for re-install on JS reload: the handler registered by the previous
+    // runtime is gone along with it.
+    installed_.store(false);
+    hasHandler_.store(false);
+    std::weak_ptr<FJDataChannel> weakSelf = shared_from_this();
+    jsInvoker_->invokeAsync([weakSelf, onInstalled](jsi::Runtime &rt) {
+        auto self = weakSelf.lock();
+        if (!self) {
+            return;
+        }
+        self->callback_.reset();
+
+        auto send = jsi::Function::createFromHostFunction(
+            rt, jsi::PropNameID::forAscii(rt, "__fishjamWebrtcDataChannelSend"), 3,
+            [weakSelf](jsi::Runtime &rt, const jsi::Value &, const jsi::Value *args, size_t count) -> jsi::Value {
+                auto self = weakSelf.lock();
+                if (!self) {
+                    return jsi::Value(false);
+                }
+                return self->send(rt, args, count);
+            });
+        rt.global().setProperty(rt, "__fishjamWebrtcDataChannelSend", send);
+
+        auto setHandler = jsi::Function::createFromHostFunction(
+            rt, jsi::PropNameID::forAscii(rt, "__fishjamWebrtcSetDataChannelHandler"), 1,
+            [weakSelf](jsi::Runtime &rt, const jsi::Value &, const jsi::Value *args, size_t count) -> jsi::Value {
+                auto self = weakSelf.lock();
+                if (!self) {
+                    return jsi::Value::undefined();
+                }
+                if (count > 0 && args[0].isObject() && args[0].getObject(rt).isFunction(rt)) {
+                    self->callback_ = std::make_shared<jsi::Function>(args[0].getObject(rt).asFunction(rt));
+                } else {
+                    self->callback_.reset();
+                }
+                self->hasHandler_.store(self->callback_ != nullptr);
+                return jsi::Value::undefined();
+            });
+        rt.global().setProperty(rt, "__fishjamWebrtcSetDataChannelHandler", setHandler);
+
+        self->installed_.store(true);
+        if (onInstalled) {
+            onInstalled();
+        }
+    });
+}
+
+jsi::Value FJDataChannel::send(jsi::Runtime &rt, const jsi::Value *args, size_t count) {
+    // Per-message hot path: malformed arguments return false rather than
+    // throwing a jsi::JSError back into JS.
+    if (count < 3 || !args[0].isNumber() || !args[1].isString()) {
+        return jsi::Value(false);
+    }
+
+    std::shared_ptr<const SendFn> send;
+    {
+        std::lock_guard<std::mutex> lock(sendMutex_);
+        send = send_;
+    }
+    if (!send || !*send) {
+        return jsi::Value(false);
+    }
+
+    int pcId = static_cast<int>(args[0].asNumber());
+    std::string reactTag = args[1].asString(rt).utf8(rt);
+
+    if (args[2].isString()) {
+        std::string text = args[2].asString(rt).utf8(rt);
+        return jsi::Value((*send)(pcId, reactTag, reinterpret_cast<uint8_t *>(text.data()), text.size(), false));
+    }
+
+    if (!args[2].isObject()) {
+        return jsi::Value(false);
+    }
+    jsi::Object object = args[2].getObject(rt);
+    if (!object.isArrayBuffer(rt)) {
+        return jsi::Value(false);
+    }
+    jsi::ArrayBuffer buffer = object.getArrayBuffer(rt);
+    size_t size = buffer.size(rt);
+
+    // Optional slice, so an ArrayBufferView can be sent without copying it
+    // into a standalone ArrayBuffer first.
+    size_t byteOffset = 0;
+    size_t byteLength = size;
+    if (count >= 5 && args[3].isNumber() && args[4].isNumber()) {
+        double offset = args[3].asNumber();
+        double length = args[4].asNumber();
+        if (offset < 0 || length < 0 || offset + length > static_cast<double>(size)) {
+            return jsi::Value(false);
+        }
+        byteOffset = static_cast<size_t>(offset);
+        byteLength = static_cast<size_t>(length);
+    }
+
+    return jsi::Value((*send)(pcId, reactTag, buffer.data(rt) + byteOffset, byteLength, true));
+}
+
+void FJDataChannel::setSend(SendFn send) {
+    auto boxed = std::make_shared<const SendFn>(std::move(send));
+    std::lock_guard<std::mutex> lock(sendMutex_);
+    send_ = std::move(boxed);
+}
+
+void FJDataChannel::deliver(int pcId, std::string reactTag, bool binary, std::vector<uint8_t> bytes) {
+    std::weak_ptr<FJDataChannel> weakSelf = shared_from_this();
+    jsInvoker_->invokeAsync([weakSelf, pcId, reactTag = std::move(reactTag), binary,
+                             bytes = std::move(bytes)](jsi::Runtime &rt) mutable {
+        auto self = weakSelf.lock();
+        if (!self || !self->callback_) {
+            return;
+        }
+        jsi::Value data;
+        if (binary) {
+            data = jsi::ArrayBuffer(rt, std::make_shared<DataChannelMessageBuffer>(std::move(bytes)));
+        } else {
+            data = jsi::String::createFromUtf8(rt, bytes.data(), bytes.size());
+        }
+        try {
+            self->callback_->call(rt, jsi::Value(pcId), jsi::String::createFromUtf8(rt, reactTag), std::move(data));
+        } catch (const jsi::JSError &) {
+            // Drop this message if the JS handler throws.
+        }
+    });
+}
@@ -0,0 +1,83 @@
+// JSI channel for DataChannel messages, in both directions.
+//
+// Installs two globals on the JS runtime:
+//   * `__fishjamWebrtcDataChannelSend(pcId, reactTag, data[, byteOffset, byteLength])`
+//     sends a string or an ArrayBuffer (slice) synchronously. The bytes are
+//     handed to the platform send callback in place, without Base64 and
+//     without an intermediate copy on the JS side.
+//   * `__fishjamWebrtcSetDataChannelHandler(handler)` registers the JS callback
+//     that received messages are delivered to as `handler(pcId, reactTag, data)`,
+//     where `data` is a string for text messages and an ArrayBuffer for binary
+//     ones.
+//
+// Pure C++20; the jsi::Runtime is only touched on the JS thread.
+#pragma once
+
+#include <atomic>
+#include <cstddef>
+#include <cstdint>
+#include <functional>
+#include <memory>
+#include <mutex>
+#include <string>
+#include <vector>
+
+#include <ReactCommon/CallInvoker.h>
+#include <jsi/jsi.h>
+
+// Backs a JS ArrayBuffer with an owned byte vector (moved in, no copy).
+class DataChannelMessageBuffer : public facebook::jsi::MutableBuffer {
+   public:
+    explicit DataChannelMessageBuffer(std::vector<uint8_t> bytes) : bytes_(std::move(bytes)) {}
+    size_t size() const override { return bytes_.size(); }
+    uint8_t *data() override { return bytes_.data(); }
+
+   private:
+    std::vector<uint8_t> bytes_;
+};
+
+class FJDataChannel : public std::enable_shared_from_this<FJDataChannel> {
+   public:
+    // Called synchronously on the JS thread for every send. `data` points into
+    // JS-owned memory (ArrayBuffer or UTF-8 string) and is only valid for the
+    // duration of the call. Returns whether the message was queued.
+    using SendFn = std::function<
+        bool(int pcId, const std::string &reactTag, uint8_t *data, size_t size, bool binary)>;
+
+    explicit FJDataChannel(std::shared_ptr<facebook::react::CallInvoker> jsInvoker)
+        : jsInvoker_(std::move(jsInvoker)) {}
+
+    // Installs both globals; invokes onInstalled on the JS thread once ready.
+    // Re-runnable after a JS reload.
+    void install(std::function<void()> onInstalled);
+
+    bool isInstalled() const { return installed_.load(); }
+
+    // Whether JS has registered a receive handler. The platform layer samples
+    // this when a channel is created to decide how that channel's messages are
+    // delivered, so a channel never switches paths mid-stream.
+    bool hasHandler() const { return hasHandler_.load(); }
+
+    // Registers the platform send callback. Thread-safe: may be re-registered
+    // while sends are in flight.
+    void setSend(SendFn send);
+
+    // Delivers one received message to the JS handler. `bytes` is moved
+    // straight into the ArrayBuffer (binary) or decoded as UTF-8 (text).
+    // Messages are delivered in call order; they are dropped if no handler is
+    // registered.
+    void deliver(int pcId, std::string reactTag, bool binary, std::vector<uint8_t> bytes);
+
+   private:
+    facebook::jsi::Value send(facebook::jsi::Runtime &rt, const facebook::jsi::Value *args, size_t count);
+
+    std::shared_ptr<facebook::react::CallInvoker> jsInvoker_;
+    // Only touched on the JS thread.
+    std::shared_ptr<facebook::jsi::Function> callback_;
+    std::atomic<bool> hasHandler_{false};
+    // Swapped under sendMutex_; send() copies the shared_ptr under the lock and
+    // calls outside it.
+    std::mutex sendMutex_;
+    std::shared_ptr<const SendFn> send_;
+    std::atomic<bool> installed_{false};
+};
@@ -0,0 +1,223 @@
+/**
+ * JSI path for DataChannel messages (Android, New Architecture).
+ *
+ * Binary messages are sent and received as ArrayBuffers through two JSI
+ * globals instead of Base64 strings over bridge events. Whether a channel uses
+ * this path is decided natively when the channel is created (`info.jsi`), so
+ * channels created before the binding finished installing simply keep using
+ * events. Everywhere else this module is a no-op.
+ *
+ * @module DataChannelJSI
+ */
+import { NativeModules, Platform } from 'react-native';
+
+import Logger from './Logger';
+import type RTCDataChannel from './RTCDataChannel';
+
+const log = new Logger('dataChannelJSI');
+
+const { WebRTCModule } = NativeModules;
+
+export type DataChannelMessage = string | ArrayBuffer;
+
+// Installed natively once the JSI binding is in place (see installDataChannelJSI).
+declare const global: {
+    __fishjamWebrtcDataChannelSend?: (
+        pcId: number,
+        reactTag: string,
+        data: DataChannelMessage,
+        byteOffset?: number,
+        byteLength?: number,
+    ) => boolean;
+    __fishjamWebrtcSetDataChannelHandler?: (
+        handler: (
+            pcId: number,
+            reactTag: string,
+            data: DataChannelMessage,
+        ) => void,
+    ) => void;
+};
+
+// The old architecture has no JSI-capable invoker, so the install may never
+// resolve — cap the wait rather than hang.
+const INSTALL_TIMEOUT_MS = 10_000;
+
+// Upper bound of messages held for a channel whose JS object doesn't exist yet.
+const MAX_PENDING_MESSAGES = 1024;
+
+// How long messages are held for a channel whose JS object never shows up
+// (e.g. its peer connection was closed before the open event arrived).
+const PENDING_MESSAGES_TIMEOUT_MS = 30_000;
+
+type PendingMessages = {
+    messages: DataChannelMessage[];
+    dropped: number;
+    timeoutId: ReturnType<typeof setTimeout>;
+};
+
+const channels = new Map<string, RTCDataChannel>();
+const pendingMessages = new Map<string, PendingMessages>();
+let installPromise: Promise<void> | null = null;
+
+function channelKey(pcId: number, reactTag: string): string {
+    return `${pcId}:${reactTag}`;
+}
+
+function dispatch(pcId: number, reactTag: string, data: DataChannelMessage) {
+    const key = channelKey(pcId, reactTag);
+    const channel = channels.get(key);
+
+    if (channel) {
+        channel._receiveMessage(data);
+
+        return;
+    }
+
+    // The first messages of a remote channel can overtake the
+    // peerConnectionDidOpenDataChannel event; hold them until it arrives.
+    let pending = pendingMessages.get(key);
+
+    if (!pending) {
+        pending = {
+            messages: [],
+            dropped: 0,
+            timeoutId: setTimeout(
+                () => discardPending(key),
+                PENDING_MESSAGES_TIMEOUT_MS,
+            ),
+        };
+        pendingMessages.set(key, pending);
+    }
+
+    if (pending.messages.length < MAX_PENDING_MESSAGES) {
+        pending.messages.push(data);
+    } else if (pending.dropped++ === 0) {
+        log.warn(`Channel ${key} not open yet, dropping further messages`);
+    }
+}
+
+function takePending(key: string): PendingMessages | null {
+    const pending = pendingMessages.get(key);
+
+    if (!pending) {
+        return null;
+    }
+
+    clearTimeout(pending.timeoutId);
+    pendingMessages.delete(key);
+
+    if (pending.dropped > 0) {
+        log.warn(`Channel ${key} lost ${pending.dropped} early messages`);
+    }
+
+    return pending;
+}
+
+function discardPending(key: string) {
+    const pending = takePending(key);
+
+    if (pending) {
+        const count = pending.messages.length;
+
+        log.warn(`Channel ${key} never opened, discarding ${count} messages`);
+    }
+}
+
+/**
+ * Installs the native binding and registers the receive handler, once. Never
+ * rejects: without the binding DataChannels keep using events.
+ */
+export function installDataChannelJSI(): Promise<void> {
+    if (installPromise) {
+        return installPromise;
+    }
+
+    if (
+        Platform.OS !== 'android' ||
+        typeof WebRTCModule.installDataChannelJSI !== 'function'
+    ) {
+        installPromise = Promise.resolve();
+
+        return installPromise;
+    }
+
+    let timeoutId!: ReturnType<typeof setTimeout>;
+    const timeout = new Promise<never>((_, reject) => {
+        timeoutId = setTimeout(
+            () => reject(new Error('DataChannel JSI install timed out.')),
+            INSTALL_TIMEOUT_MS,
+        );
+    });
+    const install = WebRTCModule.installDataChannelJSI().then(() => {
+        if (
+            typeof global.__fishjamWebrtcSetDataChannelHandler !== 'function'
+        ) {
+            throw new Error('DataChannel JSI binding was not installed.');
+        }
+
+        global.__fishjamWebrtcSetDataChannelHandler(dispatch);
+    });
+
+    installPromise = Promise.race([install, timeout])
+        .finally(() => clearTimeout(timeoutId))
+        .catch((cause: unknown) => {
+            log.debug(`DataChannel JSI unavailable: ${String(cause)}`);
+        });
+
+    return installPromise;
+}
+
+/**
+ * Starts routing received messages to the given channel. Returns the messages
+ * which arrived before the channel existed, if any.
+ */
+export function registerChannel(
+    channel: RTCDataChannel,
+): DataChannelMessage[] | null {
+    const key = channelKey(channel._peerConnectionId, channel._reactTag);
+    const pending = takePending(key);
+
+    channels.set(key, channel);
+
+    return pending?.messages ?? null;
+}
+
+export function unregisterChannel(channel: RTCDataChannel): void {
+    const key = channelKey(channel._peerConnectionId, channel._reactTag);
+
+    channels.delete(key);
+    takePending(key);
+}
+
+/**
+ * Whether the native send binding is installed. Without it messages have to
+ * go through the bridge.
+ */
+export function canSendMessages(): boolean {
+    return typeof global.__fishjamWebrtcDataChannelSend === 'function';
+}
+
+/**
+ * Sends a message through the JSI global. `byteOffset` / `byteLength` select a
+ * slice of `data` so ArrayBufferViews are sent without copying. Returns false
+ * if the binding is missing or the message could not be queued.
+ */
+export function sendMessage(
+    pcId: number,
+    reactTag: string,
+    data: DataChannelMessage,
+    byteOffset?: number,
+    byteLength?: number,
+): boolean {
+    const send = global.__fishjamWebrtcDataChannelSend;
+
+    if (typeof send !== 'function') {
+        return false;
+    }
+
+    if (typeof data === 'string' || byteOffset === undefined) {
+        return send(pcId, reactTag, data);
+    }
+
+    return send(pcId, reactTag, data, byteOffset, byteLength);
+}
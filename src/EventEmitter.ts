@@ -20,13 +20,17 @@ const NATIVE_EVENTS = [
     'peerConnectionIceConnectionChanged',
     'peerConnectionIceGatheringChanged',
     'peerConnectionGotICECandidate',
+    'peerConnectionGotICECandidates',
     'peerConnectionDidOpenDataChannel',
     'peerConnectionOnRemoveTrack',
     'peerConnectionOnTrack',
+    'peerConnectionStatsDelta',
     'dataChannelStateChanged',
     'dataChannelReceiveMessage',
+    'dataChannelReceiveMessages',
     'dataChannelDidChangeBufferedAmount',
     'mediaStreamTrackMuteChanged',
+    'mediaStreamTrackLiveness',
     'mediaStreamTrackEnded',
     'callKitActionPerformed',
     'voipPushEvent',
@@ -35,7 +39,13 @@ const NATIVE_EVENTS = [
     'livestreamStatusChanged',
 ];
 
-const ANDROID_ONLY_EVENTS = ['telecomActionPerformed'];
+const ANDROID_ONLY_EVENTS = [
+    'telecomActionPerformed',
+    'dataChannelReceiveMessages',
+    'peerConnectionStatsDelta',
+    'mediaStreamTrackLiveness',
+    'peerConnectionGotICECandidates',
+];
 
 const eventEmitter = new EventEmitter();
 
@@ -1,4 +1,4 @@
-import { NativeModules } from 'react-native';
+import { NativeModules, Platform } from 'react-native';
 
 import { MediaTrackConstraints } from './Constraints';
 import { addListener, removeListener } from './EventEmitter';
@@ -16,6 +16,49 @@ const { WebRTCModule } = NativeModules;
 
 type MediaStreamTrackState = 'live' | 'ended';
 
+type ScreenCaptureStats = {
+    realFrames: number;
+    repeatedFrames: number;
+    burstRepeatedFrames: number;
+    // Only with the `frameFilter` getDisplayMedia constraint.
+    capturedFrames?: number;
+    droppedUnchangedFrames?: number;
+    dropRatio?: number;
+};
+
+type VideoEffectsStats = {
+    // Whether the effects run on their own GL worker (see
+    // WebRTCModuleOptions.pipelinedVideoEffects).
+    pipelined: boolean;
+    droppedFrames: number;
+    processors: {
+        name: string;
+        frames: number;
+        refreshes: number;
+        lastMs: number;
+        maxMs: number;
+        averageMs: number;
+    }[];
+};
+
+type FrameProbeStats = {
+    pcId: number;
+    trackId: string;
+    frames: number;
+    resolutionChanges: number;
+    width?: number;
+    height?: number;
+    lastFrameAgeMs?: number;
+    medianGapMs?: number;
+    // Gaps above 3x the median gap.
+    freezeCount: number;
+    totalFreezesDurationMs: number;
+    // gapCounts[i] counts the gaps below gapBucketBoundsMs[i] (and not below
+    // the previous bound); the last count is for the rest.
+    gapBucketBoundsMs: number[];
+    gapCounts: number[];
+};
+
 export type MediaStreamTrackInfo = {
     id: string;
     kind: string;
@@ -176,6 +219,43 @@ export default class MediaStreamTrack extends EventTarget<MediaStreamTrackEventM
         this._setVideoEffects([name]);
     }
 
+    /**
+     * Custom API: per-effect latency counters of the effects set with
+     * `_setVideoEffects`, and the frames the pipelined mode dropped.
+     * Android only, resolves with null elsewhere and without effects.
+     */
+    _getVideoEffectsStats(): Promise<VideoEffectsStats | null> {
+        if (Platform.OS !== 'android' || this.remote) {
+            return Promise.resolve(null);
+        }
+
+        return WebRTCModule.mediaStreamTrackGetVideoEffectsStats(this.id);
+    }
+
+    /**
+     * Custom API: frame counters of a screen capture track: the real frames,
+     * the repeats of the last frame (so the encode load caused by repeats can
+     * be seen) and, with a `frameFilter`, the frames dropped as unchanged.
+     * Android only, resolves with null elsewhere and for other tracks.
+     */
+    _getScreenCaptureStats(): Promise<ScreenCaptureStats | null> {
+        if (Platform.OS !== 'android' || this.remote) {
+            return Promise.resolve(null);
+        }
+
+        return WebRTCModule.mediaStreamTrackGetScreenCaptureStats(this.id);
+    }
+
+    /**
+     * Custom API: the name `_getScreenCaptureStats` had before it also
+     * reported the frames dropped as unchanged.
+     *
+     * @deprecated Use `_getScreenCaptureStats`.
+     */
+    _getFrameRepeatStats(): Promise<ScreenCaptureStats | null> {
+        return this._getScreenCaptureStats();
+    }
+
     /**
      * Internal function which is used to set the muted state on remote tracks and
      * emit the mute / unmute event.
@@ -191,6 +271,24 @@ export default class MediaStreamTrack extends EventTarget<MediaStreamTrackEventM
         this.dispatchEvent(new Event(muted ? 'mute' : 'unmute'));
     }
 
+    /**
+     * Internal function which is used to record the frame rate and resolution
+     * measured natively on remote video tracks, so they show up in
+     * getSettings().
+     */
+    _setMeasuredSettingsInternal(
+        frameRate: number,
+        width?: number,
+        height?: number,
+    ) {
+        this._settings.frameRate = frameRate;
+
+        if (width !== undefined && height !== undefined) {
+            this._settings.width = width;
+            this._settings.height = height;
+        }
+    }
+
     /**
      * Custom API for setting the volume on an individual audio track.
      *
@@ -208,6 +306,39 @@ export default class MediaStreamTrack extends EventTarget<MediaStreamTrackEventM
         );
     }
 
+    /**
+     * Custom API: starts (or stops) counting the frames of this video track
+     * natively, see `MediaStreamTrack._getFrameProbeStats`. Android only, a
+     * no-op elsewhere.
+     */
+    _setFrameProbe(enabled: boolean) {
+        if (this.kind !== 'video') {
+            throw new Error('Only implemented for video tracks');
+        }
+
+        if (Platform.OS !== 'android') {
+            return;
+        }
+
+        WebRTCModule.mediaStreamTrackSetFrameProbe(
+            this.remote ? this._peerConnectionId : -1,
+            this.id,
+            enabled,
+        );
+    }
+
+    /**
+     * Custom API: frame counters of every track with a frame probe, local and
+     * remote, in one call. Android only, resolves with an empty list elsewhere.
+     */
+    static _getFrameProbeStats(): Promise<FrameProbeStats[]> {
+        if (Platform.OS !== 'android') {
+            return Promise.resolve([]);
+        }
+
+        return WebRTCModule.getFrameProbeStats();
+    }
+
     /**
      * Applies a new set of constraints to the track.
      *
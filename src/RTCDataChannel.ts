@@ -1,6 +1,13 @@
 import * as base64 from 'base64-js';
-import { NativeModules } from 'react-native';
+import { NativeModules, Platform } from 'react-native';
 
+import {
+    DataChannelMessage,
+    canSendMessages,
+    registerChannel,
+    sendMessage,
+    unregisterChannel,
+} from './DataChannelJSI';
 import { addListener, removeListener } from './EventEmitter';
 import MessageEvent from './MessageEvent';
 import RTCDataChannelEvent from './RTCDataChannelEvent';
@@ -14,6 +21,21 @@ const { WebRTCModule } = NativeModules;
 
 type RTCDataChannelState = 'connecting' | 'open' | 'closing' | 'closed';
 
+/**
+ * Receive batching options (Android only, non-standard). Received messages are
+ * coalesced into a single native event, flushed after `windowMs` or once
+ * `maxMessages` / `maxBytes` are pending. Messages are still dispatched one by
+ * one and in order; only the bridge traffic is batched.
+ */
+export type RTCDataChannelBatchingOptions = {
+    /** Flush window in milliseconds (default `16`). */
+    windowMs?: number;
+    /** Flush once this many messages are pending (default `64`). */
+    maxMessages?: number;
+    /** Flush once this many payload bytes are pending (default `65536`). */
+    maxBytes?: number;
+};
+
 type DataChannelEventMap = {
     bufferedamountlow: RTCDataChannelEvent<'bufferedamountlow'>;
     close: RTCDataChannelEvent<'close'>;
@@ -35,6 +57,8 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
     _ordered: boolean;
     _protocol: string;
     _readyState: RTCDataChannelState;
+    _jsi: boolean;
+    _jsiBacklog: DataChannelMessage[] | null;
 
     binaryType = 'arraybuffer'; // we only support 'arraybuffer'
     bufferedAmountLowThreshold = 0;
@@ -54,8 +78,20 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
         this._protocol = info.protocol || '';
         this._negotiated = Boolean(info.negotiated);
         this._readyState = info.readyState;
+        this._jsi = Boolean(info.jsi);
+        this._jsiBacklog = null;
 
         this._registerEvents();
+
+        if (this._jsi) {
+            this._jsiBacklog = registerChannel(this);
+
+            // Messages which arrived before this object existed are dispatched
+            // once the creator had a chance to attach its handlers.
+            if (this._jsiBacklog) {
+                Promise.resolve().then(() => this._flushJSIBacklog());
+            }
+        }
     }
 
     get onbufferedamountlow() {
@@ -146,6 +182,12 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
     send(data: ArrayBuffer): void;
     send(data: ArrayBufferView): void;
     send(data: string | ArrayBuffer | ArrayBufferView): void {
+        if (this._jsi && canSendMessages()) {
+            this._sendJSI(data);
+
+            return;
+        }
+
         if (typeof data === 'string') {
             WebRTCModule.dataChannelSend(
                 this._peerConnectionId,
@@ -182,6 +224,74 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
         );
     }
 
+    _sendJSI(data: string | ArrayBuffer | ArrayBufferView): void {
+        let sent: boolean;
+
+        if (typeof data === 'string' || data instanceof ArrayBuffer) {
+            sent = sendMessage(this._peerConnectionId, this._reactTag, data);
+        } else if (ArrayBuffer.isView(data)) {
+            sent = sendMessage(
+                this._peerConnectionId,
+                this._reactTag,
+                data.buffer as ArrayBuffer,
+                data.byteOffset,
+                data.byteLength,
+            );
+        } else {
+            throw new TypeError(
+                'Data must be either string, ArrayBuffer, or ArrayBufferView',
+            );
+        }
+
+        if (!sent) {
+            // The channel isn't open (anymore) or its send buffer is full.
+            throw new Error('Failed to send the message on the data channel');
+        }
+    }
+
+    /**
+     * Called by the JSI dispatcher for every received message. Messages can
+     * overtake the 'open' state event (which goes through the bridge), so they
+     * are held back until it has been dispatched.
+     */
+    _receiveMessage(data: DataChannelMessage): void {
+        if (this._jsiBacklog || this._readyState === 'connecting') {
+            this._jsiBacklog = this._jsiBacklog || [];
+            this._jsiBacklog.push(data);
+
+            return;
+        }
+
+        this.dispatchEvent(new MessageEvent('message', { data }));
+    }
+
+    _flushJSIBacklog(): void {
+        const backlog = this._jsiBacklog;
+
+        this._jsiBacklog = null;
+
+        backlog?.forEach((data) =>
+            this.dispatchEvent(new MessageEvent('message', { data })),
+        );
+    }
+
+    /**
+     * Turns receive batching on, or off when called with `null`. Non-standard,
+     * Android only; a no-op elsewhere. Channels using the JSI message path
+     * only batch their buffered amount updates.
+     */
+    setReceiveBatching(options: RTCDataChannelBatchingOptions | null): void {
+        if (Platform.OS !== 'android') {
+            return;
+        }
+
+        WebRTCModule.dataChannelSetBatching(
+            this._peerConnectionId,
+            this._reactTag,
+            options,
+        );
+    }
+
     close(): void {
         if (this._readyState === 'closing' || this._readyState === 'closed') {
             return;
@@ -206,6 +316,7 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
                 this.dispatchEvent(
                     new RTCDataChannelEvent('open', { channel: this }),
                 );
+                this._flushJSIBacklog();
             } else if (this._readyState === 'closing') {
                 this.dispatchEvent(
                     new RTCDataChannelEvent('closing', { channel: this }),
@@ -218,6 +329,10 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
                 // This DataChannel is done, clean up event handlers.
                 removeListener(this);
 
+                if (this._jsi) {
+                    unregisterChannel(this);
+                }
+
                 WebRTCModule.dataChannelDispose(
                     this._peerConnectionId,
                     this._reactTag,
@@ -230,13 +345,21 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
                 return;
             }
 
-            let data = ev.data;
+            this._dispatchNativeMessage(ev);
+        });
 
-            if (ev.type === 'binary') {
-                data = base64.toByteArray(ev.data).buffer;
+        addListener(this, 'dataChannelReceiveMessages', (ev: any) => {
+            if (ev.reactTag !== this._reactTag) {
+                return;
             }
 
-            this.dispatchEvent(new MessageEvent('message', { data }));
+            for (const message of ev.messages) {
+                this._dispatchNativeMessage(message);
+            }
+
+            if (ev.bufferedAmount !== undefined) {
+                this._setBufferedAmount(ev.bufferedAmount);
+            }
         });
 
         addListener(this, 'dataChannelDidChangeBufferedAmount', (ev: any) => {
@@ -244,15 +367,29 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
                 return;
             }
 
-            this._bufferedAmount = ev.bufferedAmount;
-
-            if (this._bufferedAmount < this.bufferedAmountLowThreshold) {
-                this.dispatchEvent(
-                    new RTCDataChannelEvent('bufferedamountlow', {
-                        channel: this,
-                    }),
-                );
-            }
+            this._setBufferedAmount(ev.bufferedAmount);
         });
     }
+
+    _dispatchNativeMessage(message: { type: string; data: string }): void {
+        let data: string | ArrayBuffer = message.data;
+
+        if (message.type === 'binary') {
+            data = base64.toByteArray(message.data).buffer as ArrayBuffer;
+        }
+
+        this.dispatchEvent(new MessageEvent('message', { data }));
+    }
+
+    _setBufferedAmount(bufferedAmount: number): void {
+        this._bufferedAmount = bufferedAmount;
+
+        if (this._bufferedAmount < this.bufferedAmountLowThreshold) {
+            this.dispatchEvent(
+                new RTCDataChannelEvent('bufferedamountlow', {
+                    channel: this,
+                }),
+            );
+        }
+    }
 }
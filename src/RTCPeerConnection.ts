@@ -1,5 +1,6 @@
-import { NativeModules } from 'react-native';
+import { NativeModules, Platform } from 'react-native';
 
+import { installDataChannelJSI } from './DataChannelJSI';
 import { addListener, removeListener } from './EventEmitter';
 import Logger from './Logger';
 import MediaStream from './MediaStream';
@@ -20,7 +21,14 @@ import RTCSessionDescription, {
 } from './RTCSessionDescription';
 import RTCTrackEvent from './RTCTrackEvent';
 import * as RTCUtil from './RTCUtil';
-import { RTCOfferOptions } from './RTCUtil';
+import {
+    applyStatsDelta,
+    filterStatsReport,
+    RTCOfferOptions,
+    RTCStatsDelta,
+    RTCStatsFilter,
+    RTCStatsSubscriptionOptions,
+} from './RTCUtil';
 import {
     Event,
     EventTarget,
@@ -98,6 +106,148 @@ type RTCPeerConnectionEventMap = {
 
 let nextPeerConnectionId = 0;
 
+type RTCStreamQuality = {
+    id: string;
+    kind?: string;
+    mid?: string;
+    ssrc?: number;
+    bitrate?: number;
+    packetLossRate?: number;
+    jitter?: number;
+    framesPerSecond?: number;
+    roundTripTime?: number;
+    freezeCount?: number;
+    recentFreezeCount?: number;
+};
+
+export type RTCQualitySnapshot = {
+    timestamp?: number;
+    roundTripTime?: number;
+    availableOutgoingBitrate?: number;
+    availableIncomingBitrate?: number;
+    senders: RTCStreamQuality[];
+    receivers: RTCStreamQuality[];
+};
+
+export type RTCWarmPoolStats = {
+    size: number;
+    idle: number;
+    hits: number;
+    misses: number;
+    avgHitInitMs: number;
+    avgMissInitMs: number;
+    maxHitInitMs: number;
+    maxMissInitMs: number;
+};
+
+export type RTCCertificateStoreStats = {
+    stockSize: number;
+    stocked: number;
+    hits: number;
+    misses: number;
+    generated: number;
+    avgGenerateMs: number;
+};
+
+export type RTCHardwareCodecLimits = {
+    codecName: string;
+    mimeType: string;
+    encoder: boolean;
+    maxWidth: number;
+    maxHeight: number;
+    maxFrameRate: number;
+    maxInstances: number;
+};
+
+export type RTCVideoEncoderSelection = {
+    hardware: boolean;
+    demoted: boolean;
+    callFailures: number;
+    framesSubmitted: number;
+    framesEncoded: number;
+    failures: number;
+    throughputFps: number;
+    avgLatencyMs: number;
+    avgEncodeCallMs: number;
+};
+
+export type RTCDecoderAssignments = {
+    // Absent when the decoder budget is off.
+    maxHardwareDecoders?: number;
+    decoders: {
+        // Absent until the decoder is matched to its track.
+        trackId?: string;
+        codec: string;
+        decoder: 'hardware' | 'software' | 'paused';
+        area: number;
+    }[];
+};
+
+export type RTCExecutorLaneStats = {
+    name: string;
+    queueDepth: number;
+    maxQueueDepth: number;
+    submitted: number;
+    completed: number;
+    totalWaitMs: number;
+    maxWaitMs: number;
+    lastWaitMs: number;
+};
+
+export type RTCBlockingCallStats = {
+    method: string;
+    calls: number;
+    inlineCalls: number;
+    totalBlockedMs: number;
+    maxBlockedMs: number;
+    lastBlockedMs: number;
+};
+
+type RTCStatsListener = (report: Map<string, any>) => void;
+
+const DEFAULT_STATS_INTERVAL_MS = 1000;
+const MIN_STATS_INTERVAL_MS = 100;
+
+/**
+ * Normalizes a configuration the way native code expects it. Modifies it in
+ * place.
+ */
+function sanitizeConfiguration(configuration: RTCConfiguration): void {
+    // Sanitize ICE servers.
+    const servers = configuration.iceServers ?? [];
+
+    for (const server of servers) {
+        let urls = server.url || server.urls;
+
+        delete server.url;
+        delete server.urls;
+
+        if (!urls) {
+            continue;
+        }
+
+        if (!Array.isArray(urls)) {
+            urls = [urls];
+        }
+
+        // Native WebRTC does case sensitive parsing.
+        server.urls = urls.map((url) => url.toLowerCase());
+    }
+
+    // Filter out bogus servers.
+    configuration.iceServers = servers.filter((s) => s.urls);
+
+    // Sanitize certificates.
+    if (configuration.certificates) {
+        // @ts-ignore
+        configuration.certificates = configuration.certificates.map((cert) => {
+            return {
+                certificateId: cert._id,
+            };
+        });
+    }
+}
+
 export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEventMap> {
     localDescription: RTCSessionDescription | null = null;
     remoteDescription: RTCSessionDescription | null = null;
@@ -110,6 +260,10 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
     _transceivers: { order: number; transceiver: RTCRtpTransceiver }[];
     _remoteStreams: Map<string, MediaStream>;
     _pendingTrackEvents: any[];
+    _statsListener: RTCStatsListener | null = null;
+    // Last report built from native deltas; null until the first full one.
+    _statsReport: Map<string, any> | null = null;
+    _statsTimer: ReturnType<typeof setInterval> | null = null;
 
     static generateCertificate(
         keygenAlgorithm:
@@ -152,47 +306,138 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
         );
     }
 
-    constructor(configuration?: RTCConfiguration) {
-        super();
+    /**
+     * How often certificates came from the pre-generated stock (see
+     * `WebRTCModuleOptions.certificateStockSize`) and how long generating
+     * them takes. Android only.
+     */
+    static _getCertificateStats(): Promise<RTCCertificateStoreStats | null> {
+        if (Platform.OS !== 'android') {
+            return Promise.resolve(null);
+        }
 
-        this._pcId = nextPeerConnectionId++;
+        return WebRTCModule.getCertificateStoreStats();
+    }
+
+    /**
+     * Keeps `size` PeerConnections warm for the given configuration, with
+     * their certificates already generated and, with `preGatherCandidates`,
+     * ICE candidates gathered ahead of time. A PeerConnection later
+     * constructed with an equal configuration takes one of them instead of
+     * creating its own. A size of 0 disables the pool. Android only, a no-op
+     * elsewhere.
+     */
+    static _configureWarmPool(
+        configuration: RTCConfiguration | undefined,
+        size: number,
+        options: { preGatherCandidates?: boolean } = {},
+    ): void {
+        if (Platform.OS !== 'android') {
+            return;
+        }
+
+        let sanitized: RTCConfiguration | undefined;
 
-        // Sanitize ICE servers.
         if (configuration) {
-            const servers = configuration?.iceServers ?? [];
+            // Sanitized like the constructor does, without touching the
+            // caller's object so it can still be passed to the constructor.
+            sanitized = {
+                ...configuration,
+                iceServers: configuration.iceServers?.map((s) => ({ ...s })),
+            };
+            sanitizeConfiguration(sanitized);
+        }
 
-            for (const server of servers) {
-                let urls = server.url || server.urls;
+        WebRTCModule.peerConnectionPoolConfigure(sanitized, size, options);
+    }
 
-                delete server.url;
-                delete server.urls;
+    /**
+     * Hit/miss counts and init latencies of the warm pool, see
+     * `_configureWarmPool`. Android only.
+     */
+    static _getWarmPoolStats(): Promise<RTCWarmPoolStats | null> {
+        if (Platform.OS !== 'android') {
+            return Promise.resolve(null);
+        }
 
-                if (!urls) {
-                    continue;
-                }
+        return WebRTCModule.getPeerConnectionPoolStats();
+    }
 
-                if (!Array.isArray(urls)) {
-                    urls = [urls];
-                }
+    /**
+     * The hardware video encoders and decoders of the device, with the
+     * largest resolution, frame rate and number of instances each supports.
+     * Android only, resolves with an empty list elsewhere.
+     */
+    static _getHardwareCodecLimits(): Promise<RTCHardwareCodecLimits[]> {
+        if (Platform.OS !== 'android') {
+            return Promise.resolve([]);
+        }
 
-                // Native WebRTC does case sensitive parsing.
-                server.urls = urls.map((url) => url.toLowerCase());
-            }
+        return WebRTCModule.getHardwareCodecLimits();
+    }
 
-            // Filter out bogus servers.
-            configuration.iceServers = servers.filter((s) => s.urls);
-
-            // Sanitize certificates.
-            if (configuration.certificates) {
-                // @ts-ignore
-                configuration.certificates = configuration.certificates.map(
-                    (cert) => {
-                        return {
-                            certificateId: cert._id,
-                        };
-                    },
-                );
-            }
+    /**
+     * Whether VP8, VP9 and AV1 are encoded in hardware, by codec name, with
+     * the benchmark results behind that (see
+     * `WebRTCModuleOptions.benchmarkVideoEncoders`). Android only, resolves
+     * with an empty object elsewhere.
+     */
+    static _getVideoEncoderSelection(): Promise<
+        Record<string, RTCVideoEncoderSelection>
+    > {
+        if (Platform.OS !== 'android') {
+            return Promise.resolve({});
+        }
+
+        return WebRTCModule.getVideoEncoderSelection();
+    }
+
+    /**
+     * Which remote video tracks got a hardware decoder from the decoder
+     * budget (see `WebRTCModuleOptions.budgetHardwareVideoDecoders`). Android
+     * only, resolves with no decoders elsewhere.
+     */
+    static _getDecoderAssignments(): Promise<RTCDecoderAssignments> {
+        if (Platform.OS !== 'android') {
+            return Promise.resolve({ decoders: [] });
+        }
+
+        return WebRTCModule.getDecoderAssignments();
+    }
+
+    /**
+     * Queue depths and wait times of the native executor lanes: the global
+     * one, then one per live peer connection. Android only, resolves with an
+     * empty list elsewhere.
+     */
+    static _getExecutorLaneStats(): Promise<RTCExecutorLaneStats[]> {
+        if (Platform.OS !== 'android') {
+            return Promise.resolve([]);
+        }
+
+        return WebRTCModule.getExecutorLaneStats();
+    }
+
+    /**
+     * How long each synchronous native call (addTrack, addTransceiver,
+     * createDataChannel, ...) blocked the JS thread. Android only, resolves
+     * with an empty list elsewhere.
+     */
+    static _getBlockingCallStats(): Promise<RTCBlockingCallStats[]> {
+        if (Platform.OS !== 'android') {
+            return Promise.resolve([]);
+        }
+
+        return WebRTCModule.getBlockingCallStats();
+    }
+
+    constructor(configuration?: RTCConfiguration) {
+        super();
+
+        this._pcId = nextPeerConnectionId++;
+
+        if (configuration) {
+            sanitizeConfiguration(configuration);
         }
 
         if (!WebRTCModule.peerConnectionInit(configuration, this._pcId)) {
@@ -207,6 +452,10 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
 
         this._registerEvents();
 
+        // DataChannels created once this has resolved exchange messages over
+        // JSI (Android only, no-op elsewhere).
+        installDataChannelJSI();
+
         log.debug(`${this._pcId} ctor`);
     }
 
@@ -293,8 +542,12 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
     async createOffer(options?: RTCOfferOptions) {
         log.debug(`${this._pcId} createOffer`);
 
-        const { sdpInfo, newTransceivers, transceiversInfo } =
-            await WebRTCModule.peerConnectionCreateOffer(
+        const {
+            sdpInfo,
+            newTransceivers,
+            transceiversInfo,
+            removedTransceiverIds,
+        } = await WebRTCModule.peerConnectionCreateOffer(
                 this._pcId,
                 RTCUtil.normalizeOfferOptions(options),
             );
@@ -323,7 +576,11 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
             this._insertTransceiverSorted(transceiverOrder, newTransceiver);
         });
 
-        this._updateTransceivers(transceiversInfo);
+        this._updateTransceivers(
+            transceiversInfo,
+            /* removeStopped */ false,
+            removedTransceiverIds,
+        );
 
         return sdpInfo;
     }
@@ -331,10 +588,14 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
     async createAnswer() {
         log.debug(`${this._pcId} createAnswer`);
 
-        const { sdpInfo, transceiversInfo } =
+        const { sdpInfo, transceiversInfo, removedTransceiverIds } =
             await WebRTCModule.peerConnectionCreateAnswer(this._pcId, {});
 
-        this._updateTransceivers(transceiversInfo);
+        this._updateTransceivers(
+            transceiversInfo,
+            /* removeStopped */ false,
+            removedTransceiverIds,
+        );
 
         return sdpInfo;
     }
@@ -365,7 +626,7 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
             desc = null;
         }
 
-        const { sdpInfo, transceiversInfo } =
+        const { sdpInfo, transceiversInfo, removedTransceiverIds } =
             await WebRTCModule.peerConnectionSetLocalDescription(
                 this._pcId,
                 desc,
@@ -380,6 +641,7 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
         this._updateTransceivers(
             transceiversInfo,
             /* removeStopped */ desc?.type === 'answer',
+            removedTransceiverIds,
         );
 
         log.debug(`${this._pcId} setLocalDescription OK`);
@@ -405,8 +667,12 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
             );
         }
 
-        const { sdpInfo, newTransceivers, transceiversInfo } =
-            await WebRTCModule.peerConnectionSetRemoteDescription(
+        const {
+            sdpInfo,
+            newTransceivers,
+            transceiversInfo,
+            removedTransceiverIds,
+        } = await WebRTCModule.peerConnectionSetRemoteDescription(
                 this._pcId,
                 desc,
             );
@@ -442,6 +708,7 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
         this._updateTransceivers(
             transceiversInfo,
             /* removeStopped */ desc.type === 'answer',
+            removedTransceiverIds,
         );
 
         // Fire track events. They must fire before sRD resolves.
@@ -752,6 +1019,109 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
         }
     }
 
+    /**
+     * Non-standard: like getStats(), but only returns the stats objects whose
+     * type is listed in `filter.types` and, of those, only the members listed
+     * in `filter.members` (`timestamp`, `type` and `id` are always kept).
+     * Filtering happens natively on Android, so unwanted stats are never
+     * serialized; elsewhere the full report is filtered in JS.
+     */
+    async getFilteredStats(filter: RTCStatsFilter) {
+        log.debug(`${this._pcId} getFilteredStats`);
+
+        if (Platform.OS === 'android') {
+            const data = await WebRTCModule.peerConnectionGetFilteredStats(
+                this._pcId,
+                filter,
+            );
+
+            return new Map(JSON.parse(data));
+        }
+
+        const report: Map<string, any> = await this.getStats();
+
+        return filterStatsReport(report, filter);
+    }
+
+    /**
+     * Non-standard: quality figures per sender and receiver, derived natively
+     * from consecutive stats samples. Bitrates are in bits per second, jitter
+     * and round trip times in milliseconds; rates are smoothed and packet loss
+     * and freezes cover the last few seconds. The first call starts sampling,
+     * so figures appear from the following calls on. Android only, resolves
+     * with null elsewhere.
+     */
+    async getQualitySnapshot(): Promise<RTCQualitySnapshot | null> {
+        if (Platform.OS !== 'android') {
+            return null;
+        }
+
+        return WebRTCModule.peerConnectionGetQualitySnapshot(this._pcId);
+    }
+
+    /**
+     * Non-standard: calls `listener` with a stats report, restricted like
+     * getFilteredStats(), every `options.intervalMs` (1000 by default). On
+     * Android stats are sampled natively and only the members which changed
+     * since the previous sample cross the bridge; elsewhere getFilteredStats()
+     * is polled. Replaces any previous subscription and returns a function
+     * which ends this one.
+     */
+    subscribeStats(
+        options: RTCStatsSubscriptionOptions,
+        listener: RTCStatsListener,
+    ): () => void {
+        log.debug(`${this._pcId} subscribeStats`);
+
+        this._unsubscribeStats();
+        this._statsListener = listener;
+
+        const intervalMs = Math.max(
+            MIN_STATS_INTERVAL_MS,
+            options.intervalMs ?? DEFAULT_STATS_INTERVAL_MS,
+        );
+
+        if (Platform.OS === 'android') {
+            WebRTCModule.peerConnectionSubscribeStats(this._pcId, {
+                ...options,
+                intervalMs,
+            });
+        } else {
+            this._statsTimer = setInterval(() => {
+                this.getFilteredStats(options).then(
+                    (report) => {
+                        if (this._statsListener === listener) {
+                            listener(report);
+                        }
+                    },
+                    (e) => log.debug(`${this._pcId} stats sample failed: ${e}`),
+                );
+            }, intervalMs);
+        }
+
+        return () => {
+            if (this._statsListener === listener) {
+                this._unsubscribeStats();
+            }
+        };
+    }
+
+    _unsubscribeStats(): void {
+        if (!this._statsListener) {
+            return;
+        }
+
+        this._statsListener = null;
+        this._statsReport = null;
+
+        if (this._statsTimer !== null) {
+            clearInterval(this._statsTimer);
+            this._statsTimer = null;
+        } else {
+            WebRTCModule.peerConnectionUnsubscribeStats(this._pcId);
+        }
+    }
+
     getTransceivers(): RTCRtpTransceiver[] {
         return this._transceivers.map((e) => e.transceiver);
     }
@@ -775,6 +1145,8 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
             return;
         }
 
+        this._unsubscribeStats();
+
         WebRTCModule.peerConnectionClose(this._pcId);
 
         // Mark transceivers as stopped.
@@ -823,6 +1195,26 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
             }
         });
 
+        addListener(this, 'peerConnectionStatsDelta', (ev: any) => {
+            if (ev.pcId !== this._pcId || !this._statsListener) {
+                return;
+            }
+
+            const delta: RTCStatsDelta = JSON.parse(ev.delta);
+
+            // Deltas still in flight from a replaced subscription don't apply
+            // to the new one; wait for its first (full) sample.
+            if (!delta.full && !this._statsReport) {
+                return;
+            }
+
+            this._statsReport = applyStatsDelta(
+                this._statsReport ?? new Map(),
+                delta,
+            );
+            this._statsListener(this._statsReport);
+        });
+
         addListener(this, 'peerConnectionSignalingStateChanged', (ev: any) => {
             if (ev.pcId !== this._pcId) {
                 return;
@@ -905,22 +1297,54 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
             );
         });
 
-        addListener(this, 'peerConnectionIceGatheringChanged', (ev: any) => {
+        // Android batches candidates and only sends the local description when
+        // it changed since the last time.
+        addListener(this, 'peerConnectionGotICECandidates', (ev: any) => {
             if (ev.pcId !== this._pcId) {
                 return;
             }
 
-            this.iceGatheringState = ev.iceGatheringState;
-
-            if (this.iceGatheringState === 'complete') {
-                const sdpInfo = ev.sdp;
+            const sdpInfo = ev.sdp;
 
+            if (sdpInfo) {
                 // Can happen when doing a rollback.
                 if (sdpInfo.type && sdpInfo.sdp) {
                     this.localDescription = new RTCSessionDescription(sdpInfo);
                 } else {
                     this.localDescription = null;
                 }
+            }
+
+            for (const candidateInfo of ev.candidates) {
+                const candidate = new RTCIceCandidate(candidateInfo);
+
+                this.dispatchEvent(
+                    new RTCIceCandidateEvent('icecandidate', { candidate }),
+                );
+            }
+        });
+
+        addListener(this, 'peerConnectionIceGatheringChanged', (ev: any) => {
+            if (ev.pcId !== this._pcId) {
+                return;
+            }
+
+            this.iceGatheringState = ev.iceGatheringState;
+
+            if (this.iceGatheringState === 'complete') {
+                const sdpInfo = ev.sdp;
+
+                // Android leaves it out when it didn't change.
+                if (sdpInfo) {
+                    // Can happen when doing a rollback.
+                    if (sdpInfo.type && sdpInfo.sdp) {
+                        this.localDescription = new RTCSessionDescription(
+                            sdpInfo,
+                        );
+                    } else {
+                        this.localDescription = null;
+                    }
+                }
 
                 this.dispatchEvent(
                     new RTCIceCandidateEvent('icecandidate', {
@@ -961,6 +1385,38 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
                 track._setMutedInternal(ev.muted);
             }
         });
+
+        // Android: mute state, frame rate and resolution of the remote video
+        // tracks of all peer connections, batched.
+        addListener(this, 'mediaStreamTrackLiveness', (ev: any) => {
+            const tracks = ev.tracks.filter((t: any) => t.pcId === this._pcId);
+
+            if (tracks.length === 0) {
+                return;
+            }
+
+            const receivedTracks = this.getReceivers().map((r) => r.track);
+
+            for (const info of tracks) {
+                const track = receivedTracks.find(
+                    (t) => t?.id === info.trackId,
+                );
+
+                if (!track) {
+                    continue;
+                }
+
+                track._setMeasuredSettingsInternal(
+                    info.framesPerSecond,
+                    info.width,
+                    info.height,
+                );
+
+                if (track.muted !== info.muted) {
+                    track._setMutedInternal(info.muted);
+                }
+            }
+        });
     }
 
     /**
@@ -1017,12 +1473,22 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
 
     /**
      * Updates transceivers after offer/answer updates if necessary.
+     * Android only sends the transceivers which changed since the previous
+     * update, plus the ids of the ones which are gone; iOS sends all of them.
      */
-    _updateTransceivers(transceiverUpdates, removeStopped = false) {
+    _updateTransceivers(
+        transceiverUpdates,
+        removeStopped = false,
+        removedTransceiverIds: string[] = [],
+    ) {
+        const transceiversById = new Map<string, RTCRtpTransceiver>();
+
+        for (const { transceiver } of this._transceivers) {
+            transceiversById.set(transceiver.sender.id, transceiver);
+        }
+
         for (const update of transceiverUpdates) {
-            const [transceiver] = this.getTransceivers().filter(
-                (t) => t.sender.id === update.transceiverId,
-            );
+            const transceiver = transceiversById.get(update.transceiverId);
 
             if (!transceiver) {
                 continue;
@@ -1042,13 +1508,18 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
             );
         }
 
-        if (removeStopped) {
-            const stopped = this.getTransceivers().filter((t) => t.stopped);
-            const newTransceivers = this._transceivers.filter(
-                (t) => !stopped.includes(t.transceiver),
+        if (removedTransceiverIds.length > 0) {
+            const removed = new Set(removedTransceiverIds);
+
+            this._transceivers = this._transceivers.filter(
+                (t) => !removed.has(t.transceiver.sender.id),
             );
+        }
 
-            this._transceivers = newTransceivers;
+        if (removeStopped) {
+            this._transceivers = this._transceivers.filter(
+                (t) => !t.transceiver.stopped,
+            );
         }
     }
 
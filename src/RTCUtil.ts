@@ -18,6 +18,36 @@ export type RTCOfferOptions = {
     voiceActivityDetection?: boolean;
 };
 
+/**
+ * Restricts a stats report to some stats types and members. Missing keys mean
+ * no restriction; `timestamp`, `type` and `id` are always kept.
+ */
+export type RTCStatsFilter = {
+    types?: string[];
+    members?: string[];
+};
+
+/**
+ * Options of RTCPeerConnection.subscribeStats(): how often to sample, plus an
+ * RTCStatsFilter.
+ */
+export type RTCStatsSubscriptionOptions = RTCStatsFilter & {
+    intervalMs?: number;
+};
+
+/**
+ * A stats sample as emitted by the native stats subscription: only the stats
+ * objects and members which changed since the previous sample.
+ */
+export type RTCStatsDelta = {
+    timestamp: number;
+    full: boolean;
+    updated: [string, Record<string, unknown>, string[]?][];
+    removed: string[];
+};
+
+const ALWAYS_KEPT_STATS_MEMBERS = ['timestamp', 'type', 'id'];
+
 const STANDARD_OFFER_OPTIONS = {
     icerestart: 'IceRestart',
     offertoreceiveaudio: 'OfferToReceiveAudio',
@@ -208,3 +238,77 @@ export function normalizeConstraints(constraints) {
 
     return c;
 }
+
+/**
+ * Applies an RTCStatsFilter to a full stats report, for platforms which don't
+ * filter natively.
+ */
+export function filterStatsReport(
+    report: Map<string, any>,
+    filter: RTCStatsFilter,
+): Map<string, any> {
+    const filtered = new Map<string, any>();
+
+    for (const [id, stats] of report) {
+        if (filter.types && !filter.types.includes(stats.type)) {
+            continue;
+        }
+
+        if (!filter.members) {
+            filtered.set(id, stats);
+            continue;
+        }
+
+        const picked: Record<string, unknown> = {};
+
+        for (const member of Object.keys(stats)) {
+            if (
+                ALWAYS_KEPT_STATS_MEMBERS.includes(member) ||
+                filter.members.includes(member)
+            ) {
+                picked[member] = stats[member];
+            }
+        }
+
+        filtered.set(id, picked);
+    }
+
+    return filtered;
+}
+
+/**
+ * Applies a native stats delta to the previous report. The previous report
+ * and its stats objects are left untouched, so listeners may keep them around
+ * (e.g. to compute rates).
+ */
+export function applyStatsDelta(
+    report: Map<string, any>,
+    delta: RTCStatsDelta,
+): Map<string, any> {
+    const next = delta.full ? new Map<string, any>() : new Map(report);
+
+    for (const id of delta.removed) {
+        next.delete(id);
+    }
+
+    for (const [id, changed, removedMembers] of delta.updated) {
+        const stats = { ...next.get(id), ...changed };
+
+        if (removedMembers) {
+            for (const member of removedMembers) {
+                delete stats[member];
+            }
+        }
+
+        next.set(id, stats);
+    }
+
+    // The timestamp is sent once per sample, not per stats object.
+    for (const [id, stats] of next) {
+        if (stats.timestamp !== delta.timestamp) {
+            next.set(id, { ...stats, timestamp: delta.timestamp });
+        }
+    }
+
+    return next;
+}
@@ -9,6 +9,29 @@ export interface Constraints {
     android?: {
         createConfigForDefaultDisplay?: boolean;
         resolutionScale?: number;
+        /**
+         * When to repeat the last frame while the screen is static. Right
+         * after a change, repeats come every `burstIntervalMs` for
+         * `burstDurationMs` (off by default), then every `idleIntervalMs`
+         * (1000 by default).
+         */
+        frameRepeat?: {
+            idleIntervalMs?: number;
+            burstIntervalMs?: number;
+            burstDurationMs?: number;
+        };
+        /**
+         * Drops frames which barely differ from the last one sent, e.g. when
+         * only a cursor blinked. A frame is dropped if no more than
+         * `maxDirtyArea` (0-1, default 0) of its area changed by more than
+         * `pixelThreshold` (0-255 luma, default 8), but one is sent at least
+         * every `maxStalenessMs` (default 1000). Off unless set.
+         */
+        frameFilter?: {
+            maxDirtyArea?: number;
+            pixelThreshold?: number;
+            maxStalenessMs?: number;
+        };
     };
 }
 
@@ -129,6 +129,10 @@ import {
     type VoIPIncomingPayload,
 } from './useVoIPEvents';
 import { Event, EventTarget } from './vendor/event-target-shim';
+import warmUp, {
+    getInitializationStats,
+    type InitializationStats,
+} from './warmUp';
 import writeLivestreamCredentials, {
     type LivestreamCredentials,
 } from './writeLivestreamCredentials';
@@ -151,6 +155,7 @@ export {
     failIncomingCallConnected,
     forwardFrame,
     fulfillIncomingCallConnected,
+    getInitializationStats,
     getPendingAnswerRequestId,
     getPendingCallIntent,
     getPendingIncomingCall,
@@ -199,6 +204,7 @@ export {
     useTelecom,
     useTelecomEvent,
     useVoIPEvents,
+    warmUp,
     writeLivestreamCredentials,
     type AudioDevice,
     type AudioExtractionOptions,
@@ -220,6 +226,7 @@ export {
     type ForegroundServiceConfig,
     type ForwardFrameArgs,
     type ForwardTrack,
+    type InitializationStats,
     type LivestreamCredentials,
     type LivestreamStatus,
     type LivestreamStatusInfo,
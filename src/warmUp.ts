@@ -0,0 +1,38 @@
+import { NativeModules, Platform } from 'react-native';
+
+const { WebRTCModule } = NativeModules;
+
+/**
+ * Starts initializing the native WebRTC stack in the background, so it is
+ * ready by the time the first call is made.
+ *
+ * Only needed when the app deferred that initialization on Android (see
+ * `WebRTCModuleOptions.deferFactoryInitialization`); otherwise, and on other
+ * platforms, it's a no-op. Without it, the first WebRTC call starts the
+ * initialization and waits for it.
+ */
+export default function warmUp(): void {
+    if (Platform.OS !== 'android') {
+        return;
+    }
+    WebRTCModule.warmUp();
+}
+
+export type InitializationStats = {
+    deferred: boolean;
+    initialized: boolean;
+    // Duration of each initialization phase, plus the `total`.
+    phasesMs: Record<string, number>;
+};
+
+/**
+ * Whether the native WebRTC stack was initialized lazily, whether it is
+ * ready yet and how long each step of initializing it took. Android only,
+ * resolves with null elsewhere.
+ */
+export function getInitializationStats(): Promise<InitializationStats | null> {
+    if (Platform.OS !== 'android') {
+        return Promise.resolve(null);
+    }
+    return WebRTCModule.getInitializationStats();
+}
@@ -0,0 +1,15 @@
+#!/bin/bash
+# Host-side unit tests for the dependency-free TypeScript under src (modules
+# without React Native imports). They are compiled on their own with tsc and
+# run with Node's built-in test runner — no device or Metro required.
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+BUILD_DIR="${TMPDIR:-/tmp}/fishjam-webrtc-ts-tests"
+rm -rf "$BUILD_DIR"
+mkdir -p "$BUILD_DIR"
+
+npx tsc --outDir "$BUILD_DIR" --module commonjs --target es2019 --strict --skipLibCheck \
+    src/RTCUtil.ts
+
+TS_TESTS_BUILD_DIR="$BUILD_DIR" node --test tools/tests/
@@ -0,0 +1,106 @@
+// Tests of the stats helpers in src/RTCUtil.ts; run with tools/test-ts.sh.
+const assert = require('node:assert/strict');
+const path = require('node:path');
+const { describe, it } = require('node:test');
+
+const { applyStatsDelta, filterStatsReport } = require(
+    path.join(process.env.TS_TESTS_BUILD_DIR, 'RTCUtil.js'),
+);
+
+const report = new Map([
+    ['IT01', { timestamp: 1000, type: 'inbound-rtp', id: 'IT01', jitter: 0.5, packetsLost: 1 }],
+    ['CP01', { timestamp: 1000, type: 'candidate-pair', id: 'CP01', nominated: true }],
+]);
+
+describe('applyStatsDelta', () => {
+    it('merges changed members and stamps every object', () => {
+        const next = applyStatsDelta(report, {
+            timestamp: 2000,
+            full: false,
+            updated: [['IT01', { jitter: 0.7 }]],
+            removed: [],
+        });
+
+        assert.deepEqual(next.get('IT01'), {
+            timestamp: 2000,
+            type: 'inbound-rtp',
+            id: 'IT01',
+            jitter: 0.7,
+            packetsLost: 1,
+        });
+        assert.deepEqual(next.get('CP01'), {
+            timestamp: 2000,
+            type: 'candidate-pair',
+            id: 'CP01',
+            nominated: true,
+        });
+    });
+
+    it('drops removed objects and members', () => {
+        const next = applyStatsDelta(report, {
+            timestamp: 2000,
+            full: false,
+            updated: [['IT01', {}, ['packetsLost']]],
+            removed: ['CP01'],
+        });
+
+        assert.deepEqual([...next.keys()], ['IT01']);
+        assert.equal('packetsLost' in next.get('IT01'), false);
+    });
+
+    it('adds new objects', () => {
+        const next = applyStatsDelta(report, {
+            timestamp: 2000,
+            full: false,
+            updated: [['T01', { type: 'transport', id: 'T01' }]],
+            removed: [],
+        });
+
+        assert.deepEqual(next.get('T01'), { timestamp: 2000, type: 'transport', id: 'T01' });
+        assert.equal(next.size, 3);
+    });
+
+    it('replaces the report on a full delta', () => {
+        const next = applyStatsDelta(report, {
+            timestamp: 2000,
+            full: true,
+            updated: [['CP01', { type: 'candidate-pair', id: 'CP01', nominated: false }]],
+            removed: [],
+        });
+
+        assert.deepEqual([...next.entries()], [
+            ['CP01', { timestamp: 2000, type: 'candidate-pair', id: 'CP01', nominated: false }],
+        ]);
+    });
+
+    it('leaves the previous report and its objects untouched', () => {
+        const before = JSON.stringify([...report]);
+        const jitter = report.get('IT01');
+
+        applyStatsDelta(report, {
+            timestamp: 2000,
+            full: false,
+            updated: [['IT01', { jitter: 0.9 }, ['packetsLost']]],
+            removed: ['CP01'],
+        });
+
+        assert.equal(JSON.stringify([...report]), before);
+        assert.equal(report.get('IT01'), jitter);
+    });
+});
+
+describe('filterStatsReport', () => {
+    it('keeps the requested types and members, plus timestamp, type and id', () => {
+        const filtered = filterStatsReport(report, { types: ['inbound-rtp'], members: ['jitter'] });
+
+        assert.deepEqual([...filtered.entries()], [
+            ['IT01', { timestamp: 1000, type: 'inbound-rtp', id: 'IT01', jitter: 0.5 }],
+        ]);
+    });
+
+    it('keeps whole objects without a members filter', () => {
+        const filtered = filterStatsReport(report, { types: ['candidate-pair'] });
+
+        assert.equal(filtered.get('CP01'), report.get('CP01'));
+    });
+});